@@ -0,0 +1,18 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs JMH, writing machine-readable results to jmh-result.json unless -rf or -rff is given.
+ */
+public class BenchmarkMain {
+
+  public static void main(String[] args) throws Exception {
+    List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+    if (!jmhArgs.contains("-rf")) jmhArgs.addAll(Arrays.asList("-rf", "json"));
+    if (!jmhArgs.contains("-rff")) jmhArgs.addAll(Arrays.asList("-rff", "jmh-result.json"));
+    org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+  }
+}
@@ -0,0 +1,50 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rendering the change log, the same ChangeLogEntry.toString Main writes to the console
+ * and the log file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChangeLogBenchmark {
+  private static final int BATCH = 1024;
+
+  private List<ChangeLogEntry> log;
+  private int cursor;
+
+  @Setup
+  public void setup() {
+    List<Lead> leads = new LeadFileGenerator(42, 0.5, 0.5, 0, 0.2, 0, 0.05).generate(100_000);
+    log = LeadDeduplicator.deduplicate(leads).getLog();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public void render(Blackhole bh) {
+    int c = cursor;
+    cursor = c + BATCH >= log.size() - BATCH ? 0 : c + BATCH;
+    for (int i = c; i < c + BATCH; i++) {
+      bh.consume(log.get(i).toString());
+    }
+  }
+}
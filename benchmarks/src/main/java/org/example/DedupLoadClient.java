@@ -0,0 +1,87 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load test for DedupServer. Several clients post generated batches back to back, and the
+ * request rate and client-side latency percentiles are printed together with the server's own
+ * /metrics. Without --url a server is started in this JVM on a free port.
+ *
+ * Usage: DedupLoadClient [--url=http://host:port] [clients] [batchesPerClient] [batchSize]
+ */
+public class DedupLoadClient {
+
+  public static void main(String[] args) throws Exception {
+    String url = null;
+    List<Integer> numbers = new ArrayList<>();
+    for (String arg : args) {
+      if (arg.startsWith("--url=")) url = arg.substring("--url=".length());
+      else numbers.add(Integer.parseInt(arg));
+    }
+    int clients = numbers.size() > 0 ? numbers.get(0) : 16;
+    int batches = numbers.size() > 1 ? numbers.get(1) : 200;
+    int batchSize = numbers.size() > 2 ? numbers.get(2) : 500;
+
+    DedupServer local = null;
+    if (url == null) {
+      local = DedupServer.start(new InetSocketAddress("127.0.0.1", 0), Runtime.getRuntime().availableProcessors() * 2);
+      url = "http://127.0.0.1:" + local.getPort();
+    }
+    URI dedupUri = URI.create(url + "/dedup");
+    URI metricsUri = URI.create(url + "/metrics");
+
+    ObjectMapper mapper = Main.createMapper();
+    List<Lead> leads = new LeadFileGenerator(42).generate(clients * batches * batchSize);
+    List<List<byte[]>> bodies = new ArrayList<>();
+    for (int c = 0; c < clients; c++) {
+      List<byte[]> mine = new ArrayList<>();
+      for (int b = 0; b < batches; b++) {
+        int from = (c * batches + b) * batchSize;
+        mine.add(mapper.writeValueAsBytes(new LeadWrapper(leads.subList(from, from + batchSize))));
+      }
+      bodies.add(mine);
+    }
+
+    HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    LatencyHistogram latency = new LatencyHistogram();
+    ExecutorService pool = Executors.newFixedThreadPool(clients);
+    long start = System.nanoTime();
+    List<Future<?>> futures = new ArrayList<>();
+    for (List<byte[]> mine : bodies) {
+      futures.add(pool.submit(() -> {
+        for (byte[] body : mine) {
+          long t = System.nanoTime();
+          HttpResponse<Void> response = client.send(HttpRequest.newBuilder(dedupUri)
+                  .POST(HttpRequest.BodyPublishers.ofByteArray(body)).build(), HttpResponse.BodyHandlers.discarding());
+          latency.record(System.nanoTime() - t);
+          if (response.statusCode() != 200) throw new IllegalStateException("HTTP " + response.statusCode());
+        }
+        return null;
+      }));
+    }
+    for (Future<?> f : futures) f.get();
+    double seconds = (System.nanoTime() - start) / 1e9;
+    pool.shutdown();
+
+    long requests = (long) clients * batches;
+    System.out.printf("%d requests, %d leads in %.2f s: %.0f requests/s, %.0f leads/s%n",
+            requests, requests * batchSize, seconds, requests / seconds, requests * batchSize / seconds);
+    System.out.printf("client latency ms: p50 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+            latency.percentile(50) / 1e6, latency.percentile(99) / 1e6, latency.percentile(99.9) / 1e6,
+            latency.max() / 1e6);
+    System.out.println("server metrics: " + client.send(HttpRequest.newBuilder(metricsUri).build(),
+            HttpResponse.BodyHandlers.ofString()).body());
+    if (local != null) local.close();
+  }
+}
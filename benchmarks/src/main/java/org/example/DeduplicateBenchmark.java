@@ -0,0 +1,101 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures LeadDeduplicator.deduplicate over synthetic inputs. The params cover input size,
+ * duplicate ratio, the id vs email collision mix, key skew and the invalid rate; narrow them on
+ * the command line, e.g. -p size=1000000 -p duplicateRatio=0.5.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeduplicateBenchmark {
+  @Param({"10000", "100000"})
+  public int size;
+
+  @Param({"0.1", "0.5"})
+  public double duplicateRatio;
+
+  @Param({"0.5"})
+  public double emailShare;
+
+  @Param({"0", "2"})
+  public double skew;
+
+  @Param({"0.01"})
+  public double invalidRate;
+
+  private List<Lead> source;
+  private List<Lead> leads;
+  private ParallelLeadDeduplicator parallel;
+
+  @Setup(Level.Trial)
+  public void generate() {
+    source = new LeadFileGenerator(42, duplicateRatio, emailShare, skew, 0.2, invalidRate, 0.05).generate(size);
+    parallel = new ParallelLeadDeduplicator();
+  }
+
+  @Setup(Level.Invocation)
+  public void copy() {
+    leads = LeadFileGenerator.copy(source);
+  }
+
+  @Benchmark
+  public LeadDeduplicator.Result sequential() {
+    return LeadDeduplicator.deduplicate(leads);
+  }
+
+  @Benchmark
+  public LeadDeduplicator.Result sequentialKeyFilter() {
+    return LeadDeduplicator.deduplicate(leads, true);
+  }
+
+  @Benchmark
+  public LeadDeduplicator.Result sequentialNoLog() {
+    IncrementalLeadDeduplicator dedup = new IncrementalLeadDeduplicator(leads.size());
+    dedup.setLogSampling(0);
+    dedup.acceptAll(leads);
+    return dedup.snapshot();
+  }
+
+  @Benchmark
+  public LeadDeduplicator.Result sequentialMetrics() {
+    IncrementalLeadDeduplicator dedup = new IncrementalLeadDeduplicator(leads.size());
+    dedup.setMetrics(new DedupMetrics());
+    dedup.acceptAll(leads);
+    return dedup.snapshot();
+  }
+
+  @Benchmark
+  public LeadDeduplicator.Result transitive() {
+    return TransitiveLeadDeduplicator.deduplicate(leads);
+  }
+
+  @Benchmark
+  public LeadDeduplicator.Result fuzzy() {
+    return LeadDeduplicator.deduplicate(leads, new FuzzyLeadMatcher());
+  }
+
+  @Benchmark
+  public LeadDeduplicator.Result parallel() {
+    return parallel.deduplicate(leads);
+  }
+}
@@ -0,0 +1,88 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the JSON side of Main: streaming leads in from a file and rendering the deduped
+ * leads as pretty printed JSON, with the mapper Main builds. loadSnapshot reads the same leads
+ * back from a binary snapshot for comparison with load, and serializeParallel writes them to a
+ * file with LeadJsonWriter for comparison with serialize.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+  @Param({"10000", "100000"})
+  public int size;
+
+  private ObjectMapper mapper;
+  private List<Lead> leads;
+  private File input;
+  private Path snapshot;
+  private Path output;
+
+  @Setup
+  public void setup() throws IOException {
+    mapper = Main.createMapper();
+    leads = new LeadFileGenerator(42, 0.3, 0.5, 0, 0.2, 0.01, 0.05).generate(size);
+    input = Files.createTempFile("leads", ".json").toFile();
+    mapper.writeValue(input, new LeadWrapper(leads));
+    snapshot = Files.createTempFile("leads", ".snap");
+    output = Files.createTempFile("deduped", ".json");
+    LeadSnapshotWriter.write(snapshot, new LeadDeduplicator.Result(leads, List.of(), List.of()), true);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(input.toPath());
+    Files.deleteIfExists(snapshot);
+    Files.deleteIfExists(output);
+  }
+
+  @Benchmark
+  public long load(Blackhole bh) throws IOException {
+    return new LeadStreamReader(mapper).read(input, bh::consume);
+  }
+
+  @Benchmark
+  public long loadSnapshot(Blackhole bh) throws IOException {
+    try (LeadSnapshotReader reader = LeadSnapshotReader.open(snapshot)) {
+      List<Lead> survivors = reader.getDeduped();
+      for (Lead lead : survivors) bh.consume(lead);
+      return survivors.size();
+    }
+  }
+
+  @Benchmark
+  public String serialize() throws IOException {
+    return Main.toPrettyJson(mapper, leads);
+  }
+
+  @Benchmark
+  public long serializeParallel() throws IOException {
+    return new LeadJsonWriter(mapper).write(leads, output);
+  }
+}
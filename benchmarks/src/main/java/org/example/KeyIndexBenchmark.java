@@ -0,0 +1,121 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the id/email index on the per-record path of the deduplicator. Run with -prof gc:
+ * the KeyIndex benchmarks should report a gc.alloc.rate.norm of about 0 B/op, the HashMap
+ * baseline shows what the old String keyed maps allocated per record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyIndexBenchmark {
+  private static final int BATCH = 1024;
+
+  @Param({"1000000"})
+  public int keys;
+
+  private MemoryDedupState state;
+  private Map<String, Integer> idMap;
+  private Map<String, Integer> emailMap;
+  private String[] ids;
+  private String[] emails;
+  private String[] missIds;
+  private String[] missEmails;
+  private int cursor;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(42);
+    state = new MemoryDedupState(keys);
+    idMap = new HashMap<>();
+    emailMap = new HashMap<>();
+    ids = new String[keys];
+    emails = new String[keys];
+    missIds = new String[keys];
+    missEmails = new String[keys];
+    Instant date = Instant.parse("2024-01-01T00:00:00Z");
+    for (int i = 0; i < keys; i++) {
+      String id = Long.toHexString(random.nextLong());
+      String email = "User." + i + "@Example.com";
+      long slot = state.add(new Lead(id, email, "First", "Last", "1 Main St", date), i);
+      state.putId(id, slot);
+      state.putEmail(email, slot);
+      idMap.put(id, (int) slot);
+      emailMap.put(email.toLowerCase(), (int) slot);
+      ids[i] = id;
+      emails[i] = random.nextBoolean() ? email.toUpperCase() : email;
+      missIds[i] = Long.toHexString(random.nextLong());
+      missEmails[i] = "missing." + i + "@example.com";
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public void keyIndexHit(Blackhole bh) {
+    int c = next();
+    for (int i = c; i < c + BATCH; i++) {
+      bh.consume(state.findId(ids[i]));
+      bh.consume(state.findEmail(emails[i]));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public void keyIndexMiss(Blackhole bh) {
+    int c = next();
+    for (int i = c; i < c + BATCH; i++) {
+      bh.consume(state.findId(missIds[i]));
+      bh.consume(state.findEmail(missEmails[i]));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public void keyIndexUpdate() {
+    int c = next();
+    for (int i = c; i < c + BATCH; i++) {
+      long slot = state.findId(ids[i]);
+      state.putId(ids[i], slot);
+      state.putEmail(emails[i], slot);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public void hashMapHit(Blackhole bh) {
+    int c = next();
+    for (int i = c; i < c + BATCH; i++) {
+      bh.consume(idMap.get(ids[i]));
+      bh.consume(emailMap.get(emails[i].toLowerCase()));
+    }
+  }
+
+  private int next() {
+    int c = cursor;
+    cursor = c + BATCH >= keys - BATCH ? 0 : c + BATCH;
+    return c;
+  }
+}
@@ -0,0 +1,235 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The LeadFileGenerator class builds the synthetic leads of every benchmark. It writes lead files
+ * for end-to-end runs, as a {"leads": [...]} document or as NDJSON, from 10K to 100M leads, and
+ * builds the lead lists of the JMH benchmarks and the load client. Leads are streamed to the file
+ * and never held in memory: every lead is derived from the seed and its index alone, so the same
+ * settings always write the same bytes, and any lead can be rebuilt without the ones before it.
+ *
+ * A duplicate copies the id or the email of an earlier lead, which may itself be a duplicate, so
+ * keys form chains across many leads. Skew biases the copied lead towards the first ones. Emails
+ * get casing and surrounding whitespace variants, invalid leads have one blank or missing field,
+ * and some entryDates are moved back by up to 30 days so input order and date order differ.
+ *
+ * Usage: LeadFileGenerator out.json|out.ndjson size [seed]
+ */
+public class LeadFileGenerator {
+  private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+  private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssxxx")
+          .withZone(ZoneOffset.UTC);
+  private static final String[] FIRST_NAMES = {"John", "Ted", "Priya", "Maria", "Wei", "Amara", "Lars", "Sofia"};
+  private static final String[] LAST_NAMES = {"Smith", "Masters", "Patel", "Garcia", "Chen", "Okafor", "Berg", "Rossi"};
+  private static final String[] STREETS = {"Main St", "North Hampton St", "Station Road", "Elm Ave", "Harbor Way"};
+
+  private final long seed;
+  private final double duplicateRatio;
+  private final double emailShare;
+  private final double skew;
+  private final double variantRate;
+  private final double invalidRate;
+  private final double outOfOrderRate;
+
+  /**
+   * Creates a generator with the settings used when run from the command line.
+   * @param seed the random seed
+   */
+  public LeadFileGenerator(long seed) {
+    this(seed, 0.3, 0.5, 1, 0.2, 0.01, 0.05);
+  }
+
+  /**
+   * Creates a generator.
+   * @param seed the random seed
+   * @param duplicateRatio fraction of leads that copy a key of an earlier lead, 0 to 1
+   * @param emailShare fraction of duplicates that copy the email instead of the id, 0 to 1
+   * @param skew 0 picks the copied lead uniformly, higher values favour the first leads
+   * @param variantRate fraction of emails written in another case or padded with whitespace
+   * @param invalidRate fraction of leads with one blank or missing field
+   * @param outOfOrderRate fraction of leads dated up to 30 days before their neighbours
+   */
+  public LeadFileGenerator(long seed, double duplicateRatio, double emailShare, double skew, double variantRate,
+                           double invalidRate, double outOfOrderRate) {
+    this.seed = seed;
+    this.duplicateRatio = duplicateRatio;
+    this.emailShare = emailShare;
+    this.skew = skew;
+    this.variantRate = variantRate;
+    this.invalidRate = invalidRate;
+    this.outOfOrderRate = outOfOrderRate;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: LeadFileGenerator out.json|out.ndjson size [seed]");
+      return;
+    }
+    Path out = Paths.get(args[0]);
+    long size = Long.parseLong(args[1].replace("_", ""));
+    long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+    long start = System.nanoTime();
+    new LeadFileGenerator(seed).write(out, size, Main.isNdjson(out.toFile()));
+    System.out.printf("Wrote %d leads, %d MB to %s in %.1f s%n", size, Files.size(out) >> 20, out,
+            (System.nanoTime() - start) / 1e9);
+  }
+
+  /**
+   * Writes a lead file, replacing it if it exists.
+   * @param out the file
+   * @param size number of leads
+   * @param ndjson true for one lead per line, false for a {"leads": [...]} document
+   * @throws IOException if writing fails
+   */
+  public void write(Path out, long size, boolean ndjson) throws IOException {
+    try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(out), 1 << 16);
+         JsonGenerator json = new JsonFactory().createGenerator(stream, JsonEncoding.UTF8)) {
+      if (ndjson) {
+        json.setPrettyPrinter(new MinimalPrettyPrinter("\n"));
+      } else {
+        json.writeStartObject();
+        json.writeArrayFieldStart("leads");
+      }
+      for (long i = 0; i < size; i++) {
+        writeLead(json, lead(i));
+      }
+      if (!ndjson) {
+        json.writeEndArray();
+        json.writeEndObject();
+      } else if (size > 0) {
+        json.writeRaw('\n');
+      }
+    }
+  }
+
+  /**
+   * Builds the first leads of the file as a list, for runs that dedupe in memory.
+   * @param size number of leads
+   * @return a new list of new leads
+   */
+  public List<Lead> generate(int size) {
+    List<Lead> leads = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) leads.add(lead(i));
+    return leads;
+  }
+
+  /**
+   * Copies leads so a benchmark can deduplicate the same input again; deduplicate trims fields
+   * in place.
+   * @param leads the leads to copy
+   * @return a new list of new leads
+   */
+  static List<Lead> copy(List<Lead> leads) {
+    List<Lead> copy = new ArrayList<>(leads.size());
+    for (Lead l : leads) {
+      copy.add(new Lead(l.getId(), l.getEmail(), l.getFirstName(), l.getLastName(), l.getAddress(),
+              l.getEntryDate()));
+    }
+    return copy;
+  }
+
+  /**
+   * Builds the lead at an index, the same lead write puts there.
+   * @param i index of the lead in the file
+   * @return a new lead
+   */
+  Lead lead(long i) {
+    SplittableRandom random = random(i);
+    String id = "id-" + idOrigin(i);
+    String email = "user" + emailOrigin(i) + "@example.com";
+    // Skip the draws idOrigin and emailOrigin made for this lead.
+    if (random.nextDouble() < duplicateRatio && i > 0) {
+      random.nextLong();
+      random.nextDouble();
+    }
+    if (random.nextDouble() < variantRate) {
+      switch (random.nextInt(3)) {
+        case 0: email = email.toUpperCase(); break;
+        case 1: email = Character.toUpperCase(email.charAt(0)) + email.substring(1); break;
+        default: email = " " + email + "  "; break;
+      }
+    }
+    long seconds = i * 30 + random.nextInt(3600);
+    if (random.nextDouble() < outOfOrderRate) seconds -= random.nextInt(30 * 24 * 3600);
+    Lead lead = new Lead(id, email, FIRST_NAMES[random.nextInt(FIRST_NAMES.length)],
+            LAST_NAMES[random.nextInt(LAST_NAMES.length)],
+            (1 + random.nextInt(999)) + " " + STREETS[random.nextInt(STREETS.length)],
+            START.plusSeconds(seconds));
+    if (random.nextDouble() < invalidRate) {
+      switch (random.nextInt(6)) {
+        case 0: lead.setId(" "); break;
+        case 1: lead.setEmail(""); break;
+        case 2: lead.setFirstName(null); break;
+        case 3: lead.setLastName("  "); break;
+        case 4: lead.setAddress(""); break;
+        default: lead.setEntryDate(null); break;
+      }
+    }
+    return lead;
+  }
+
+  /**
+   * Returns the index of the lead whose number names the id of lead i, following the chain of
+   * duplicates that copied the id.
+   */
+  private long idOrigin(long i) {
+    while (true) {
+      SplittableRandom random = random(i);
+      if (i == 0 || random.nextDouble() >= duplicateRatio) return i;
+      long parent = parent(random, i);
+      if (random.nextDouble() < emailShare) return i;
+      i = parent;
+    }
+  }
+
+  /**
+   * Returns the index of the lead whose number names the email of lead i, following the chain
+   * of duplicates that copied the email.
+   */
+  private long emailOrigin(long i) {
+    while (true) {
+      SplittableRandom random = random(i);
+      if (i == 0 || random.nextDouble() >= duplicateRatio) return i;
+      long parent = parent(random, i);
+      if (random.nextDouble() >= emailShare) return i;
+      i = parent;
+    }
+  }
+
+  private long parent(SplittableRandom random, long i) {
+    double u = (random.nextLong() >>> 11) * 0x1.0p-53;
+    return skew <= 0 ? (long) (u * i) : (long) (Math.pow(u, 1 + skew) * i);
+  }
+
+  private SplittableRandom random(long i) {
+    return new SplittableRandom(KeyHash.mix(seed * 0x9E3779B97F4A7C15L + i));
+  }
+
+  private static void writeLead(JsonGenerator json, Lead lead) throws IOException {
+    json.writeStartObject();
+    json.writeStringField("_id", lead.getId());
+    json.writeStringField("email", lead.getEmail());
+    json.writeStringField("firstName", lead.getFirstName());
+    json.writeStringField("lastName", lead.getLastName());
+    json.writeStringField("address", lead.getAddress());
+    json.writeStringField("entryDate", lead.getEntryDate() == null ? null : DATE.format(lead.getEntryDate()));
+    json.writeEndObject();
+  }
+}
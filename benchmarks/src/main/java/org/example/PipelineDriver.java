@@ -0,0 +1,174 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * End-to-end driver: runs the stages of Main over a lead file, or over a file it generates with
+ * LeadFileGenerator, and reports for each stage the time, records per second, GC collections
+ * and collection time, peak heap and peak RSS. The serialize stage writes the deduped JSON to a
+ * file instead of the console so the numbers do not depend on the terminal.
+ *
+ * Peak RSS comes from VmHWM in /proc/self/status, reset between stages through
+ * /proc/self/clear_refs where the kernel allows it; elsewhere it is reported as -1.
+ *
+ * Usage: PipelineDriver input.json|input.ndjson|dir
+ *        PipelineDriver --generate=size [--ndjson] [--seed=n]
+ */
+public class PipelineDriver {
+
+  public static void main(String[] args) throws Exception {
+    String input = null;
+    long generate = 0;
+    long seed = 42;
+    boolean ndjson = false;
+    for (String arg : args) {
+      if (arg.startsWith("--generate=")) generate = Long.parseLong(arg.substring("--generate=".length()).replace("_", ""));
+      else if (arg.startsWith("--seed=")) seed = Long.parseLong(arg.substring("--seed=".length()));
+      else if (arg.equals("--ndjson")) ndjson = true;
+      else input = arg;
+    }
+    Path generated = null;
+    if (generate > 0) {
+      generated = Files.createTempFile("leads", ndjson ? ".ndjson" : ".json");
+      new LeadFileGenerator(seed).write(generated, generate, ndjson);
+      input = generated.toString();
+    }
+    if (input == null) {
+      System.err.println("Usage: PipelineDriver input | --generate=size [--ndjson] [--seed=n]");
+      return;
+    }
+
+    Path logDir = Files.createTempDirectory("dedup-driver");
+    try {
+      run(input, logDir);
+    } finally {
+      if (generated != null) Files.deleteIfExists(generated);
+      try (java.util.stream.Stream<Path> files = Files.list(logDir)) {
+        for (Path p : (Iterable<Path>) files::iterator) Files.deleteIfExists(p);
+      }
+      Files.deleteIfExists(logDir);
+    }
+  }
+
+  private static void run(String input, Path logDir) throws IOException {
+    List<Path> files = MultiFileLeadReader.resolve(input);
+    ObjectMapper mapper = Main.createMapper();
+    IncrementalLeadDeduplicator dedup = new IncrementalLeadDeduplicator();
+    List<Stage> stages = new ArrayList<>();
+
+    Stage read = Stage.start("parse+dedupe");
+    long leads = files.size() == 1
+            ? Main.readLeads(files.get(0).toFile(), mapper, dedup::accept)
+            : new MultiFileLeadReader(mapper).read(files, dedup::accept);
+    stages.add(read.stop(leads));
+
+    Stage snapshot = Stage.start("snapshot");
+    LeadDeduplicator.Result result = dedup.snapshot();
+    stages.add(snapshot.stop(leads));
+
+    Stage serialize = Stage.start("serialize");
+    LeadJsonWriter jsonWriter = new LeadJsonWriter(mapper);
+    jsonWriter.write(result.getDeduped(), logDir.resolve("deduped.json"));
+    stages.add(serialize.stop(result.getDeduped().size()));
+
+    Stage write = Stage.start("write log");
+    Main.writeReport(logDir.resolve("dedup_log.txt"), jsonWriter, result);
+    stages.add(write.stop(result.getLog().size()));
+
+    System.out.printf("%d leads from %d file(s): %d survivors, %d log entries, %d invalid%n", leads, files.size(),
+            result.getDeduped().size(), result.getLog().size(), result.getInvalidLogs().size());
+    System.out.printf("%-14s %10s %14s %8s %10s %14s %13s%n",
+            "stage", "ms", "records/s", "GCs", "GC ms", "peak heap MB", "peak RSS MB");
+    for (Stage s : stages) {
+      System.out.printf("%-14s %10d %14.0f %8d %10d %14d %13d%n", s.name, s.nanos / 1_000_000,
+              s.records / Math.max(1e-9, s.nanos / 1e9), s.gcCount, s.gcMillis, s.peakHeap >> 20,
+              s.peakRss < 0 ? -1 : s.peakRss >> 20);
+    }
+  }
+
+  /**
+   * The time, GC and memory figures of one stage.
+   */
+  private static final class Stage {
+    final String name;
+    final long startNanos;
+    final long startGcCount;
+    final long startGcMillis;
+    long nanos;
+    long records;
+    long gcCount;
+    long gcMillis;
+    long peakHeap;
+    long peakRss;
+
+    private Stage(String name) {
+      this.name = name;
+      this.startGcCount = gcCount();
+      this.startGcMillis = gcMillis();
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) pool.resetPeakUsage();
+      resetPeakRss();
+      this.startNanos = System.nanoTime();
+    }
+
+    static Stage start(String name) {
+      return new Stage(name);
+    }
+
+    Stage stop(long records) {
+      this.nanos = System.nanoTime() - startNanos;
+      this.records = records;
+      this.gcCount = gcCount() - startGcCount;
+      this.gcMillis = gcMillis() - startGcMillis;
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) peakHeap += pool.getPeakUsage().getUsed();
+      }
+      this.peakRss = statusKb("VmHWM:") * 1024;
+      return this;
+    }
+
+    private static long gcCount() {
+      long n = 0;
+      for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) n += Math.max(0, gc.getCollectionCount());
+      return n;
+    }
+
+    private static long gcMillis() {
+      long n = 0;
+      for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) n += Math.max(0, gc.getCollectionTime());
+      return n;
+    }
+
+    private static void resetPeakRss() {
+      File clearRefs = new File("/proc/self/clear_refs");
+      if (!clearRefs.canWrite()) return;
+      try {
+        Files.writeString(clearRefs.toPath(), "5");
+      } catch (IOException e) {
+        // Older kernels do not support resetting the peak; it then covers the run so far.
+      }
+    }
+
+    private static long statusKb(String field) {
+      try {
+        for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+          if (line.startsWith(field)) return Long.parseLong(line.substring(field.length()).replace("kB", "").trim());
+        }
+      } catch (IOException | RuntimeException e) {
+        return -1;
+      }
+      return -1;
+    }
+  }
+}
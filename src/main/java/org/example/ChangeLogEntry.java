@@ -1,25 +1,109 @@
 package org.example;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * The ChangeLogEntry class represents a log entry that is made between leads, during deduplication.
  * It stores the discarged lead, kept lead and the map of changes made to the lead's fields.
+ *
+ * Entries made by the deduplicators only keep the two leads and a bitmask of the fields that
+ * differ; the map of changes and the text are built when they are asked for.
  */
 public class ChangeLogEntry {
+  static final int ID = 1;
+  static final int EMAIL = 1 << 1;
+  static final int FIRST_NAME = 1 << 2;
+  static final int LAST_NAME = 1 << 3;
+  static final int ADDRESS = 1 << 4;
+  static final int ENTRY_DATE = 1 << 5;
+
+  private static final String[] FIELD_NAMES = {"_id", "email", "firstName", "lastName", "address", "entryDate"};
+
   private final Lead source;
   private final Lead kept;
+  private final int changedFields;
   private final Map<String, Object[]> fieldChanges;
 
   public ChangeLogEntry(Lead source, Lead kept, Map<String, Object[]> fieldChanges) {
     this.source = source;
     this.kept = kept;
     this.fieldChanges = fieldChanges;
+    int mask = 0;
+    for (int f = 0; f < FIELD_NAMES.length; f++) {
+      if (fieldChanges.containsKey(FIELD_NAMES[f])) mask |= 1 << f;
+    }
+    this.changedFields = mask;
+  }
+
+  /**
+   * Constructs an entry that compares the two leads now and renders the changes on demand.
+   * @param source the discarded lead
+   * @param kept the retained lead
+   */
+  ChangeLogEntry(Lead source, Lead kept) {
+    this.source = source;
+    this.kept = kept;
+    this.changedFields = changedFields(source, kept);
+    this.fieldChanges = null;
   }
 
   public Lead getSource() { return source; }
   public Lead getKept() { return kept; }
-  public Map<String, Object[]> getFieldChanges() { return fieldChanges; }
+
+  /**
+   * Returns the changed fields, each mapped to an array [oldValue, newValue].
+   * @return a map of changes, in field order
+   */
+  public Map<String, Object[]> getFieldChanges() {
+    if (fieldChanges != null) return fieldChanges;
+    Map<String, Object[]> d = new LinkedHashMap<>();
+    for (int f = 0; f < FIELD_NAMES.length; f++) {
+      if ((changedFields & (1 << f)) != 0) {
+        d.put(FIELD_NAMES[f], new Object[]{value(source, 1 << f), value(kept, 1 << f)});
+      }
+    }
+    return d;
+  }
+
+  /**
+   * Returns the fields that differ between the two leads as a bitmask of ID, EMAIL, FIRST_NAME,
+   * LAST_NAME, ADDRESS and ENTRY_DATE.
+   * @return the changed field bits
+   */
+  int getChangedFields() { return changedFields; }
+
+  /**
+   * Compares two leads field by field without allocating.
+   * @param src the discarded lead
+   * @param kept the retained lead
+   * @return the bitmask of fields that differ
+   */
+  static int changedFields(Lead src, Lead kept) {
+    int mask = 0;
+    // Key hashes cached by LeadDeduplicator.prepare settle most id and email comparisons:
+    // different hashes mean different strings.
+    boolean keyed = src.isKeyed() && kept.isKeyed();
+    if ((keyed && src.idHash() != kept.idHash()) || !Objects.equals(src.getId(), kept.getId())) mask |= ID;
+    if ((keyed && src.emailHash() != kept.emailHash()) || !Objects.equals(src.getEmail(), kept.getEmail())) mask |= EMAIL;
+    if (!Objects.equals(src.getFirstName(), kept.getFirstName())) mask |= FIRST_NAME;
+    if (!Objects.equals(src.getLastName(), kept.getLastName())) mask |= LAST_NAME;
+    if (!Objects.equals(src.getAddress(), kept.getAddress())) mask |= ADDRESS;
+    if (!Objects.equals(src.getEntryDate(), kept.getEntryDate())) mask |= ENTRY_DATE;
+    return mask;
+  }
+
+  private static Object value(Lead lead, int field) {
+    switch (field) {
+      case ID: return lead.getId();
+      case EMAIL: return lead.getEmail();
+      case FIRST_NAME: return lead.getFirstName();
+      case LAST_NAME: return lead.getLastName();
+      case ADDRESS: return lead.getAddress();
+      default: return lead.getEntryDate();
+    }
+  }
 
   /**
    * Retuns a String representation of the log change entries, includes the discarded , kept
@@ -32,9 +116,21 @@ public class ChangeLogEntry {
     sb.append("\nDiscarded record:\n").append(source).append('\n');
     sb.append("\nKept record:\n").append(kept).append('\n');
     sb.append("\nChanged fields:\n");
-    fieldChanges.forEach((k, v) -> sb.append("  ").append(k).append(" : ")
-            .append(v[0]).append("  ->  ")
-            .append(v[1]).append('\n'));
+    if (fieldChanges != null) {
+      fieldChanges.forEach((k, v) -> appendChange(sb, k, v[0], v[1]));
+      return sb.toString();
+    }
+    for (int f = 0; f < FIELD_NAMES.length; f++) {
+      if ((changedFields & (1 << f)) != 0) {
+        appendChange(sb, FIELD_NAMES[f], value(source, 1 << f), value(kept, 1 << f));
+      }
+    }
     return sb.toString();
   }
+
+  private static void appendChange(StringBuilder sb, String field, Object from, Object to) {
+    sb.append("  ").append(field).append(" : ")
+            .append(from).append("  ->  ")
+            .append(to).append('\n');
+  }
 }
@@ -0,0 +1,72 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The ChangeLogSink interface receives change log entries one at a time as they are produced,
+ * so a run does not have to hold every rendered entry in memory. Closing the sink writes out
+ * anything still buffered.
+ */
+public interface ChangeLogSink extends Closeable {
+  /**
+   * How entries are written.
+   */
+  enum Format {
+    /** The human readable text of ChangeLogEntry.toString, entries separated by a dashed line. */
+    TEXT,
+    /** One JSON object per line with the discarded lead, the kept lead and the changed fields. */
+    NDJSON
+  }
+
+  /**
+   * Writes one entry.
+   * @param entry the entry to write
+   * @throws IOException if writing fails
+   */
+  void write(ChangeLogEntry entry) throws IOException;
+
+  /**
+   * Creates or truncates a file and opens a sink writing to it through a ChannelWriter.
+   * @param path the log file
+   * @param format how entries are written
+   * @return a sink that must be closed
+   * @throws IOException if the file can not be opened
+   */
+  static ChangeLogSink open(Path path, Format format) throws IOException {
+    ChannelWriter out = new ChannelWriter(path);
+    if (format == Format.TEXT) return new TextChangeLogSink(out);
+    try {
+      return new NdjsonChangeLogSink(out, Main.createMapper());
+    } catch (IOException | RuntimeException e) {
+      out.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns a sink that writes every entry to two sinks, and closes both when it is closed.
+   * @param first the first sink
+   * @param second the second sink
+   * @return a sink over both
+   */
+  static ChangeLogSink tee(ChangeLogSink first, ChangeLogSink second) {
+    return new ChangeLogSink() {
+      @Override
+      public void write(ChangeLogEntry entry) throws IOException {
+        first.write(entry);
+        second.write(entry);
+      }
+
+      @Override
+      public void close() throws IOException {
+        try {
+          first.close();
+        } finally {
+          second.close();
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,182 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The ChannelWriter class writes UTF-8 text to a file through a FileChannel, using two fixed-size
+ * direct buffers. Text is encoded into one buffer while a background thread writes the other one
+ * to the channel, so the caller only waits for the disk when it fills a buffer before the previous
+ * one is written. Memory use stays at the two buffers however much text is written.
+ */
+class ChannelWriter extends Writer {
+  static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+  private final FileChannel channel;
+  private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  private final CharBuffer chars = CharBuffer.allocate(8192);
+  private final ExecutorService flusher = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "change-log-flusher");
+    t.setDaemon(true);
+    return t;
+  });
+  private ByteBuffer buffer;
+  private ByteBuffer spare;
+  private Future<?> pending;
+  private boolean closed;
+
+  /**
+   * Creates or truncates a file and opens a writer on it.
+   * @param path the file to write
+   * @throws IOException if the file can not be opened
+   */
+  ChannelWriter(Path path) throws IOException {
+    this(path, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Creates or truncates a file and opens a writer on it.
+   * @param path the file to write
+   * @param bufferSize size in bytes of each of the two buffers
+   * @throws IOException if the file can not be opened
+   */
+  ChannelWriter(Path path, int bufferSize) throws IOException {
+    this(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING), bufferSize);
+  }
+
+  /**
+   * Opens a writer that continues at the current position of an open channel and closes the
+   * channel when it is closed.
+   * @param channel the channel to write
+   * @param bufferSize size in bytes of each of the two buffers
+   */
+  ChannelWriter(FileChannel channel, int bufferSize) {
+    this.channel = channel;
+    this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    this.spare = ByteBuffer.allocateDirect(bufferSize);
+  }
+
+  @Override
+  public void write(char[] cbuf, int off, int len) throws IOException {
+    ensureOpen();
+    while (len > 0) {
+      int n = Math.min(len, chars.remaining());
+      chars.put(cbuf, off, n);
+      off += n;
+      len -= n;
+      encode(false);
+    }
+  }
+
+  @Override
+  public void write(String str, int off, int len) throws IOException {
+    ensureOpen();
+    while (len > 0) {
+      int n = Math.min(len, chars.remaining());
+      chars.put(str, off, off + n);
+      off += n;
+      len -= n;
+      encode(false);
+    }
+  }
+
+  @Override
+  public void write(int c) throws IOException {
+    ensureOpen();
+    chars.put((char) c);
+    if (!chars.hasRemaining()) encode(false);
+  }
+
+  /**
+   * Hands everything written so far to the channel and waits until it is written.
+   * @throws IOException if writing fails
+   */
+  @Override
+  public void flush() throws IOException {
+    ensureOpen();
+    encode(false);
+    swap();
+    await();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) return;
+    closed = true;
+    try {
+      encode(true);
+      while (encoder.flush(buffer).isOverflow()) swap();
+      swap();
+      await();
+    } finally {
+      flusher.shutdown();
+      channel.close();
+    }
+  }
+
+  /**
+   * Encodes the pending chars into the buffer, handing full buffers to the flusher. A high
+   * surrogate at the end is kept until its pair is written, unless this is the end of input.
+   */
+  private void encode(boolean endOfInput) throws IOException {
+    chars.flip();
+    while (encoder.encode(chars, buffer, endOfInput).isOverflow()) {
+      swap();
+    }
+    chars.compact();
+  }
+
+  /**
+   * Sends the filled buffer to the flusher and continues in the spare one, once the spare one
+   * has been written out.
+   */
+  private void swap() throws IOException {
+    await();
+    ByteBuffer full = buffer;
+    full.flip();
+    buffer = spare;
+    buffer.clear();
+    spare = full;
+    if (!full.hasRemaining()) return;
+    pending = flusher.submit(() -> {
+      while (full.hasRemaining()) channel.write(full);
+      return null;
+    });
+  }
+
+  private void await() throws IOException {
+    if (pending == null) return;
+    try {
+      pending.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while writing the change log");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+      throw new IOException(e.getCause());
+    } finally {
+      pending = null;
+    }
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed) throw new IOException("Writer is closed");
+  }
+}
@@ -0,0 +1,226 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The ConcurrentLeadDeduplicator class is an incremental deduplicator that many threads can feed
+ * at once, used by DedupServer to share one warm state between requests. The "ID" and "email"
+ * indexes are split into lock stripes by key hash; a lead locks the stripes of its own id and
+ * email and of the email of the survivor it matches, always in stripe order, so leads with
+ * unrelated keys never wait for each other.
+ *
+ * Input positions are handed out while the stripes are held, so two leads that can match each
+ * other get positions in the order they were deduped, and the equal-date tie-break still prefers
+ * the later one. Fed from one thread, the result is the same as LeadDeduplicator.deduplicate.
+ * Change logs are not kept; accept reports what happened to each lead instead.
+ */
+public class ConcurrentLeadDeduplicator {
+  private static final int PAGE_SHIFT = 12;
+  private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+  private final Stripe[] stripes;
+  private final int stripeMask;
+  private final AtomicLong position = new AtomicLong();
+  private final AtomicLong accepted = new AtomicLong();
+  private final AtomicInteger nextSlot = new AtomicInteger();
+  private final AtomicInteger liveCount = new AtomicInteger();
+  private volatile Page[] pages = new Page[16];
+
+  public ConcurrentLeadDeduplicator() {
+    this(64);
+  }
+
+  /**
+   * Creates an empty deduplicator.
+   * @param stripeCount number of lock stripes, rounded up to a power of two; a few times the
+   *                    number of threads feeding it keeps contention low
+   */
+  public ConcurrentLeadDeduplicator(int stripeCount) {
+    if (stripeCount < 1) throw new IllegalArgumentException("stripeCount must be at least 1");
+    int n = Integer.highestOneBit(Math.min(stripeCount, 1 << 16) * 2 - 1);
+    this.stripes = new Stripe[n];
+    for (int i = 0; i < n; i++) stripes[i] = new Stripe();
+    this.stripeMask = n - 1;
+  }
+
+  /**
+   * Dedupes a lead against everything accepted so far, by any thread. The lead is normalized
+   * in place.
+   * @param current the lead
+   * @return what happened to the lead
+   */
+  public IncrementalLeadDeduplicator.Outcome accept(Lead current) {
+    accepted.incrementAndGet();
+    if (!LeadDeduplicator.prepare(current)) return IncrementalLeadDeduplicator.Outcome.INVALID;
+
+    String id = current.getId();
+    String email = current.getEmail();
+    long idHash = current.idHash();
+    long emailHash = current.emailHash();
+    Stripe idStripe = stripes[stripe(idHash)];
+    Stripe emailStripe = stripes[stripe(emailHash)];
+    int extra = -1;
+
+    while (true) {
+      int[] held = lock(stripe(idHash), stripe(emailHash), extra);
+      try {
+        int dupSlot = idStripe.idMap.find(idHash, id);
+        if (dupSlot == KeyIndex.NONE) dupSlot = emailStripe.emailMap.find(emailHash, email);
+
+        if (dupSlot == KeyIndex.NONE) {
+          int slot = add(current, position.getAndIncrement());
+          idStripe.idMap.put(idHash, id, slot);
+          emailStripe.emailMap.put(emailHash, email, slot);
+          return IncrementalLeadDeduplicator.Outcome.KEPT;
+        }
+
+        Page dupPage = page(dupSlot);
+        int dupIndex = dupSlot & (PAGE_SIZE - 1);
+        Lead duplicate = dupPage.leads[dupIndex];
+        String dupEmail = duplicate.getEmail();
+        long dupEmailHash = duplicate.emailHash();
+        int dupStripe = stripe(dupEmailHash);
+        if (Arrays.binarySearch(held, dupStripe) < 0) {
+          // Whoever replaces the survivor holds the stripe of its email; take it and look again.
+          extra = dupStripe;
+          continue;
+        }
+
+        long i = position.getAndIncrement();
+        if (LeadDeduplicator.isCurrentPreferred(current, duplicate, i, dupPage.positions[dupIndex])) {
+          if (!dupPage.tombstones[dupIndex]) {
+            dupPage.tombstones[dupIndex] = true;
+            liveCount.decrementAndGet();
+          }
+          int slot = add(current, i);
+          idStripe.idMap.put(idHash, id, slot);
+          emailStripe.emailMap.put(emailHash, email, slot);
+          if (dupEmailHash != emailHash || !KeyHash.sameEmail(dupEmail, email)) {
+            stripes[dupStripe].emailMap.remove(dupEmailHash, dupEmail);
+          }
+          return IncrementalLeadDeduplicator.Outcome.REPLACED;
+        }
+        return IncrementalLeadDeduplicator.Outcome.DISCARDED;
+      } finally {
+        for (int s = held.length - 1; s >= 0; s--) stripes[held[s]].lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of leads currently surviving.
+   * @return the number of survivors
+   */
+  public int getSurvivorCount() { return liveCount.get(); }
+
+  /**
+   * Returns the number of leads accepted so far, including invalid ones.
+   * @return the number of leads seen
+   */
+  public long getAcceptedCount() { return accepted.get(); }
+
+  /**
+   * Returns the live survivors in the order they were added. Every stripe is locked while the
+   * list is built, so accepts wait for it.
+   * @return a new list of survivors
+   */
+  public List<Lead> survivors() {
+    for (Stripe stripe : stripes) stripe.lock.lock();
+    try {
+      int size = nextSlot.get();
+      List<Lead> out = new ArrayList<>(liveCount.get());
+      for (int slot = 0; slot < size; slot++) {
+        Page page = page(slot);
+        int index = slot & (PAGE_SIZE - 1);
+        if (!page.tombstones[index]) out.add(page.leads[index]);
+      }
+      return out;
+    } finally {
+      for (Stripe stripe : stripes) stripe.lock.unlock();
+    }
+  }
+
+  private int stripe(long hash) {
+    return (int) (hash >>> 40) & stripeMask;
+  }
+
+  /**
+   * Locks the distinct stripes among the given ones in ascending order.
+   * @return the locked stripes, ascending
+   */
+  private int[] lock(int a, int b, int c) {
+    int[] held = c < 0 ? new int[]{a, b} : new int[]{a, b, c};
+    Arrays.sort(held);
+    int n = 0;
+    for (int s : held) {
+      if (n == 0 || held[n - 1] != s) held[n++] = s;
+    }
+    held = Arrays.copyOf(held, n);
+    for (int s : held) stripes[s].lock.lock();
+    return held;
+  }
+
+  /**
+   * Stores a new survivor. The slot is published to other threads by the stripe locks held
+   * while its index entries are put.
+   */
+  private int add(Lead lead, long position) {
+    int slot = nextSlot.getAndIncrement();
+    if (slot < 0) throw new IllegalStateException("More than " + Integer.MAX_VALUE + " survivors");
+    Page page = page(slot);
+    int index = slot & (PAGE_SIZE - 1);
+    page.leads[index] = lead;
+    page.positions[index] = position;
+    liveCount.incrementAndGet();
+    return slot;
+  }
+
+  private Page page(int slot) {
+    int p = slot >>> PAGE_SHIFT;
+    Page[] current = pages;
+    if (p < current.length && current[p] != null) return current[p];
+    synchronized (this) {
+      current = pages;
+      if (p >= current.length) {
+        current = Arrays.copyOf(current, Math.max(p + 1, current.length * 2));
+      }
+      if (current[p] == null) current[p] = new Page();
+      pages = current;
+      return current[p];
+    }
+  }
+
+  /**
+   * A fixed block of survivor slots. Pages never move once created, so a slot can be read
+   * while other threads add survivors to later slots.
+   */
+  private static final class Page {
+    final Lead[] leads = new Lead[PAGE_SIZE];
+    final long[] positions = new long[PAGE_SIZE];
+    final boolean[] tombstones = new boolean[PAGE_SIZE];
+  }
+
+  /**
+   * One lock and the part of the "ID" and "email" indexes whose key hashes map to it.
+   */
+  private final class Stripe {
+    final ReentrantLock lock = new ReentrantLock();
+    final KeyIndex idMap = new KeyIndex(16) {
+      @Override
+      protected boolean matches(int slot, String id) {
+        return page(slot).leads[slot & (PAGE_SIZE - 1)].getId().equals(id);
+      }
+    };
+    final KeyIndex emailMap = new KeyIndex(16) {
+      @Override
+      protected boolean matches(int slot, String email) {
+        return KeyHash.sameEmail(page(slot).leads[slot & (PAGE_SIZE - 1)].getEmail(), email);
+      }
+    };
+  }
+}
@@ -0,0 +1,377 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The DedupCheckpoint class journals the state of an in-memory IncrementalLeadDeduplicator to a
+ * file, so a long run can resume where it stopped instead of starting over. The deduplicator
+ * collects what changed since the last checkpoint in a batch: the survivor slots added, with the
+ * slot each one replaced, and the change log entries and invalid logs kept for snapshot. commit
+ * hands the batch to a background thread that appends it to the file, so accept never waits for
+ * the disk.
+ *
+ * The key indexes are not written out. Every put and remove they received is implied by the slot
+ * records, so replaying the slots in order rebuilds them exactly, stale id entries included, and
+ * each survivor is written once however many checkpoints follow.
+ *
+ * Layout, all numbers big-endian: a header of long magic and int version, then batches. A batch
+ * is its slot, log and invalid records followed by a commit record holding the number of leads
+ * accepted, the duplicate counter, and a CRC32 of the batch. A batch whose commit is missing or
+ * does not match was torn by a crash; resume drops it and everything after it.
+ */
+class DedupCheckpoint implements Closeable {
+  static final long MAGIC = 0x445550434B505431L;
+  static final int VERSION = 1;
+  private static final int HEADER_BYTES = 12;
+  private static final byte SLOT = 1;
+  private static final byte LOG = 2;
+  private static final byte INVALID = 3;
+  private static final byte COMMIT = 4;
+
+  private final FileChannel channel;
+  private final CRC32 crc = new CRC32();
+  private final DataOutputStream out;
+  private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "dedup-checkpoint");
+    t.setDaemon(true);
+    return t;
+  });
+  private Batch batch = new Batch();
+  private long restoredDuplicates;
+  private volatile IOException failure;
+
+  private DedupCheckpoint(FileChannel channel) {
+    this.channel = channel;
+    this.out = new DataOutputStream(new CheckedOutputStream(
+            new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), crc));
+  }
+
+  /**
+   * Starts a new checkpoint file, replacing it if it exists.
+   * @param file the checkpoint file
+   * @return a checkpoint for an empty deduplicator
+   * @throws IOException if the file can not be written
+   */
+  static DedupCheckpoint create(Path file) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING);
+    DedupCheckpoint checkpoint = new DedupCheckpoint(channel);
+    try {
+      checkpoint.out.writeLong(MAGIC);
+      checkpoint.out.writeInt(VERSION);
+      checkpoint.out.flush();
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    return checkpoint;
+  }
+
+  /**
+   * Replays the committed batches of a checkpoint file into an empty state, cuts off a torn
+   * batch at the end, and returns a checkpoint that appends to the file.
+   * @param file the checkpoint file
+   * @param state an empty state, filled with the survivors and indexes
+   * @param logs receives the change log entries kept for snapshot
+   * @param invalidLogs receives the invalid logs
+   * @return a checkpoint that continues the file
+   * @throws IOException if the file can not be read or is not a checkpoint
+   */
+  static DedupCheckpoint resume(Path file, MemoryDedupState state, List<ChangeLogEntry> logs,
+                                List<String> invalidLogs) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.READ);
+    try {
+      channel.position(0);
+      CRC32 readCrc = new CRC32();
+      CountingInputStream counting = new CountingInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+      DataInputStream in = new DataInputStream(new CheckedInputStream(counting, readCrc));
+      if (channel.size() < HEADER_BYTES || in.readLong() != MAGIC) throw new IOException("Not a dedup checkpoint file");
+      int version = in.readInt();
+      if (version != VERSION) throw new IOException("Unsupported dedup checkpoint version " + version);
+
+      long size = channel.size();
+      long end = counting.count;
+      long duplicates = 0;
+      Batch pending = new Batch();
+      readCrc.reset();
+      try {
+        while (true) {
+          byte type = in.readByte();
+          if (type == SLOT) {
+            int replaced = in.readInt();
+            long position = in.readLong();
+            pending.slot(readLead(in, size), position, replaced);
+          } else if (type == LOG) {
+            Lead source = readLead(in, size);
+            pending.logs.add(new ChangeLogEntry(source, readLead(in, size)));
+          } else if (type == INVALID) {
+            pending.invalidLogs.add(readString(in, size));
+          } else if (type == COMMIT) {
+            long accepted = in.readLong();
+            long batchDuplicates = in.readLong();
+            long expected = readCrc.getValue();
+            if (in.readLong() != expected) break;
+            replay(pending, state);
+            state.setPosition(accepted);
+            logs.addAll(pending.logs);
+            invalidLogs.addAll(pending.invalidLogs);
+            duplicates = batchDuplicates;
+            end = counting.count;
+            pending = new Batch();
+            readCrc.reset();
+          } else {
+            break;
+          }
+        }
+      } catch (EOFException e) {
+        // The last batch was cut short; it is dropped below.
+      }
+
+      channel.truncate(end);
+      channel.position(end);
+      DedupCheckpoint checkpoint = new DedupCheckpoint(channel);
+      checkpoint.restoredDuplicates = duplicates;
+      return checkpoint;
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Redoes, slot by slot, the state changes IncrementalLeadDeduplicator made when it kept each
+   * survivor, in the same order.
+   */
+  private static void replay(Batch batch, MemoryDedupState state) throws IOException {
+    for (int i = 0; i < batch.slots; i++) {
+      Lead lead = batch.leads[i];
+      int replaced = batch.replaced[i];
+      if (!LeadDeduplicator.prepare(lead)) throw new IOException("Invalid survivor in dedup checkpoint");
+      Lead duplicate = replaced < 0 ? null : state.lead(replaced);
+      if (duplicate != null) state.tombstone(replaced);
+      long handle = state.add(lead, batch.positions[i]);
+      state.putId(lead.getId(), lead.idHash(), handle);
+      state.putEmail(lead.getEmail(), lead.emailHash(), handle);
+      if (duplicate != null && (duplicate.emailHash() != lead.emailHash()
+              || !KeyHash.sameEmail(duplicate.getEmail(), lead.getEmail()))) {
+        state.removeEmail(duplicate.getEmail(), duplicate.emailHash());
+      }
+    }
+  }
+
+  /**
+   * Returns the duplicate counter of the last committed batch read by resume.
+   * @return the counter used for change log sampling
+   */
+  long restoredDuplicates() { return restoredDuplicates; }
+
+  /**
+   * Adds a new survivor slot to the current batch.
+   * @param lead the survivor, already normalized
+   * @param position index of the lead in the input
+   * @param replaced the slot it replaced, or DedupState.NONE
+   */
+  void slot(Lead lead, long position, long replaced) {
+    batch.slot(lead, position, (int) replaced);
+  }
+
+  void log(ChangeLogEntry entry) { batch.logs.add(entry); }
+
+  void invalid(String invalidLog) { batch.invalidLogs.add(invalidLog); }
+
+  /**
+   * Hands the current batch to the background writer and starts a new one. Only the first
+   * failure of the writer is reported, by this or a later call.
+   * @param accepted number of leads accepted so far, the input position to resume from
+   * @param duplicates the duplicate counter used for change log sampling
+   * @throws UncheckedIOException if writing an earlier batch failed
+   */
+  void commit(long accepted, long duplicates) {
+    IOException failed = failure;
+    if (failed != null) throw new UncheckedIOException(failed);
+    Batch full = batch;
+    full.accepted = accepted;
+    full.duplicates = duplicates;
+    batch = new Batch();
+    writer.execute(() -> {
+      if (failure != null) return;
+      try {
+        write(full);
+      } catch (IOException e) {
+        failure = e;
+      }
+    });
+  }
+
+  /**
+   * Appends a batch and its commit record and forces them to disk. Runs on the writer thread.
+   */
+  private void write(Batch b) throws IOException {
+    crc.reset();
+    for (int i = 0; i < b.slots; i++) {
+      out.writeByte(SLOT);
+      out.writeInt(b.replaced[i]);
+      out.writeLong(b.positions[i]);
+      writeLead(b.leads[i]);
+    }
+    for (ChangeLogEntry entry : b.logs) {
+      out.writeByte(LOG);
+      writeLead(entry.getSource());
+      writeLead(entry.getKept());
+    }
+    for (String invalidLog : b.invalidLogs) {
+      out.writeByte(INVALID);
+      writeString(invalidLog);
+    }
+    out.writeByte(COMMIT);
+    out.writeLong(b.accepted);
+    out.writeLong(b.duplicates);
+    out.writeLong(crc.getValue());
+    out.flush();
+    channel.force(false);
+  }
+
+  /**
+   * Waits for every committed batch to be written and closes the file. Batches not committed
+   * are dropped.
+   * @throws IOException if writing a batch failed or the file can not be closed
+   */
+  @Override
+  public void close() throws IOException {
+    writer.shutdown();
+    try {
+      while (!writer.awaitTermination(1, TimeUnit.MINUTES)) {
+        // Forcing a large batch to a slow disk can take a while.
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      channel.close();
+      throw new InterruptedIOException("Interrupted while writing checkpoint");
+    }
+    channel.close();
+    if (failure != null) throw failure;
+  }
+
+  private void writeLead(Lead lead) throws IOException {
+    Instant date = lead.getEntryDate();
+    out.writeLong(date == null ? 0 : date.getEpochSecond());
+    out.writeInt(date == null ? -1 : date.getNano());
+    writeString(lead.getId());
+    writeString(lead.getEmail());
+    writeString(lead.getFirstName());
+    writeString(lead.getLastName());
+    writeString(lead.getAddress());
+  }
+
+  private void writeString(String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static Lead readLead(DataInputStream in, long fileSize) throws IOException {
+    long seconds = in.readLong();
+    int nanos = in.readInt();
+    String id = readString(in, fileSize);
+    String email = readString(in, fileSize);
+    String firstName = readString(in, fileSize);
+    String lastName = readString(in, fileSize);
+    String address = readString(in, fileSize);
+    return new Lead(id, email, firstName, lastName, address, nanos < 0 ? null : Instant.ofEpochSecond(seconds, nanos));
+  }
+
+  /**
+   * Reads a length-prefixed string. A length longer than the file can only come from a torn
+   * batch, so it is reported as the end of the file.
+   */
+  private static String readString(DataInputStream in, long fileSize) throws IOException {
+    int length = in.readInt();
+    if (length < 0) return null;
+    if (length > fileSize) throw new EOFException("String longer than the checkpoint file");
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * What changed since the last commit. Filled on the deduping thread and read on the writer
+   * thread only after commit hands it over.
+   */
+  private static final class Batch {
+    Lead[] leads = new Lead[64];
+    long[] positions = new long[64];
+    int[] replaced = new int[64];
+    int slots;
+    final List<ChangeLogEntry> logs = new ArrayList<>();
+    final List<String> invalidLogs = new ArrayList<>();
+    long accepted;
+    long duplicates;
+
+    void slot(Lead lead, long position, int replacedSlot) {
+      if (slots == leads.length) {
+        int capacity = slots * 2;
+        leads = Arrays.copyOf(leads, capacity);
+        positions = Arrays.copyOf(positions, capacity);
+        replaced = Arrays.copyOf(replaced, capacity);
+      }
+      leads[slots] = lead;
+      positions[slots] = position;
+      replaced[slots] = replacedSlot;
+      slots++;
+    }
+  }
+
+  /**
+   * Counts the bytes read, so resume knows where the last committed batch ends.
+   */
+  private static final class CountingInputStream extends FilterInputStream {
+    long count;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) count++;
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      if (n > 0) count += n;
+      return n;
+    }
+  }
+}
@@ -0,0 +1,213 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The DedupMetrics class counts what the dedup pipeline does and where its time goes: one
+ * LongAdder per decision branch of accept (invalid, new key, id hit, email hit, replaced,
+ * discarded) and a LatencyHistogram per pipeline stage and per outcome. The counters are read
+ * through JMX while a run is going and written as JSON at the end of it.
+ *
+ * Counting a lead is one or two uncontended adds. Only one accept in SAMPLE_EVERY is timed, so
+ * the clock is read twice per 64 leads instead of twice per lead; estimatedDedupeNanos scales the
+ * samples back up to the whole run.
+ */
+public class DedupMetrics implements DedupMetricsMXBean {
+  /** One accept in this many is timed, a power of two. */
+  static final int SAMPLE_EVERY = 64;
+
+  /**
+   * The stages of a run of Main.
+   */
+  public enum Stage {
+    /** Reading and binding the input, without the dedupe time spent in between leads. */
+    PARSE,
+    /** Deduping the leads and taking the snapshot. */
+    DEDUPE,
+    /** Rendering the deduped JSON. */
+    SERIALIZE,
+    /** Writing the log, report and snapshot files. */
+    WRITE
+  }
+
+  private static final IncrementalLeadDeduplicator.Outcome[] OUTCOMES = IncrementalLeadDeduplicator.Outcome.values();
+
+  private final LongAdder[] outcomes = new LongAdder[OUTCOMES.length];
+  private final LongAdder idHits = new LongAdder();
+  private final LongAdder emailHits = new LongAdder();
+  private final LatencyHistogram[] accepts = new LatencyHistogram[OUTCOMES.length];
+  private final LatencyHistogram[] stages = new LatencyHistogram[Stage.values().length];
+  private final LongAdder[] stageNanos = new LongAdder[Stage.values().length];
+
+  public DedupMetrics() {
+    for (int i = 0; i < OUTCOMES.length; i++) {
+      outcomes[i] = new LongAdder();
+      accepts[i] = new LatencyHistogram();
+    }
+    for (int i = 0; i < stages.length; i++) {
+      stages[i] = new LatencyHistogram();
+      stageNanos[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Counts the outcome of one accept.
+   * @param outcome what happened to the lead
+   * @param idHit true if the lead matched a survivor by id rather than by email
+   */
+  void count(IncrementalLeadDeduplicator.Outcome outcome, boolean idHit) {
+    outcomes[outcome.ordinal()].increment();
+    if (outcome == IncrementalLeadDeduplicator.Outcome.REPLACED
+            || outcome == IncrementalLeadDeduplicator.Outcome.DISCARDED) {
+      (idHit ? idHits : emailHits).increment();
+    }
+  }
+
+  /**
+   * Records the duration of a sampled accept.
+   * @param outcome what happened to the lead
+   * @param nanos how long accept took
+   */
+  void recordAccept(IncrementalLeadDeduplicator.Outcome outcome, long nanos) {
+    accepts[outcome.ordinal()].record(nanos);
+  }
+
+  /**
+   * Records one pass through a stage. A stage can be recorded several times, once per batch
+   * or request for example.
+   * @param stage the stage
+   * @param nanos how long the pass took
+   */
+  public void recordStage(Stage stage, long nanos) {
+    stages[stage.ordinal()].record(nanos);
+    stageNanos[stage.ordinal()].add(Math.max(0, nanos));
+  }
+
+  /**
+   * Estimates the total time spent in accept from the sampled accepts.
+   * @return the estimated nanoseconds
+   */
+  public long estimatedDedupeNanos() {
+    double total = 0;
+    for (int i = 0; i < OUTCOMES.length; i++) {
+      LatencyHistogram h = accepts[i];
+      if (h.count() > 0) total += h.mean() * outcomes[i].sum();
+    }
+    return (long) total;
+  }
+
+  @Override public long getLeads() {
+    long n = 0;
+    for (LongAdder a : outcomes) n += a.sum();
+    return n;
+  }
+  @Override public long getInvalid() { return count(IncrementalLeadDeduplicator.Outcome.INVALID); }
+  @Override public long getIdHits() { return idHits.sum(); }
+  @Override public long getEmailHits() { return emailHits.sum(); }
+  @Override public long getKept() { return count(IncrementalLeadDeduplicator.Outcome.KEPT); }
+  @Override public long getReplaced() { return count(IncrementalLeadDeduplicator.Outcome.REPLACED); }
+  @Override public long getDiscarded() { return count(IncrementalLeadDeduplicator.Outcome.DISCARDED); }
+
+  private long count(IncrementalLeadDeduplicator.Outcome outcome) {
+    return outcomes[outcome.ordinal()].sum();
+  }
+
+  @Override
+  public Map<String, Long> getStageMillis() {
+    Map<String, Long> out = new LinkedHashMap<>();
+    for (Stage stage : Stage.values()) out.put(name(stage), stageNanos[stage.ordinal()].sum() / 1_000_000);
+    return out;
+  }
+
+  @Override
+  public Map<String, Long> getAcceptP99Nanos() {
+    Map<String, Long> out = new LinkedHashMap<>();
+    for (IncrementalLeadDeduplicator.Outcome outcome : OUTCOMES) {
+      out.put(name(outcome), accepts[outcome.ordinal()].percentile(99));
+    }
+    return out;
+  }
+
+  /**
+   * Returns every counter and histogram summary, in the layout of the end-of-run JSON.
+   * @return a map that serializes to the metrics JSON
+   */
+  public Map<String, Object> toMap() {
+    Map<String, Object> out = new LinkedHashMap<>();
+    out.put("leads", getLeads());
+    out.put("invalid", getInvalid());
+    out.put("idHits", getIdHits());
+    out.put("emailHits", getEmailHits());
+    out.put("kept", getKept());
+    out.put("replaced", getReplaced());
+    out.put("discarded", getDiscarded());
+    Map<String, Object> stageMap = new LinkedHashMap<>();
+    for (Stage stage : Stage.values()) {
+      Map<String, Object> summary = summary(stages[stage.ordinal()], 1000, "Micros");
+      summary.put("totalMillis", stageNanos[stage.ordinal()].sum() / 1_000_000);
+      stageMap.put(name(stage), summary);
+    }
+    out.put("stages", stageMap);
+    Map<String, Object> acceptMap = new LinkedHashMap<>();
+    for (IncrementalLeadDeduplicator.Outcome outcome : OUTCOMES) {
+      acceptMap.put(name(outcome), summary(accepts[outcome.ordinal()], 1, "Nanos"));
+    }
+    out.put("sampledAccepts", acceptMap);
+    return out;
+  }
+
+  private static Map<String, Object> summary(LatencyHistogram h, long unit, String suffix) {
+    Map<String, Object> out = new LinkedHashMap<>();
+    out.put("count", h.count());
+    out.put("p50" + suffix, h.percentile(50) / unit);
+    out.put("p99" + suffix, h.percentile(99) / unit);
+    out.put("max" + suffix, h.max() / unit);
+    return out;
+  }
+
+  /**
+   * Writes the end-of-run JSON summary.
+   * @param path the JSON file, replaced if it exists
+   * @param mapper the mapper from Main.createMapper
+   * @throws IOException if writing fails
+   */
+  public void writeJson(Path path, ObjectMapper mapper) throws IOException {
+    mapper.writerWithDefaultPrettyPrinter().writeValue(path.toFile(), toMap());
+  }
+
+  /**
+   * Registers these metrics with the platform MBean server as
+   * org.example:type=DedupMetrics,name=the given name.
+   * @param name tells several registered metrics apart
+   * @return the name they were registered under, pass it to unregister
+   * @throws JMException if the name is taken or invalid
+   */
+  public ObjectName register(String name) throws JMException {
+    ObjectName objectName = new ObjectName("org.example:type=DedupMetrics,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    return objectName;
+  }
+
+  /**
+   * Removes metrics registered with register.
+   * @param objectName the name register returned
+   * @throws JMException if nothing is registered under the name
+   */
+  public static void unregister(ObjectName objectName) throws JMException {
+    ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+  }
+
+  private static String name(Enum<?> e) {
+    return e.name().toLowerCase(Locale.ROOT);
+  }
+}
@@ -0,0 +1,29 @@
+package org.example;
+
+import java.util.Map;
+
+/**
+ * The JMX view of DedupMetrics, registered with DedupMetrics.register. Counters are totals
+ * since the metrics were created.
+ */
+public interface DedupMetricsMXBean {
+  long getLeads();
+  long getInvalid();
+  long getIdHits();
+  long getEmailHits();
+  long getKept();
+  long getReplaced();
+  long getDiscarded();
+
+  /**
+   * Returns the total time spent in each pipeline stage.
+   * @return milliseconds by stage name
+   */
+  Map<String, Long> getStageMillis();
+
+  /**
+   * Returns the 99th percentile of the sampled accept latencies for each outcome.
+   * @return nanoseconds by outcome name
+   */
+  Map<String, Long> getAcceptP99Nanos();
+}
@@ -0,0 +1,193 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The DedupServer class runs deduplication as a long-lived HTTP service on the JDK's built-in
+ * HttpServer, so batches do not pay for JVM startup and ObjectMapper warm-up each time. Every
+ * request dedupes against one shared ConcurrentLeadDeduplicator.
+ *
+ * POST /dedup takes a {"leads": [...]} batch and answers {"decisions": [...], "survivors": n}
+ * with the id and outcome (KEPT, REPLACED, DISCARDED or INVALID) of each lead in batch order.
+ * GET /metrics answers the request, lead and outcome counters and the request latency
+ * percentiles in microseconds.
+ *
+ * Requests are handled on a fixed pool with a bounded queue; when the queue is full the accepting
+ * thread handles the request itself, which stops it accepting more until there is room.
+ */
+public class DedupServer implements Closeable {
+  private static final int QUEUE_PER_THREAD = 64;
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final ConcurrentLeadDeduplicator dedup;
+  private final ObjectReader batchReader;
+  private final ObjectWriter writer;
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder[] outcomes = new LongAdder[IncrementalLeadDeduplicator.Outcome.values().length];
+
+  private DedupServer(HttpServer server, ExecutorService executor, ObjectMapper mapper,
+                      ConcurrentLeadDeduplicator dedup) {
+    this.server = server;
+    this.executor = executor;
+    this.dedup = dedup;
+    this.batchReader = mapper.readerFor(LeadWrapper.class);
+    this.writer = mapper.writer();
+    for (int i = 0; i < outcomes.length; i++) outcomes[i] = new LongAdder();
+    server.createContext("/dedup", this::handleDedup);
+    server.createContext("/metrics", this::handleMetrics);
+  }
+
+  /**
+   * Starts a server with an empty dedup state.
+   * @param address the address to listen on, port 0 picks a free port
+   * @param threads number of request threads
+   * @return the running server
+   * @throws IOException if the address can not be bound
+   */
+  public static DedupServer start(InetSocketAddress address, int threads) throws IOException {
+    if (threads < 1) throw new IllegalArgumentException("threads must be at least 1");
+    HttpServer server = HttpServer.create(address, 0);
+    ExecutorService executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(threads * QUEUE_PER_THREAD), r -> {
+              Thread t = new Thread(r, "dedup-http");
+              t.setDaemon(true);
+              return t;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+    server.setExecutor(executor);
+    DedupServer dedupServer = new DedupServer(server, executor, Main.createMapper(),
+            new ConcurrentLeadDeduplicator(threads * 8));
+    server.start();
+    return dedupServer;
+  }
+
+  /**
+   * Returns the port the server listens on.
+   * @return the bound port
+   */
+  public int getPort() { return server.getAddress().getPort(); }
+
+  /**
+   * Returns the shared dedup state.
+   * @return the deduplicator every request feeds
+   */
+  public ConcurrentLeadDeduplicator getDeduplicator() { return dedup; }
+
+  /**
+   * Stops accepting requests, waits up to a second for requests in progress and stops the
+   * request threads.
+   */
+  @Override
+  public void close() {
+    server.stop(1);
+    executor.shutdown();
+  }
+
+  private void handleDedup(HttpExchange exchange) throws IOException {
+    long start = System.nanoTime();
+    try {
+      if (!"POST".equals(exchange.getRequestMethod())) {
+        respond(exchange, 405, error("Use POST"));
+        return;
+      }
+      LeadWrapper batch;
+      try (InputStream in = exchange.getRequestBody()) {
+        batch = batchReader.readValue(in);
+      } catch (JsonProcessingException e) {
+        errors.increment();
+        respond(exchange, 400, error("Bad JSON " + e.getOriginalMessage()));
+        return;
+      }
+      List<Lead> leads = batch.getLeads() == null ? new ArrayList<>() : batch.getLeads();
+      List<Map<String, Object>> decisions = new ArrayList<>(leads.size());
+      for (Lead lead : leads) {
+        IncrementalLeadDeduplicator.Outcome outcome = lead == null
+                ? IncrementalLeadDeduplicator.Outcome.INVALID
+                : dedup.accept(lead);
+        outcomes[outcome.ordinal()].increment();
+        Map<String, Object> decision = new LinkedHashMap<>();
+        decision.put("id", lead == null ? null : lead.getId());
+        decision.put("outcome", outcome);
+        decisions.add(decision);
+      }
+      Map<String, Object> body = new LinkedHashMap<>();
+      body.put("decisions", decisions);
+      body.put("survivors", dedup.getSurvivorCount());
+      respond(exchange, 200, body);
+    } catch (RuntimeException e) {
+      errors.increment();
+      respond(exchange, 500, error(String.valueOf(e)));
+    } finally {
+      requests.increment();
+      latency.record(System.nanoTime() - start);
+    }
+  }
+
+  private void handleMetrics(HttpExchange exchange) throws IOException {
+    try (InputStream in = exchange.getRequestBody()) {
+      in.transferTo(OutputStream.nullOutputStream());
+    }
+    respond(exchange, 200, metrics());
+  }
+
+  /**
+   * Returns the counters and latency percentiles served at /metrics.
+   * @return a map that serializes to the metrics JSON
+   */
+  Map<String, Object> metrics() {
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("requests", requests.sum());
+    body.put("errors", errors.sum());
+    body.put("leads", dedup.getAcceptedCount());
+    body.put("survivors", dedup.getSurvivorCount());
+    for (IncrementalLeadDeduplicator.Outcome outcome : IncrementalLeadDeduplicator.Outcome.values()) {
+      body.put(outcome.name().toLowerCase(), outcomes[outcome.ordinal()].sum());
+    }
+    Map<String, Object> micros = new LinkedHashMap<>();
+    micros.put("p50", latency.percentile(50) / 1000);
+    micros.put("p99", latency.percentile(99) / 1000);
+    micros.put("p999", latency.percentile(99.9) / 1000);
+    micros.put("max", latency.max() / 1000);
+    body.put("latencyMicros", micros);
+    return body;
+  }
+
+  private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    writer.writeValue(bytes, body);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.size());
+    try (OutputStream out = exchange.getResponseBody()) {
+      bytes.writeTo(out);
+    }
+  }
+
+  private static Map<String, Object> error(String message) {
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("error", message);
+    return body;
+  }
+}
@@ -0,0 +1,101 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The DedupState interface is the storage behind IncrementalLeadDeduplicator: the surviving
+ * leads and the "ID" and "email" indexes that point at them. Survivors are identified by a
+ * handle, which is a slot number for the in-memory state and a record offset for the on-disk one.
+ */
+interface DedupState extends Closeable {
+  long NONE = -1;
+
+  /**
+   * Finds the survivor indexed under an id.
+   * @param id the trimmed id
+   * @param hash KeyHash.id of the id, usually cached on the lead
+   * @return the handle of the survivor or NONE
+   */
+  long findId(String id, long hash);
+
+  default long findId(String id) { return findId(id, KeyHash.id(id)); }
+
+  /**
+   * Finds the survivor indexed under an email. Emails are matched ignoring case, the same way
+   * LeadDeduplicator.normalizeEmail compares them.
+   * @param email the trimmed email
+   * @param hash KeyHash.email of the email, usually cached on the lead
+   * @return the handle of the survivor or NONE
+   */
+  long findEmail(String email, long hash);
+
+  default long findEmail(String email) { return findEmail(email, KeyHash.email(email)); }
+
+  Lead lead(long handle);
+  long position(long handle);
+
+  /**
+   * Tells if a survivor found by findId or findEmail may be deduped against a lead. Every
+   * survivor may, except in a windowed state.
+   * @param handle the survivor
+   * @param current the lead being deduped
+   * @return false if the survivor must be treated as not found
+   */
+  default boolean matchable(long handle, Lead current) { return true; }
+
+  /**
+   * Appends a new survivor.
+   * @param lead the surviving lead
+   * @param position index of the lead in the input
+   * @return the handle of the new survivor
+   */
+  long add(Lead lead, long position);
+
+  /**
+   * Marks a survivor as replaced. Index entries pointing at it stay resolvable.
+   * @param handle the survivor to tombstone
+   */
+  void tombstone(long handle);
+
+  /**
+   * Indexes a survivor under its id and email, or removes an email, given the key hashes.
+   */
+  void putId(String id, long hash, long handle);
+  void putEmail(String email, long hash, long handle);
+  void removeEmail(String email, long hash);
+
+  default void putId(String id, long handle) { putId(id, KeyHash.id(id), handle); }
+  default void putEmail(String email, long handle) { putEmail(email, KeyHash.email(email), handle); }
+  default void removeEmail(String email) { removeEmail(email, KeyHash.email(email)); }
+
+  /**
+   * Returns the input position for the next lead and advances the counter.
+   * @return the position of the next lead
+   */
+  long nextPosition();
+
+  /**
+   * Returns the number of positions handed out so far.
+   * @return the number of leads seen
+   */
+  long acceptedCount();
+
+  int liveCount();
+
+  /**
+   * Returns the live survivors in the order they were added.
+   * @return a new list of survivors
+   */
+  List<Lead> survivors();
+
+  /**
+   * Makes every change so far durable. The in-memory state has nothing to flush.
+   * @throws IOException if writing fails
+   */
+  default void flush() throws IOException {}
+
+  @Override
+  default void close() throws IOException {}
+}
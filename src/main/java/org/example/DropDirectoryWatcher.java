@@ -0,0 +1,384 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * The DropDirectoryWatcher class ingests lead files as they land in a drop directory, for
+ * upstreams that deliver files through the day. A WatchService reports new .json, .ndjson and
+ * .jsonl files; each file is parsed on a small pool and its leads are applied, in the order the
+ * files arrived, to one warm IncrementalLeadDeduplicator. After each file a Delta lists the
+ * survivors it added and the earlier survivors it replaced.
+ *
+ * Parsing and deduping are joined by bounded queues: at most QUEUED_FILES files wait to be
+ * deduped and each holds at most QUEUED_CHUNKS chunks of parsed leads, so a burst of files
+ * stalls the parsers instead of filling the heap. Files already in the directory at start are
+ * applied first, in path order. Each file name is applied once; upstreams should write under
+ * another name or directory and move the finished file in, but a file that is still growing is
+ * only read once its size has stopped changing for STABLE_MILLIS.
+ */
+public class DropDirectoryWatcher implements Closeable {
+  static final int QUEUED_FILES = 16;
+  static final int QUEUED_CHUNKS = 8;
+  static final int CHUNK_SIZE = 4096;
+  static final long STABLE_MILLIS = 50;
+  private static final List<Lead> END = new ArrayList<>();
+  private static final FileJob STOP = new FileJob(null, 0);
+
+  private final Path dir;
+  private final ObjectMapper mapper;
+  private final IncrementalLeadDeduplicator dedup;
+  private final Consumer<Delta> listener;
+  private final WatchService watchService;
+  private final ExecutorService parsers;
+  private final BlockingQueue<FileJob> files = new ArrayBlockingQueue<>(QUEUED_FILES);
+  private final Set<Path> seen = new HashSet<>();
+  private final Thread watcher;
+  private final Thread deduper;
+  private volatile boolean closed;
+
+  private DropDirectoryWatcher(Path dir, ObjectMapper mapper, IncrementalLeadDeduplicator dedup, int parallelism,
+                               Consumer<Delta> listener) throws IOException {
+    this.dir = dir;
+    this.mapper = mapper;
+    this.dedup = dedup;
+    this.listener = listener;
+    this.watchService = dir.getFileSystem().newWatchService();
+    this.parsers = Executors.newFixedThreadPool(parallelism, r -> {
+      Thread t = new Thread(r, "drop-parser");
+      t.setDaemon(true);
+      return t;
+    });
+    this.watcher = new Thread(this::watch, "drop-watcher");
+    this.deduper = new Thread(this::dedupe, "drop-dedup");
+    deduper.setDaemon(true);
+  }
+
+  /**
+   * Starts watching a directory. The deduplicator is fed on a thread of the watcher from then on;
+   * read it only from the listener or after close. Like a running HttpServer, the watching
+   * thread keeps the JVM alive until close.
+   * @param dir the drop directory
+   * @param mapper the mapper from Main.createMapper
+   * @param dedup the warm state every file is applied to
+   * @param parallelism number of files parsed at the same time
+   * @param listener receives the Delta of each file, on the dedup thread, in file order; it
+   *                 must not throw, the files after it would not be applied
+   * @return the running watcher
+   * @throws IOException if the directory can not be watched or listed
+   */
+  public static DropDirectoryWatcher start(Path dir, ObjectMapper mapper, IncrementalLeadDeduplicator dedup,
+                                           int parallelism, Consumer<Delta> listener) throws IOException {
+    if (parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1");
+    DropDirectoryWatcher w = new DropDirectoryWatcher(dir, mapper, dedup, parallelism, listener);
+    try {
+      // Register before listing, so a file landing in between is reported by one or the other.
+      dir.register(w.watchService, StandardWatchEventKinds.ENTRY_CREATE);
+      w.deduper.start();
+      w.watcher.start();
+    } catch (IOException | RuntimeException e) {
+      w.watchService.close();
+      w.parsers.shutdown();
+      throw e;
+    }
+    return w;
+  }
+
+  /**
+   * Applies the files already in the directory, then every file reported by the WatchService.
+   * A lost event overflow lists the directory again.
+   */
+  private void watch() {
+    try {
+      scan();
+      while (!closed) {
+        WatchKey key = watchService.take();
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            scan();
+          } else {
+            offer(dir.resolve((Path) event.context()), System.nanoTime());
+          }
+        }
+        if (!key.reset()) break;
+      }
+    } catch (ClosedWatchServiceException | InterruptedException e) {
+      // close stops the watcher this way.
+    } catch (IOException e) {
+      if (!closed) throw new UncheckedIOException(e);
+    } finally {
+      putUninterruptibly(STOP);
+    }
+  }
+
+  private void scan() throws IOException, InterruptedException {
+    long now = System.nanoTime();
+    for (Path file : MultiFileLeadReader.inputFiles(dir)) offer(file, now);
+  }
+
+  /**
+   * Starts parsing a new input file and queues it for the dedup thread, waiting while
+   * QUEUED_FILES files are already queued.
+   */
+  private void offer(Path file, long landed) throws InterruptedException {
+    if (!MultiFileLeadReader.isInputFile(file) || !seen.add(file)) return;
+    FileJob job = new FileJob(file, landed);
+    parsers.execute(() -> parse(job));
+    files.put(job);
+  }
+
+  /**
+   * Waits for a file to stop growing and parses it into chunks for the dedup thread.
+   */
+  private void parse(FileJob job) {
+    try {
+      waitUntilStable(job.file);
+      if (Files.size(job.file) > 0) Main.readLeads(job.file.toFile(), mapper, 1, job::add);
+    } catch (IOException | RuntimeException e) {
+      job.error = e;
+    } finally {
+      // The leads parsed before an error are queued too, they are part of the delta.
+      try {
+        job.flush();
+      } catch (RuntimeException e) {
+        if (job.error == null) job.error = e;
+      } finally {
+        job.putEnd();
+      }
+    }
+  }
+
+  private void waitUntilStable(Path file) throws IOException {
+    long size = Files.size(file);
+    while (true) {
+      try {
+        Thread.sleep(STABLE_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for " + file);
+      }
+      long now = Files.size(file);
+      if (now == size) return;
+      size = now;
+    }
+  }
+
+  /**
+   * Applies queued files to the deduplicator one at a time, in the order they were queued.
+   */
+  private void dedupe() {
+    try {
+      for (FileJob job = files.take(); job != STOP; job = files.take()) {
+        listener.accept(apply(job));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private Delta apply(FileJob job) throws InterruptedException {
+    List<Lead> added = new ArrayList<>();
+    Set<Lead> live = new HashSet<>();
+    List<Lead> removed = new ArrayList<>();
+    int invalid = 0;
+    for (List<Lead> chunk = job.chunks.take(); chunk != END; chunk = job.chunks.take()) {
+      for (Lead lead : chunk) {
+        if (lead == null) continue;
+        IncrementalLeadDeduplicator.Outcome outcome = dedup.accept(lead);
+        if (outcome == IncrementalLeadDeduplicator.Outcome.INVALID) {
+          invalid++;
+        } else if (outcome != IncrementalLeadDeduplicator.Outcome.DISCARDED) {
+          if (outcome == IncrementalLeadDeduplicator.Outcome.REPLACED) {
+            Lead old = dedup.lastReplaced();
+            // A survivor added and replaced within the same file is not part of its delta.
+            if (old != null && !live.remove(old)) removed.add(old);
+          }
+          added.add(lead);
+          live.add(lead);
+        }
+      }
+    }
+    List<Lead> kept = new ArrayList<>(live.size());
+    for (Lead lead : added) {
+      if (live.contains(lead)) kept.add(lead);
+    }
+    return new Delta(job.file, job.leads, invalid, kept, removed, dedup.getSurvivorCount(),
+            System.nanoTime() - job.landed, job.error);
+  }
+
+  /**
+   * Stops watching, waits until the files already queued have been applied, and stops the
+   * parsing threads.
+   * @throws IOException if the WatchService can not be closed
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    watchService.close();
+    try {
+      watcher.join();
+      deduper.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while stopping the watcher");
+    } finally {
+      parsers.shutdown();
+    }
+  }
+
+  private void putUninterruptibly(FileJob job) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        files.put(job);
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+  }
+
+  /**
+   * A file on its way from the parsers to the dedup thread.
+   */
+  private static final class FileJob {
+    final Path file;
+    final long landed;
+    final BlockingQueue<List<Lead>> chunks = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+    private List<Lead> chunk = new ArrayList<>(CHUNK_SIZE);
+    // Written by the parsing thread only, read by the dedup thread after END.
+    volatile long leads;
+    volatile Exception error;
+
+    FileJob(Path file, long landed) {
+      this.file = file;
+      this.landed = landed;
+    }
+
+    /**
+     * Adds a parsed lead to the current chunk and queues the chunk once it is full, waiting
+     * while QUEUED_CHUNKS chunks are queued.
+     */
+    void add(Lead lead) {
+      leads++;
+      chunk.add(lead);
+      if (chunk.size() == CHUNK_SIZE) flush();
+    }
+
+    void flush() {
+      if (chunk.isEmpty()) return;
+      try {
+        chunks.put(chunk);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new UncheckedIOException(new InterruptedIOException("Interrupted while queueing " + file));
+      }
+      chunk = new ArrayList<>(CHUNK_SIZE);
+    }
+
+    void putEnd() {
+      boolean interrupted = Thread.interrupted();
+      while (true) {
+        try {
+          chunks.put(END);
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * What applying one file changed: the survivors it added and the earlier survivors it
+   * replaced. A survivor the file added and then replaced itself is in neither list.
+   */
+  public static final class Delta {
+    private final Path file;
+    private final long leads;
+    private final int invalid;
+    private final List<Lead> added;
+    private final List<Lead> removed;
+    private final int survivors;
+    private final long latencyNanos;
+    private final Exception error;
+
+    Delta(Path file, long leads, int invalid, List<Lead> added, List<Lead> removed, int survivors,
+          long latencyNanos, Exception error) {
+      this.file = file;
+      this.leads = leads;
+      this.invalid = invalid;
+      this.added = added;
+      this.removed = removed;
+      this.survivors = survivors;
+      this.latencyNanos = latencyNanos;
+      this.error = error;
+    }
+
+    public Path getFile() { return file; }
+    public long getLeads() { return leads; }
+    public int getInvalid() { return invalid; }
+    public List<Lead> getAdded() { return added; }
+    public List<Lead> getRemoved() { return removed; }
+
+    /**
+     * Returns the number of survivors after the file was applied.
+     * @return the survivor count of the warm state
+     */
+    public int getSurvivors() { return survivors; }
+
+    /**
+     * Returns the time from the file being seen in the directory to its delta being ready.
+     * @return nanoseconds
+     */
+    public long getLatencyNanos() { return latencyNanos; }
+
+    /**
+     * Returns why the file could not be read to the end. Leads read before the error are applied
+     * and part of the delta.
+     * @return the error, or null if the whole file was read
+     */
+    public Exception getError() { return error; }
+
+    /**
+     * Returns the delta in the layout Main writes to the delta log.
+     * @return a map that serializes to one delta JSON object
+     */
+    public Map<String, Object> toMap() {
+      Map<String, Object> out = new LinkedHashMap<>();
+      out.put("file", file.toString());
+      out.put("leads", leads);
+      out.put("invalid", invalid);
+      out.put("survivors", survivors);
+      out.put("latencyMillis", latencyNanos / 1_000_000);
+      if (error != null) out.put("error", String.valueOf(error.getMessage()));
+      out.put("added", added);
+      out.put("removed", removed);
+      return out;
+    }
+  }
+}
@@ -0,0 +1,340 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * The ExternalLeadDeduplicator class dedupes inputs whose keys do not fit in the heap. It gives
+ * the same survivors, change log and invalid logs as LeadDeduplicator.deduplicate while holding
+ * only about memoryBudget bytes of keys at a time.
+ *
+ * Accepted leads are spilled to a data file and their (key, input position) tuples are sorted in
+ * runs on disk. Merging the runs puts every lead next to the others with the same "ID" or email,
+ * which links them into groups with a union-find over a memory-mapped array. Leads only affect
+ * each other within a group, so each group is then read back and deduped in input order on its
+ * own. Only the largest group has to fit in memory. The outputs are written back in input order.
+ */
+public class ExternalLeadDeduplicator implements Closeable {
+  public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+
+  private static final byte ID = 0;
+  private static final byte EMAIL = 1;
+
+  private final Path dir;
+  private final long memoryBudget;
+  private final LeadDataFile data;
+  private final MappedLongArray offsets;
+  private final ExternalSorter<KeyEntry> keys;
+  private final DataOutputStream invalidOut;
+  private int position;
+  private int invalidCount;
+  private int mergePasses;
+  private boolean finished;
+
+  /**
+   * Creates a deduplicator that spills into a new directory under tempParent.
+   * @param tempParent directory to create the spill directory in
+   * @param memoryBudget approximate number of heap bytes to use for buffered keys
+   * @throws IOException if the spill files can not be created
+   */
+  public ExternalLeadDeduplicator(Path tempParent, long memoryBudget) throws IOException {
+    this.dir = Files.createTempDirectory(tempParent, "dedup-");
+    this.memoryBudget = memoryBudget;
+    this.data = new LeadDataFile(dir.resolve("leads.dat"), -1);
+    this.offsets = new MappedLongArray(dir.resolve("offsets.bin"));
+    this.keys = new ExternalSorter<>(dir, "keys", KeyEntry.ORDER, KeyEntry.CODEC, memoryBudget);
+    this.invalidOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dir.resolve("invalid.bin"))));
+  }
+
+  /**
+   * Dedupes a list of leads with a bounded amount of heap.
+   * @param leads list of leads to dedupe
+   * @param tempParent directory to spill into
+   * @param memoryBudget approximate number of heap bytes to use for buffered keys
+   * @return a Result containing the deduped leads, logs and invalid leads
+   * @throws IOException if spilling fails
+   */
+  public static LeadDeduplicator.Result deduplicate(List<Lead> leads, Path tempParent, long memoryBudget)
+          throws IOException {
+    try (ExternalLeadDeduplicator dedup = new ExternalLeadDeduplicator(tempParent, memoryBudget)) {
+      leads.forEach(dedup::accept);
+      return dedup.finish();
+    }
+  }
+
+  /**
+   * Spills the next lead in input order. The lead is normalized in place.
+   * @param lead the next lead
+   */
+  public void accept(Lead lead) {
+    if (finished) throw new IllegalStateException("finish has already been called");
+    // Positions are packed into ints here and in the group sort keys.
+    if (position == Integer.MAX_VALUE) throw new IllegalStateException("More than " + Integer.MAX_VALUE + " leads");
+    int i = position++;
+    try {
+      if (!LeadDeduplicator.prepare(lead)) {
+        writeString(invalidOut, "Removed record due to Null or empty field/fields" + lead);
+        invalidCount++;
+        return;
+      }
+      offsets.set(i, data.append(lead, i) + 1);
+      keys.add(new KeyEntry(ID, lead.getId(), i));
+      keys.add(new KeyEntry(EMAIL, LeadDeduplicator.normalizeEmail(lead.getEmail()), i));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Dedupes everything accepted and collects the outputs into a Result.
+   * @return a Result containing the deduped leads, logs and invalid leads
+   * @throws IOException if reading the spill files fails
+   */
+  public LeadDeduplicator.Result finish() throws IOException {
+    List<Lead> survivors = new ArrayList<>();
+    List<ChangeLogEntry> logs = new ArrayList<>();
+    List<String> invalidLogs = new ArrayList<>();
+    finish(survivors::add, logs::add, invalidLogs::add);
+    return new LeadDeduplicator.Result(survivors, logs, invalidLogs);
+  }
+
+  /**
+   * Dedupes everything accepted and streams the outputs, each in input order, without holding
+   * them in memory.
+   * @param survivorSink receives the deduped leads
+   * @param logSink receives the change log entries
+   * @param invalidSink receives the invalid lead messages
+   * @throws IOException if reading the spill files fails
+   */
+  public void finish(Consumer<Lead> survivorSink, Consumer<ChangeLogEntry> logSink, Consumer<String> invalidSink)
+          throws IOException {
+    if (finished) throw new IllegalStateException("finish has already been called");
+    finished = true;
+    invalidOut.close();
+
+    try (MappedLongArray parent = new MappedLongArray(dir.resolve("parent.bin"));
+         MappedLongArray partner = new MappedLongArray(dir.resolve("partner.bin"))) {
+      linkGroups(parent);
+      dedupeGroups(parent, partner);
+
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(dir.resolve("invalid.bin"))))) {
+        for (int i = 0; i < invalidCount; i++) invalidSink.accept(readString(in));
+      }
+      for (int i = 0; i < position; i++) {
+        long link = partner.get(i);
+        if (link == 0) continue;
+        Lead current = data.read(offsets.get(i) - 1);
+        Lead other = data.read(offsets.get((link >>> 1) - 1) - 1);
+        if ((link & 1) == 1) {
+          logSink.accept(new ChangeLogEntry(other, current));
+        } else {
+          logSink.accept(new ChangeLogEntry(current, other));
+        }
+      }
+      data.forEachLive(survivorSink);
+    }
+  }
+
+  /**
+   * Merges the sorted key runs and unions every lead with the first lead sharing its key.
+   */
+  private void linkGroups(MappedLongArray parent) throws IOException {
+    Iterator<KeyEntry> sorted = keys.sorted();
+    mergePasses += keys.mergePasses();
+    KeyEntry first = null;
+    while (sorted.hasNext()) {
+      KeyEntry entry = sorted.next();
+      if (first != null && first.kind == entry.kind && first.key.equals(entry.key)) {
+        union(parent, entry.position, first.position);
+      } else {
+        first = entry;
+      }
+    }
+    keys.close();
+  }
+
+  /**
+   * Sorts lead positions by group root, then dedupes each group in input order.
+   */
+  private void dedupeGroups(MappedLongArray parent, MappedLongArray partner) throws IOException {
+    try (ExternalSorter<Long> members = new ExternalSorter<>(dir, "groups", Comparator.naturalOrder(),
+            LONG_CODEC, memoryBudget)) {
+      for (int i = 0; i < position; i++) {
+        if (offsets.get(i) != 0) members.add(((long) find(parent, i) << 32) | i);
+      }
+      Iterator<Long> sorted = members.sorted();
+      mergePasses += members.mergePasses();
+      List<Integer> group = new ArrayList<>();
+      long root = -1;
+      while (sorted.hasNext()) {
+        long member = sorted.next();
+        if (member >>> 32 != root && !group.isEmpty()) {
+          dedupeGroup(group, partner);
+          group.clear();
+        }
+        root = member >>> 32;
+        group.add((int) member);
+      }
+      if (!group.isEmpty()) dedupeGroup(group, partner);
+    }
+  }
+
+  /**
+   * Runs the sequential algorithm over one group, records who each duplicate was compared with,
+   * and clears the live flag of every lead in the group that did not survive.
+   */
+  private void dedupeGroup(List<Integer> group, MappedLongArray partner) throws IOException {
+    MemoryDedupState state = new MemoryDedupState(group.size());
+    IncrementalLeadDeduplicator dedup = new IncrementalLeadDeduplicator(state);
+    Map<Lead, Integer> positionOf = new IdentityHashMap<>();
+    List<Integer> logged = new ArrayList<>();
+    List<Boolean> replaced = new ArrayList<>();
+    for (int i : group) {
+      Lead lead = data.read(offsets.get(i) - 1);
+      positionOf.put(lead, i);
+      IncrementalLeadDeduplicator.Outcome outcome = dedup.accept(lead, i);
+      if (outcome == IncrementalLeadDeduplicator.Outcome.REPLACED
+              || outcome == IncrementalLeadDeduplicator.Outcome.DISCARDED) {
+        logged.add(i);
+        replaced.add(outcome == IncrementalLeadDeduplicator.Outcome.REPLACED);
+      }
+    }
+
+    List<ChangeLogEntry> logs = dedup.snapshot().getLog();
+    for (int k = 0; k < logged.size(); k++) {
+      boolean won = replaced.get(k);
+      Lead other = won ? logs.get(k).getSource() : logs.get(k).getKept();
+      partner.set(logged.get(k), ((long) (positionOf.get(other) + 1) << 1) | (won ? 1 : 0));
+    }
+
+    long[] live = state.livePositions();
+    int next = 0;
+    for (int i : group) {
+      if (next < live.length && live[next] == i) {
+        next++;
+      } else {
+        data.tombstone(offsets.get(i) - 1);
+      }
+    }
+  }
+
+  /**
+   * Returns how many times finish had to merge sorted runs into longer runs because the memory
+   * budget only leaves read buffers for memoryBudget / 64 KB runs at once. A budget that gives
+   * zero passes keeps the final merges to a single pass over the spill files.
+   * @return the number of intermediate merge passes of both sorts
+   */
+  public int getMergePasses() { return mergePasses; }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      invalidOut.close();
+      keys.close();
+      offsets.close();
+      data.close();
+    } finally {
+      try (Stream<Path> files = Files.list(dir)) {
+        for (Path file : (Iterable<Path>) files::iterator) Files.deleteIfExists(file);
+      }
+      Files.deleteIfExists(dir);
+    }
+  }
+
+  /**
+   * Parents are stored plus one so an unwritten entry means the lead is its own root.
+   */
+  private static int find(MappedLongArray parent, int i) throws IOException {
+    while (true) {
+      long p = parent.get(i) - 1;
+      if (p < 0 || p == i) return i;
+      long grand = parent.get(p) - 1;
+      if (grand >= 0 && grand != p) parent.set(i, grand + 1);
+      i = (int) p;
+    }
+  }
+
+  private static void union(MappedLongArray parent, int a, int b) throws IOException {
+    int ra = find(parent, a);
+    int rb = find(parent, b);
+    if (ra < rb) parent.set(rb, ra + 1L);
+    else if (rb < ra) parent.set(ra, rb + 1L);
+  }
+
+  private static void writeString(DataOutput out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInput in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static final ExternalSorter.Codec<Long> LONG_CODEC = new ExternalSorter.Codec<Long>() {
+    @Override
+    public void write(DataOutput out, Long value) throws IOException { out.writeLong(value); }
+
+    @Override
+    public Long read(DataInput in) throws IOException { return in.readLong(); }
+
+    @Override
+    public long sizeOf(Long value) { return 24; }
+  };
+
+  /**
+   * A normalized "ID" or email and the position of the lead it came from.
+   */
+  private static final class KeyEntry {
+    static final Comparator<KeyEntry> ORDER = Comparator.<KeyEntry>comparingInt(e -> e.kind)
+            .thenComparing(e -> e.key)
+            .thenComparingInt(e -> e.position);
+
+    static final ExternalSorter.Codec<KeyEntry> CODEC = new ExternalSorter.Codec<KeyEntry>() {
+      @Override
+      public void write(DataOutput out, KeyEntry value) throws IOException {
+        out.writeByte(value.kind);
+        writeString(out, value.key);
+        out.writeInt(value.position);
+      }
+
+      @Override
+      public KeyEntry read(DataInput in) throws IOException {
+        return new KeyEntry(in.readByte(), readString(in), in.readInt());
+      }
+
+      @Override
+      public long sizeOf(KeyEntry value) { return 64 + 2L * value.key.length(); }
+    };
+
+    final byte kind;
+    final String key;
+    final int position;
+
+    KeyEntry(byte kind, String key, int position) {
+      this.kind = kind;
+      this.key = key;
+      this.position = position;
+    }
+  }
+}
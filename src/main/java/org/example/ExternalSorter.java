@@ -0,0 +1,215 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * The ExternalSorter class sorts more values than fit in memory. Values are buffered until the
+ * memory budget is used up, then the buffer is sorted and written to a run file. Reading the
+ * sorted values does a k-way merge of the runs. Each open run holds a read buffer, so at most
+ * memoryBudget / IO_BUFFER runs are merged at once; with more runs than that, groups of runs are
+ * first merged into longer runs, in as many passes as needed.
+ * @param <T> the type of the sorted values
+ */
+class ExternalSorter<T> implements Closeable {
+  /**
+   * Writes and reads values to and from run files and estimates their size in memory.
+   * @param <T> the type of the sorted values
+   */
+  interface Codec<T> {
+    void write(DataOutput out, T value) throws IOException;
+    T read(DataInput in) throws IOException;
+    long sizeOf(T value);
+  }
+
+  private static final int IO_BUFFER = 1 << 16;
+
+  private final Path dir;
+  private final String name;
+  private final Comparator<T> order;
+  private final Codec<T> codec;
+  private final long memoryBudget;
+  private final int fanIn;
+  private final List<T> buffer = new ArrayList<>();
+  private final List<Path> runs = new ArrayList<>();
+  private final List<Long> runSizes = new ArrayList<>();
+  private final List<DataInputStream> readers = new ArrayList<>();
+  private long buffered;
+  private int runNumber;
+  private int mergePasses;
+
+  /**
+   * Creates a sorter that writes its runs into a directory.
+   * @param dir directory for the run files
+   * @param name prefix of the run file names
+   * @param order the sort order
+   * @param codec reads and writes the values
+   * @param memoryBudget approximate bytes of values to hold before spilling a run
+   */
+  ExternalSorter(Path dir, String name, Comparator<T> order, Codec<T> codec, long memoryBudget) {
+    this.dir = dir;
+    this.name = name;
+    this.order = order;
+    this.codec = codec;
+    this.memoryBudget = memoryBudget;
+    this.fanIn = (int) Math.max(2, Math.min(Integer.MAX_VALUE, memoryBudget / IO_BUFFER));
+  }
+
+  /**
+   * Adds a value, spilling a sorted run if the budget is used up.
+   * @param value the value to sort
+   * @throws IOException if the run can not be written
+   */
+  void add(T value) throws IOException {
+    buffer.add(value);
+    buffered += codec.sizeOf(value) + 8;
+    if (buffered >= memoryBudget) spill();
+  }
+
+  /**
+   * Returns the values added so far in sorted order. Values must not be added afterwards.
+   * @return an iterator over the sorted values
+   * @throws IOException if a run can not be opened
+   */
+  Iterator<T> sorted() throws IOException {
+    if (runs.isEmpty()) {
+      buffer.sort(order);
+      return buffer.iterator();
+    }
+    if (!buffer.isEmpty()) spill();
+
+    while (runs.size() > fanIn) mergePass();
+    return merge(runs, runSizes);
+  }
+
+  /**
+   * Merges every group of fanIn runs into one new run, so the number of runs drops by a factor
+   * of fanIn.
+   */
+  private void mergePass() throws IOException {
+    List<Path> merged = new ArrayList<>();
+    List<Long> mergedSizes = new ArrayList<>();
+    for (int start = 0; start < runs.size(); start += fanIn) {
+      int end = Math.min(runs.size(), start + fanIn);
+      List<Path> group = runs.subList(start, end);
+      List<Long> groupSizes = runSizes.subList(start, end);
+      Path run = nextRun();
+      long size = 0;
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), IO_BUFFER))) {
+        for (Iterator<T> it = merge(group, groupSizes); it.hasNext(); size++) codec.write(out, it.next());
+      } finally {
+        for (DataInputStream in : readers) in.close();
+        readers.clear();
+      }
+      for (Path done : group) Files.deleteIfExists(done);
+      merged.add(run);
+      mergedSizes.add(size);
+    }
+    runs.clear();
+    runs.addAll(merged);
+    runSizes.clear();
+    runSizes.addAll(mergedSizes);
+    mergePasses++;
+  }
+
+  /**
+   * Opens the given runs and returns an iterator doing a k-way merge of them. The readers are
+   * closed by close, or by the caller once it has read every value.
+   */
+  private Iterator<T> merge(List<Path> paths, List<Long> sizes) throws IOException {
+    PriorityQueue<Run> heads = new PriorityQueue<>((a, b) -> order.compare(a.head, b.head));
+    for (int i = 0; i < paths.size(); i++) {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(paths.get(i)), IO_BUFFER));
+      readers.add(in);
+      Run run = new Run(in, sizes.get(i));
+      if (run.advance()) heads.add(run);
+    }
+    return new Iterator<T>() {
+      @Override
+      public boolean hasNext() { return !heads.isEmpty(); }
+
+      @Override
+      public T next() {
+        Run run = heads.poll();
+        if (run == null) throw new NoSuchElementException();
+        T value = run.head;
+        if (run.advance()) heads.add(run);
+        return value;
+      }
+    };
+  }
+
+  /**
+   * Returns the number of runs on disk, zero if everything fit in memory. After sorted, this is
+   * the number of runs of the final merge.
+   * @return the number of runs
+   */
+  int runCount() { return runs.size(); }
+
+  /**
+   * Returns the number of passes that merged runs into longer runs because there were more runs
+   * than can be merged at once.
+   * @return the number of intermediate merge passes
+   */
+  int mergePasses() { return mergePasses; }
+
+  @Override
+  public void close() throws IOException {
+    for (DataInputStream in : readers) in.close();
+    for (Path run : runs) Files.deleteIfExists(run);
+    buffer.clear();
+  }
+
+  private void spill() throws IOException {
+    buffer.sort(order);
+    Path run = nextRun();
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), IO_BUFFER))) {
+      for (T value : buffer) codec.write(out, value);
+    }
+    runs.add(run);
+    runSizes.add((long) buffer.size());
+    buffer.clear();
+    buffered = 0;
+  }
+
+  private Path nextRun() {
+    return dir.resolve(name + "-" + runNumber++ + ".run");
+  }
+
+  private final class Run {
+    private final DataInputStream in;
+    private long remaining;
+    private T head;
+
+    Run(DataInputStream in, long size) {
+      this.in = in;
+      this.remaining = size;
+    }
+
+    boolean advance() {
+      if (remaining == 0) return false;
+      remaining--;
+      try {
+        head = codec.read(in);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,271 @@
+package org.example;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * The FuzzyLeadMatcher class finds near-duplicates among the survivors of the exact matcher:
+ * leads with typos in their names, address variants, or Gmail dot and plus aliases of the same
+ * email. Comparing every pair is quadratic, so leads are only compared with the other leads in
+ * the same bucket.
+ *
+ * Buckets come from two sources. Each blocking key puts leads with the same key value in one
+ * bucket; the default key is the canonical email. Each lead also gets a MinHash signature over
+ * the character 3-grams of its first name, last name and address, which is cut into bands; leads
+ * whose signatures agree on a whole band share a bucket (locality sensitive hashing). A candidate
+ * pair is a match when the signatures agree on at least threshold of their values, which
+ * estimates the Jaccard similarity of the shingles. Matched leads are merged transitively and
+ * each group keeps its latest lead, like TransitiveLeadDeduplicator.
+ *
+ * Buckets are found by sorting (hash, lead) pairs packed into longs, so no map of buckets is
+ * built. Buckets with more than maxBucketSize leads are skipped, since a bucket that large means
+ * the key does not discriminate and would make the comparisons quadratic again.
+ */
+public class FuzzyLeadMatcher {
+  public static final int DEFAULT_BANDS = 8;
+  public static final int DEFAULT_ROWS = 4;
+  public static final double DEFAULT_THRESHOLD = 0.7;
+  public static final int DEFAULT_MAX_BUCKET_SIZE = 100;
+
+  private final Map<String, Function<Lead, String>> blockingKeys;
+  private final int bands;
+  private final int rows;
+  private final double threshold;
+  private final int maxBucketSize;
+  private final long[] multipliers;
+  private final long[] increments;
+  private FuzzyMatchStats stats;
+
+  public FuzzyLeadMatcher() {
+    this(defaultBlockingKeys(), DEFAULT_BANDS, DEFAULT_ROWS, DEFAULT_THRESHOLD, DEFAULT_MAX_BUCKET_SIZE);
+  }
+
+  /**
+   * Creates a matcher.
+   * @param blockingKeys named functions from a lead to a blocking key, null for no key
+   * @param bands number of LSH bands
+   * @param rows number of MinHash values per band
+   * @param threshold share of equal MinHash values, 0 to 1, for a candidate pair to match
+   * @param maxBucketSize buckets with more leads than this are not compared
+   */
+  public FuzzyLeadMatcher(Map<String, Function<Lead, String>> blockingKeys, int bands, int rows,
+                          double threshold, int maxBucketSize) {
+    if (bands < 0 || rows < 1) throw new IllegalArgumentException("bands must not be negative and rows must be positive");
+    this.blockingKeys = new LinkedHashMap<>(blockingKeys);
+    this.bands = bands;
+    this.rows = rows;
+    this.threshold = threshold;
+    this.maxBucketSize = maxBucketSize;
+    Random random = new Random(0x5EEDL);
+    int k = Math.max(1, bands * rows);
+    this.multipliers = new long[k];
+    this.increments = new long[k];
+    for (int i = 0; i < k; i++) {
+      multipliers[i] = random.nextLong() | 1;
+      increments[i] = random.nextLong();
+    }
+  }
+
+  /**
+   * Returns the default blocking keys: only "email", the canonical email.
+   * @return a new map of blocking keys
+   */
+  public static Map<String, Function<Lead, String>> defaultBlockingKeys() {
+    Map<String, Function<Lead, String>> keys = new LinkedHashMap<>();
+    keys.put("email", lead -> canonicalEmail(lead.getEmail()));
+    return keys;
+  }
+
+  /**
+   * Lowercases an email and removes a "+tag" from its local part. For gmail.com and
+   * googlemail.com the dots of the local part are removed as well, since Gmail ignores them.
+   * @param email the trimmed email
+   * @return the canonical form
+   */
+  public static String canonicalEmail(String email) {
+    String lower = email.toLowerCase(Locale.ROOT);
+    int at = lower.lastIndexOf('@');
+    if (at < 0) return lower;
+    String local = lower.substring(0, at);
+    String domain = lower.substring(at + 1);
+    int plus = local.indexOf('+');
+    if (plus >= 0) local = local.substring(0, plus);
+    if (domain.equals("gmail.com") || domain.equals("googlemail.com")) {
+      local = local.replace(".", "");
+      domain = "gmail.com";
+    }
+    return local + "@" + domain;
+  }
+
+  /**
+   * Merges near-duplicates among the survivors of an exact dedup. The change log of the result
+   * is the exact log followed by one entry for each lead merged here, in input order.
+   * @param exact the Result of LeadDeduplicator.deduplicate or another exact matcher
+   * @return a Result with the merged survivors
+   */
+  public LeadDeduplicator.Result match(LeadDeduplicator.Result exact) {
+    List<Lead> leads = exact.getDeduped();
+    int n = leads.size();
+    List<FuzzyMatchStats.BucketStats> bucketStats = new ArrayList<>();
+    UnionFind groups = new UnionFind(n);
+    int idxBits = 64 - Long.numberOfLeadingZeros(Math.max(1, n - 1));
+    long[] scored = new long[2];
+
+    int[] signatures = signatures(leads);
+    int k = multipliers.length;
+
+    for (Map.Entry<String, Function<Lead, String>> key : blockingKeys.entrySet()) {
+      long[] packed = new long[n];
+      int count = 0;
+      for (int i = 0; i < n; i++) {
+        String value = key.getValue().apply(leads.get(i));
+        if (value != null) packed[count++] = pack(KeyHash.id(value), i, idxBits);
+      }
+      bucketStats.add(compareBuckets(key.getKey(), Arrays.copyOf(packed, count), idxBits, signatures, groups, scored));
+    }
+    for (int b = 0; b < bands; b++) {
+      long[] packed = new long[n];
+      for (int i = 0; i < n; i++) {
+        long h = b;
+        for (int r = 0; r < rows; r++) h = (h ^ signatures[i * k + b * rows + r]) * 0x100000001B3L;
+        packed[i] = pack(KeyHash.mix(h), i, idxBits);
+      }
+      bucketStats.add(compareBuckets("band" + b, packed, idxBits, signatures, groups, scored));
+    }
+
+    int[] best = new int[n];
+    Arrays.fill(best, -1);
+    for (int i = 0; i < n; i++) {
+      int root = groups.find(i);
+      if (best[root] < 0 || !entryDate(leads, best[root]).isAfter(entryDate(leads, i))) best[root] = i;
+    }
+    List<Lead> survivors = new ArrayList<>();
+    List<ChangeLogEntry> logs = new ArrayList<>(exact.getLog());
+    for (int i = 0; i < n; i++) {
+      int winner = best[groups.find(i)];
+      if (winner == i) survivors.add(leads.get(i));
+      else logs.add(new ChangeLogEntry(leads.get(i), leads.get(winner)));
+    }
+    stats = new FuzzyMatchStats(Collections.unmodifiableList(bucketStats), scored[0], scored[1], n - survivors.size());
+    return new LeadDeduplicator.Result(survivors, logs, exact.getInvalidLogs());
+  }
+
+  /**
+   * Returns the counters of the last call to match.
+   * @return the counters, or null if match was not called yet
+   */
+  public FuzzyMatchStats getStats() { return stats; }
+
+  /**
+   * Sorts the packed (hash, lead) pairs so each bucket is a run, and scores every pair within
+   * a run whose leads are not already in one group.
+   * @param scored counts of scored and matched pairs, updated in place
+   */
+  private FuzzyMatchStats.BucketStats compareBuckets(String name, long[] packed, int idxBits, int[] signatures,
+                                                     UnionFind groups, long[] scored) {
+    Arrays.sort(packed);
+    long idxMask = (1L << idxBits) - 1;
+    long buckets = 0;
+    long candidates = 0;
+    long skipped = 0;
+    int largest = 0;
+    for (int start = 0, end; start < packed.length; start = end) {
+      long hash = packed[start] & ~idxMask;
+      end = start + 1;
+      while (end < packed.length && (packed[end] & ~idxMask) == hash) end++;
+      int size = end - start;
+      if (size < 2) continue;
+      buckets++;
+      largest = Math.max(largest, size);
+      if (size > maxBucketSize) {
+        skipped++;
+        continue;
+      }
+      for (int x = start; x < end; x++) {
+        int a = (int) (packed[x] & idxMask);
+        for (int y = x + 1; y < end; y++) {
+          int b = (int) (packed[y] & idxMask);
+          candidates++;
+          if (groups.find(a) == groups.find(b)) continue;
+          scored[0]++;
+          if (similarity(signatures, a, b) >= threshold) {
+            scored[1]++;
+            groups.union(a, b);
+          }
+        }
+      }
+    }
+    return new FuzzyMatchStats.BucketStats(name, buckets, candidates, largest, skipped);
+  }
+
+  /**
+   * Computes the MinHash signature of every lead, k ints per lead in one array.
+   */
+  private int[] signatures(List<Lead> leads) {
+    int k = multipliers.length;
+    int[] signatures = new int[leads.size() * k];
+    long[] min = new long[k];
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < leads.size(); i++) {
+      Lead lead = leads.get(i);
+      text.setLength(0);
+      appendNormalized(text, lead.getFirstName());
+      appendNormalized(text, lead.getLastName());
+      appendNormalized(text, lead.getAddress());
+      Arrays.fill(min, Long.MAX_VALUE);
+      int shingles = Math.max(1, text.length() - 2);
+      for (int s = 0; s < shingles; s++) {
+        long h = 0xCBF29CE484222325L;
+        for (int c = s; c < Math.min(s + 3, text.length()); c++) h = (h ^ text.charAt(c)) * 0x100000001B3L;
+        h = KeyHash.mix(h);
+        for (int j = 0; j < k; j++) {
+          long v = h * multipliers[j] + increments[j];
+          if (v < min[j]) min[j] = v;
+        }
+      }
+      for (int j = 0; j < k; j++) signatures[i * k + j] = (int) (min[j] >>> 32);
+    }
+    return signatures;
+  }
+
+  private double similarity(int[] signatures, int a, int b) {
+    int k = multipliers.length;
+    int same = 0;
+    for (int j = 0; j < k; j++) {
+      if (signatures[a * k + j] == signatures[b * k + j]) same++;
+    }
+    return (double) same / k;
+  }
+
+  /**
+   * Appends a field lowercased with every run of non letters or digits turned into one space.
+   */
+  private static void appendNormalized(StringBuilder text, String field) {
+    if (field == null) return;
+    if (text.length() > 0 && text.charAt(text.length() - 1) != ' ') text.append(' ');
+    for (int i = 0; i < field.length(); i++) {
+      char c = field.charAt(i);
+      if (Character.isLetterOrDigit(c)) {
+        text.append(Character.toLowerCase(c));
+      } else if (text.length() > 0 && text.charAt(text.length() - 1) != ' ') {
+        text.append(' ');
+      }
+    }
+  }
+
+  private static long pack(long hash, int index, int idxBits) {
+    return (hash & ~((1L << idxBits) - 1)) | index;
+  }
+
+  private static Instant entryDate(List<Lead> leads, int i) {
+    return leads.get(i).getEntryDate();
+  }
+}
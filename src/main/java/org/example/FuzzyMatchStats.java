@@ -0,0 +1,80 @@
+package org.example;
+
+import java.util.List;
+
+/**
+ * The FuzzyMatchStats class holds the counters of one FuzzyLeadMatcher run: for every blocking
+ * key and every LSH band, how many buckets it made and how many candidate pairs they held, and
+ * overall how many pairs were scored and matched. A blocking key or band whose largest bucket
+ * is close to maxBucketSize does not discriminate well enough.
+ */
+public final class FuzzyMatchStats {
+  /**
+   * Counters of the buckets of one blocking key or band.
+   */
+  public static final class BucketStats {
+    private final String name;
+    private final long buckets;
+    private final long candidatePairs;
+    private final int largestBucket;
+    private final long skippedBuckets;
+
+    /**
+     * Constructs the counters of one blocking key or band.
+     * @param name the blocking key name, or "band" and the band number
+     * @param buckets number of buckets with at least two leads
+     * @param candidatePairs number of pairs in the buckets that were compared
+     * @param largestBucket number of leads in the largest bucket
+     * @param skippedBuckets number of buckets larger than maxBucketSize that were not compared
+     */
+    public BucketStats(String name, long buckets, long candidatePairs, int largestBucket, long skippedBuckets) {
+      this.name = name;
+      this.buckets = buckets;
+      this.candidatePairs = candidatePairs;
+      this.largestBucket = largestBucket;
+      this.skippedBuckets = skippedBuckets;
+    }
+
+    public String getName() { return name; }
+    public long getBuckets() { return buckets; }
+    public long getCandidatePairs() { return candidatePairs; }
+    public int getLargestBucket() { return largestBucket; }
+    public long getSkippedBuckets() { return skippedBuckets; }
+
+    @Override
+    public String toString() {
+      return name + "{buckets=" + buckets + ", candidatePairs=" + candidatePairs + ", largestBucket="
+              + largestBucket + ", skippedBuckets=" + skippedBuckets + "}";
+    }
+  }
+
+  private final List<BucketStats> buckets;
+  private final long scoredPairs;
+  private final long matchedPairs;
+  private final long mergedLeads;
+
+  /**
+   * Constructs the counters of a run.
+   * @param buckets the counters of each blocking key and band, in the order they ran
+   * @param scoredPairs candidate pairs that were not already in one group and were scored
+   * @param matchedPairs scored pairs at or above the threshold
+   * @param mergedLeads leads removed by merging
+   */
+  public FuzzyMatchStats(List<BucketStats> buckets, long scoredPairs, long matchedPairs, long mergedLeads) {
+    this.buckets = buckets;
+    this.scoredPairs = scoredPairs;
+    this.matchedPairs = matchedPairs;
+    this.mergedLeads = mergedLeads;
+  }
+
+  public List<BucketStats> getBuckets() { return buckets; }
+  public long getScoredPairs() { return scoredPairs; }
+  public long getMatchedPairs() { return matchedPairs; }
+  public long getMergedLeads() { return mergedLeads; }
+
+  @Override
+  public String toString() {
+    return "FuzzyMatchStats{buckets=" + buckets + ", scoredPairs=" + scoredPairs + ", matchedPairs="
+            + matchedPairs + ", mergedLeads=" + mergedLeads + "}";
+  }
+}
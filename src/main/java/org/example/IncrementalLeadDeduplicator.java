@@ -0,0 +1,382 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The IncrementalLeadDeduplicator class keeps the deduplication state between calls, so leads
+ * can be fed in one at a time as they are read instead of being collected into a list first.
+ * Feeding every lead of a list through accept and then calling snapshot gives the same result
+ * as LeadDeduplicator.deduplicate.
+ */
+public class IncrementalLeadDeduplicator implements Closeable {
+  public static final int DEFAULT_CHECKPOINT_EVERY = 1_000_000;
+
+  /**
+   * What happened to a lead passed to accept.
+   */
+  public enum Outcome {
+    /** The lead matched no survivor and was added as a new survivor. */
+    KEPT,
+    /** The lead matched a survivor and replaced it. */
+    REPLACED,
+    /** The lead matched a survivor that was preferred, so the lead was discarded. */
+    DISCARDED,
+    /** The lead had a null or empty field and was removed. */
+    INVALID
+  }
+
+  private final DedupState state;
+  private final List<ChangeLogEntry> logs = new ArrayList<>();
+  private final List<String> invalidLogs = new ArrayList<>();
+  private ChangeLogSink sink;
+  private int logEvery = 1;
+  private long duplicates;
+  private DedupMetrics metrics;
+  private int acceptTick;
+  private boolean idHit;
+  private Lead replaced;
+  private DedupCheckpoint checkpoint;
+  private int checkpointEvery;
+  private int untilCheckpoint;
+
+  public IncrementalLeadDeduplicator() {
+    this(16);
+  }
+
+  /**
+   * Creates an empty deduplicator sized for the expected number of leads.
+   * @param expectedLeads expected number of leads, used to size the internal tables
+   */
+  public IncrementalLeadDeduplicator(int expectedLeads) {
+    this(new MemoryDedupState(expectedLeads));
+  }
+
+  IncrementalLeadDeduplicator(DedupState state) {
+    this.state = state;
+  }
+
+  /**
+   * Creates an empty deduplicator with a Bloom filter in front of its id and email indexes.
+   * Leads whose id and email were never seen skip both index probes, which pays off for feeds
+   * that are mostly new leads. The filter is sized for expectedLeads; use getKeyFilterStats to
+   * check that the size fits the workload.
+   * @param expectedLeads expected number of leads, used to size the filter and the tables
+   * @return a deduplicator with a key filter
+   */
+  public static IncrementalLeadDeduplicator withKeyFilter(int expectedLeads) {
+    return new IncrementalLeadDeduplicator(new MemoryDedupState(expectedLeads, true));
+  }
+
+  /**
+   * Creates an empty deduplicator that only dedupes leads whose entryDates are within a window
+   * of each other, and forgets the keys of leads once the newest entryDate seen is more than the
+   * window past them. Survivors that fall out of the window are still kept in memory for
+   * snapshot, so only the indexes are capped and the retained leads grow with the input; a
+   * continuous pipeline should pass an expired consumer to windowed(Duration, Consumer) instead.
+   * @param window leads further apart than this are never duplicates, at least one second
+   * @return a windowed deduplicator
+   */
+  public static IncrementalLeadDeduplicator windowed(Duration window) {
+    return windowed(window, null);
+  }
+
+  /**
+   * Creates an empty windowed deduplicator that hands survivors to a consumer as they fall out
+   * of the window, in the order their time buckets expire, instead of keeping them. No later lead
+   * can replace such a survivor, so it is final; snapshot and getSurvivorCount only cover the
+   * survivors still in the window.
+   * @param window leads further apart than this are never duplicates, at least one second
+   * @param expired receives each survivor once it falls out of the window, or null to keep every
+   *                survivor in memory until snapshot, as windowed(Duration) does
+   * @return a windowed deduplicator
+   */
+  public static IncrementalLeadDeduplicator windowed(Duration window, Consumer<Lead> expired) {
+    return new IncrementalLeadDeduplicator(new WindowedDedupState(window, expired, 16));
+  }
+
+  /**
+   * Opens a deduplicator whose survivors and id/email index are kept on disk in the given
+   * directory, creating them if they do not exist. Opening existing files only maps the index,
+   * so startup time does not depend on how many leads were seen before. Change logs and invalid
+   * logs cover only the leads accepted since opening.
+   * @param dir directory holding the index and data files
+   * @return a deduplicator that resumes from the stored state
+   * @throws IOException if the files can not be opened
+   */
+  public static IncrementalLeadDeduplicator open(Path dir) throws IOException {
+    return new IncrementalLeadDeduplicator(new PersistentDedupState(dir));
+  }
+
+  /**
+   * Restores a deduplicator from the last consistent checkpoint in a file written by
+   * checkpointTo, and keeps checkpointing to the same file. Leads accepted after that checkpoint
+   * are lost; feed the input again from getAcceptedCount onwards. A missing file starts an
+   * empty deduplicator that checkpoints to it.
+   * @param file the checkpoint file
+   * @param every accept this many leads between checkpoints
+   * @return a deduplicator in the state of the last checkpoint
+   * @throws IOException if the file can not be read or is not a checkpoint
+   */
+  public static IncrementalLeadDeduplicator resume(Path file, int every) throws IOException {
+    IncrementalLeadDeduplicator dedup = new IncrementalLeadDeduplicator();
+    if (!Files.exists(file)) {
+      dedup.checkpointTo(file, every);
+      return dedup;
+    }
+    if (every < 1) throw new IllegalArgumentException("every must be positive");
+    dedup.checkpoint = DedupCheckpoint.resume(file, (MemoryDedupState) dedup.state, dedup.logs, dedup.invalidLogs);
+    dedup.duplicates = dedup.checkpoint.restoredDuplicates();
+    dedup.checkpointEvery = every;
+    dedup.untilCheckpoint = every;
+    return dedup;
+  }
+
+  /**
+   * Dedupes the next lead against everything accepted so far. The lead is normalized in place.
+   * @param current the next lead in input order
+   * @return what happened to the lead
+   */
+  public Outcome accept(Lead current) {
+    return accept(current, state.nextPosition());
+  }
+
+  /**
+   * Dedupes a lead whose input position is already known, used when leads of one input are
+   * split across several deduplicators.
+   * @param current the lead
+   * @param i index of the lead in the original input
+   * @return what happened to the lead
+   */
+  Outcome accept(Lead current, long i) {
+    Outcome outcome;
+    if (metrics == null) {
+      outcome = dedupe(current, i);
+    } else {
+      boolean timed = (++acceptTick & (DedupMetrics.SAMPLE_EVERY - 1)) == 0;
+      long start = timed ? System.nanoTime() : 0;
+      outcome = dedupe(current, i);
+      metrics.count(outcome, idHit);
+      if (timed) metrics.recordAccept(outcome, System.nanoTime() - start);
+    }
+    if (checkpoint != null && --untilCheckpoint == 0) checkpoint();
+    return outcome;
+  }
+
+  private Outcome dedupe(Lead current, long i) {
+    if(!LeadDeduplicator.prepare(current)){
+      String invalidLog = "Removed record due to Null or empty field/fields" + current;
+      invalidLogs.add(invalidLog);
+      if (checkpoint != null) checkpoint.invalid(invalidLog);
+      return Outcome.INVALID;
+    }
+
+    String id = current.getId();
+    String email = current.getEmail();
+    long idHash = current.idHash();
+    long emailHash = current.emailHash();
+
+    long dupHandle = state.findId(id, idHash);
+    if (dupHandle != DedupState.NONE && !state.matchable(dupHandle, current)) dupHandle = DedupState.NONE;
+    idHit = dupHandle != DedupState.NONE;
+    if (!idHit) {
+      dupHandle = state.findEmail(email, emailHash);
+      if (dupHandle != DedupState.NONE && !state.matchable(dupHandle, current)) dupHandle = DedupState.NONE;
+    }
+
+    if (dupHandle == DedupState.NONE) {
+      long handle = state.add(current, i);
+      state.putId(id, idHash, handle);
+      state.putEmail(email, emailHash, handle);
+      if (checkpoint != null) checkpoint.slot(current, i, DedupState.NONE);
+      return Outcome.KEPT;
+    }
+
+    Lead duplicate = state.lead(dupHandle);
+    boolean currentWins = LeadDeduplicator.isCurrentPreferred(current, duplicate, i, state.position(dupHandle));
+    if (currentWins) {
+
+      int live = state.liveCount();
+      state.tombstone(dupHandle);
+      replaced = state.liveCount() < live ? duplicate : null;
+      long handle = state.add(current, i);
+      if (checkpoint != null) checkpoint.slot(current, i, dupHandle);
+
+      String dupEmail = duplicate.getEmail();
+      long dupEmailHash = duplicate.emailHash();
+
+      state.putId(id, idHash, handle);
+      state.putEmail(email, emailHash, handle);
+
+      if (dupEmailHash != emailHash || !KeyHash.sameEmail(dupEmail, email)) {
+        state.removeEmail(dupEmail, dupEmailHash);
+      }
+
+      if (sampled()) log(new ChangeLogEntry(duplicate, current));
+      return Outcome.REPLACED;
+    }
+    if (sampled()) log(new ChangeLogEntry(current, duplicate));
+    return Outcome.DISCARDED;
+  }
+
+  /**
+   * Returns the survivor that the last accept returning REPLACED took out. A lead can match a
+   * survivor through a stale id entry after that survivor was already replaced; nothing is
+   * taken out then.
+   * @return the replaced survivor, or null if it was replaced before or no lead replaced one yet
+   */
+  Lead lastReplaced() { return replaced; }
+
+  private boolean sampled() {
+    return logEvery != 0 && duplicates++ % logEvery == 0;
+  }
+
+  private void log(ChangeLogEntry entry) {
+    if (sink == null) {
+      logs.add(entry);
+      if (checkpoint != null) checkpoint.log(entry);
+      return;
+    }
+    try {
+      sink.write(entry);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Sends the change log entries of every later accept to a sink as they are produced, instead
+   * of keeping them for snapshot, so the log does not grow in memory. The caller closes the sink.
+   * @param sink where to write entries, or null to keep them for snapshot again
+   */
+  public void logTo(ChangeLogSink sink) {
+    this.sink = sink;
+  }
+
+  /**
+   * Sets how many of the later duplicates get a change log entry. 1, the default, logs every
+   * duplicate; n logs the first duplicate and then every n-th one; 0 turns change logging off,
+   * so no entry is created at all. Survivors are the same whatever the setting.
+   * @param every log one duplicate out of every this many, or 0 for none
+   */
+  public void setLogSampling(int every) {
+    if (every < 0) throw new IllegalArgumentException("every must not be negative");
+    this.logEvery = every;
+  }
+
+  /**
+   * Counts the outcome and match branch of every later accept, and times one accept in
+   * DedupMetrics.SAMPLE_EVERY. Without metrics, the default, accept does no extra work.
+   * @param metrics where to count, may be shared with other deduplicators, or null for none
+   */
+  public void setMetrics(DedupMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Starts checkpointing an empty in-memory deduplicator to a file, replacing the file if it
+   * exists. Each time the given number of leads has been accepted, the survivors, change log
+   * entries and invalid logs added since the last checkpoint are handed to a background thread that
+   * appends them to the file, so accept does not wait for the disk. Change log entries sent to a
+   * sink are not checkpointed. resume restores the deduplicator from the file.
+   * @param file the checkpoint file
+   * @param every accept this many leads between checkpoints
+   * @throws IOException if the file can not be created
+   * @throws IllegalStateException if leads were accepted already or the state is on disk
+   */
+  public void checkpointTo(Path file, int every) throws IOException {
+    if (every < 1) throw new IllegalArgumentException("every must be positive");
+    if (!(state instanceof MemoryDedupState)) throw new IllegalStateException("Only an in-memory deduplicator can be checkpointed");
+    if (state.acceptedCount() > 0 || checkpoint != null) throw new IllegalStateException("Checkpointing must start before the first lead");
+    this.checkpoint = DedupCheckpoint.create(file);
+    this.checkpointEvery = every;
+    this.untilCheckpoint = every;
+  }
+
+  /**
+   * Checkpoints now, without waiting for the next checkpoint interval. The checkpoint is written
+   * in the background; close waits for it. Does nothing if checkpointing is off.
+   * @throws UncheckedIOException if writing an earlier checkpoint failed
+   */
+  public void checkpoint() {
+    if (checkpoint == null) return;
+    checkpoint.commit(state.acceptedCount(), duplicates);
+    untilCheckpoint = checkpointEvery;
+  }
+
+  /**
+   * Dedupes a batch of leads, in iteration order, against everything accepted so far.
+   * @param leads the next batch of leads
+   * @return the outcome of each lead, in the same order as the batch
+   */
+  public List<Outcome> acceptAll(Iterable<Lead> leads) {
+    List<Outcome> outcomes = new ArrayList<>();
+    for (Lead lead : leads) {
+      outcomes.add(accept(lead));
+    }
+    return outcomes;
+  }
+
+  /**
+   * Returns the number of leads currently surviving.
+   * @return the number of survivors
+   */
+  public int getSurvivorCount() { return state.liveCount(); }
+
+  /**
+   * Returns the number of leads accepted so far, including invalid ones.
+   * @return the number of leads seen
+   */
+  public long getAcceptedCount() { return state.acceptedCount(); }
+
+  /**
+   * Returns the counters of the key filter of a deduplicator created with withKeyFilter.
+   * @return the filter counters so far, or null if there is no key filter
+   */
+  public KeyFilterStats getKeyFilterStats() {
+    return state instanceof MemoryDedupState ? ((MemoryDedupState) state).filterStats() : null;
+  }
+
+  /**
+   * Builds a result from the current state. Later calls to accept do not change a snapshot
+   * that has already been taken.
+   * @return a Result containing the deduped leads, logs and invalid leads so far
+   */
+  public LeadDeduplicator.Result snapshot() {
+    return new LeadDeduplicator.Result(state.survivors(), new ArrayList<>(logs), new ArrayList<>(invalidLogs));
+  }
+
+  /**
+   * Makes every change so far durable. Does nothing for an in-memory deduplicator.
+   * @throws IOException if writing fails
+   */
+  public void flush() throws IOException {
+    state.flush();
+  }
+
+  /**
+   * Flushes and releases the files of a deduplicator created with open. A checkpointed
+   * deduplicator writes a last checkpoint and waits until every checkpoint is on disk.
+   * @throws IOException if writing fails
+   */
+  @Override
+  public void close() throws IOException {
+    if (checkpoint != null) {
+      try {
+        checkpoint();
+      } finally {
+        DedupCheckpoint c = checkpoint;
+        checkpoint = null;
+        c.close();
+      }
+    }
+    state.close();
+  }
+}
@@ -0,0 +1,35 @@
+package org.example;
+
+import java.util.Arrays;
+
+/**
+ * The IntList class is a growable list of ints, used to keep row numbers and slots without
+ * boxing them.
+ */
+final class IntList {
+  private int[] values = new int[16];
+  private int size;
+
+  void add(int value) {
+    if (size == values.length) values = Arrays.copyOf(values, size * 2);
+    values[size++] = value;
+  }
+
+  int get(int index) {
+    if (index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    return values[index];
+  }
+
+  /**
+   * Removes and returns the last value.
+   * @return the last value
+   */
+  int pop() {
+    if (size == 0) throw new IndexOutOfBoundsException("Empty list");
+    return values[--size];
+  }
+
+  int size() { return size; }
+
+  void clear() { size = 0; }
+}
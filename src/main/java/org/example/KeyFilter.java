@@ -0,0 +1,85 @@
+package org.example;
+
+/**
+ * The KeyFilter class is a blocked Bloom filter over the 64-bit key hashes from KeyHash. It
+ * answers "definitely never added" or "maybe added", so a lookup for a key that was never seen
+ * can skip the id and email indexes. Keys can not be removed; a removed key keeps answering
+ * "maybe" and only costs an index probe.
+ *
+ * Each key sets one bit in each of the 8 words of a 512-bit block, so a check touches a single
+ * cache line. The low bits of the hash pick the block and the high 32 bits, multiplied by a
+ * different odd constant per word, pick the bits, as in the split block filter used by Parquet.
+ *
+ * The filter also counts how it performs: lookups, lookups answered without an index probe, and
+ * lookups it let through that the index then did not find.
+ */
+final class KeyFilter {
+  static final int BITS_PER_KEY = 12;
+
+  private static final int[] SALT = {
+    0x47b6137b, 0x44974d91, 0x8824ad5b, 0xa2b7289d, 0x705495c7, 0x2df1424b, 0x9efc4947, 0x5c6bfb31
+  };
+
+  private final long[] words;
+  private final int blockMask;
+  private long lookups;
+  private long probesAvoided;
+  private long falsePositives;
+
+  /**
+   * Creates an empty filter sized for the expected number of distinct keys.
+   * @param expectedKeys expected number of keys, ids and emails together
+   */
+  KeyFilter(long expectedKeys) {
+    long bits = Math.max(512, Math.max(1, expectedKeys) * BITS_PER_KEY);
+    int blocks = (int) Math.min(Long.highestOneBit(bits / 512 * 2 - 1), 1 << 24);
+    this.words = new long[blocks * 8];
+    this.blockMask = blocks - 1;
+  }
+
+  /**
+   * Records a key hash.
+   * @param hash the hash of the key
+   */
+  void add(long hash) {
+    int base = ((int) hash & blockMask) << 3;
+    int h = (int) (hash >>> 32);
+    for (int w = 0; w < 8; w++) {
+      words[base + w] |= 1L << ((h * SALT[w]) >>> 26);
+    }
+  }
+
+  /**
+   * Checks a key hash and counts the lookup. When this returns true the caller probes the index
+   * and reports a miss with falsePositive.
+   * @param hash the hash of the key
+   * @return false if the key was definitely never added
+   */
+  boolean mightContain(long hash) {
+    lookups++;
+    int base = ((int) hash & blockMask) << 3;
+    int h = (int) (hash >>> 32);
+    for (int w = 0; w < 8; w++) {
+      if ((words[base + w] & (1L << ((h * SALT[w]) >>> 26))) == 0) {
+        probesAvoided++;
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Counts a key that passed mightContain but was not in the index.
+   */
+  void falsePositive() { falsePositives++; }
+
+  /**
+   * Returns the size of the bit array.
+   * @return the number of bits
+   */
+  long bitCount() { return (long) words.length * 64; }
+
+  KeyFilterStats stats() {
+    return new KeyFilterStats(bitCount(), lookups, probesAvoided, falsePositives);
+  }
+}
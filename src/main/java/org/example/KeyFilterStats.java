@@ -0,0 +1,47 @@
+package org.example;
+
+/**
+ * The KeyFilterStats class holds the counters of the Bloom filter in front of the id and email
+ * indexes, taken at one point in time. Use them to size the filter: a high false-positive rate
+ * means the expected number of leads given when the filter was created was too small.
+ */
+public final class KeyFilterStats {
+  private final long bits;
+  private final long lookups;
+  private final long probesAvoided;
+  private final long falsePositives;
+
+  /**
+   * Constructs the counters of a filter.
+   * @param bits size of the filter in bits
+   * @param lookups number of keys checked
+   * @param probesAvoided keys the filter rejected, so the index was not probed
+   * @param falsePositives keys the filter let through that the index did not have
+   */
+  public KeyFilterStats(long bits, long lookups, long probesAvoided, long falsePositives) {
+    this.bits = bits;
+    this.lookups = lookups;
+    this.probesAvoided = probesAvoided;
+    this.falsePositives = falsePositives;
+  }
+
+  public long getBits() { return bits; }
+  public long getLookups() { return lookups; }
+  public long getProbesAvoided() { return probesAvoided; }
+  public long getFalsePositives() { return falsePositives; }
+
+  /**
+   * Returns the share of absent keys the filter failed to reject.
+   * @return false positives divided by all lookups for absent keys, or 0 if there were none
+   */
+  public double getFalsePositiveRate() {
+    long absent = probesAvoided + falsePositives;
+    return absent == 0 ? 0 : (double) falsePositives / absent;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("KeyFilterStats{bits=%d, lookups=%d, probesAvoided=%d, falsePositives=%d, falsePositiveRate=%.4f}",
+            bits, lookups, probesAvoided, falsePositives, getFalsePositiveRate());
+  }
+}
@@ -0,0 +1,107 @@
+package org.example;
+
+import java.util.Locale;
+
+/**
+ * The KeyHash class computes the 64-bit hashes used to index leads by "ID" and "email".
+ * Id and email hashes use different seeds so the two key spaces can share one table.
+ *
+ * Emails are case-folded while they are hashed, so no lowercased copy is made. ASCII is folded
+ * in place; an email with other characters, or a default locale whose lowercasing differs for
+ * ASCII, falls back to String.toLowerCase so the result always matches normalizeEmail.
+ */
+final class KeyHash {
+  static final long ID_SEED = 0x9E3779B97F4A7C15L;
+  static final long EMAIL_SEED = 0xC2B2AE3D27D4EB4FL;
+
+  private static final boolean ASCII_FOLDING = asciiFoldingMatchesLocale();
+
+  private KeyHash() {}
+
+  /**
+   * Hashes a normalized "ID".
+   * @param id the trimmed id
+   * @return a 64-bit hash of the id
+   */
+  static long id(String id) {
+    return hash(ID_SEED, id);
+  }
+
+  /**
+   * Hashes an "email" ignoring case, the same way normalizeEmail compares them.
+   * @param email the trimmed email, in any case
+   * @return a 64-bit hash of the lowercased email
+   */
+  static long email(String email) {
+    if (!ASCII_FOLDING) return hash(EMAIL_SEED, email.toLowerCase());
+    long h = EMAIL_SEED ^ email.length();
+    for (int i = 0; i < email.length(); i++) {
+      char c = email.charAt(i);
+      if (c >= 0x80) return hash(EMAIL_SEED, email.toLowerCase());
+      if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+      h = (h ^ c) * 0x100000001B3L;
+    }
+    return mix(h);
+  }
+
+  /**
+   * Checks if two trimmed emails are equal after normalizeEmail, without lowercasing copies
+   * when both are ASCII.
+   * @param a the first email
+   * @param b the second email
+   * @return true if the emails are the same ignoring case
+   */
+  static boolean sameEmail(String a, String b) {
+    if (!ASCII_FOLDING) return a.toLowerCase().equals(b.toLowerCase());
+    if (a.length() != b.length()) {
+      return (!isAscii(a) || !isAscii(b)) && a.toLowerCase().equals(b.toLowerCase());
+    }
+    for (int i = 0; i < a.length(); i++) {
+      char x = a.charAt(i);
+      char y = b.charAt(i);
+      if (x == y) continue;
+      if (x >= 0x80 || y >= 0x80) return a.toLowerCase().equals(b.toLowerCase());
+      if (x >= 'A' && x <= 'Z') x += 'a' - 'A';
+      if (y >= 'A' && y <= 'Z') y += 'a' - 'A';
+      if (x != y) return false;
+    }
+    return true;
+  }
+
+  private static boolean isAscii(String s) {
+    for (int i = 0; i < s.length(); i++) {
+      if (s.charAt(i) >= 0x80) return false;
+    }
+    return true;
+  }
+
+  private static long hash(long seed, CharSequence s) {
+    long h = seed ^ s.length();
+    for (int i = 0; i < s.length(); i++) {
+      h = (h ^ s.charAt(i)) * 0x100000001B3L;
+    }
+    return mix(h);
+  }
+
+  /**
+   * Finalizer from MurmurHash3, spreads the bits so the low bits can be used as a table index.
+   * @param h the hash to mix
+   * @return the mixed hash
+   */
+  static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * Lowercasing in Turkish, Azeri and Lithuanian treats some ASCII letters specially.
+   */
+  private static boolean asciiFoldingMatchesLocale() {
+    String language = Locale.getDefault().getLanguage();
+    return !language.equals("tr") && !language.equals("az") && !language.equals("lt");
+  }
+}
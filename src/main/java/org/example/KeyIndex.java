@@ -0,0 +1,117 @@
+package org.example;
+
+import java.util.Arrays;
+
+/**
+ * The KeyIndex class maps a normalized "ID" or email to an int, usually a survivor slot, without
+ * allocating. It is an open-addressing table with linear probing that stores the 64-bit key hash
+ * next to the value. Keys themselves are not stored: on a hash match, matches is asked to compare
+ * the key with the one the value stands for, so two keys with the same hash are kept apart.
+ * Removal shifts the rest of the probe run back instead of leaving deleted markers.
+ */
+abstract class KeyIndex {
+  static final int NONE = -1;
+
+  private long[] hashes;
+  private int[] values;
+  private int mask;
+  private int size;
+
+  /**
+   * Creates an empty index sized so the expected number of keys fit without growing.
+   * @param expectedKeys expected number of keys
+   */
+  KeyIndex(int expectedKeys) {
+    int capacity = Integer.highestOneBit(Math.min(Math.max(8, expectedKeys), 1 << 29) * 2 - 1) << 1;
+    allocate(capacity);
+  }
+
+  /**
+   * Checks that a value stored under a matching hash really belongs to the key.
+   * @param value the stored value
+   * @param key the key being looked up
+   * @return true if the value was stored under this key
+   */
+  protected abstract boolean matches(int value, String key);
+
+  /**
+   * Finds the value stored for a key.
+   * @param hash the hash of the key
+   * @param key the key
+   * @return the value or NONE
+   */
+  int find(long hash, String key) {
+    for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+      int value = values[i];
+      if (value == NONE) return NONE;
+      if (hashes[i] == hash && matches(value, key)) return value;
+    }
+  }
+
+  /**
+   * Stores a value for a key, replacing the value already stored for the same key.
+   * @param hash the hash of the key
+   * @param key the key
+   * @param value the value, must not be negative
+   */
+  void put(long hash, String key, int value) {
+    int i = (int) hash & mask;
+    for (int existing = values[i]; existing != NONE; existing = values[i]) {
+      if (hashes[i] == hash && matches(existing, key)) {
+        values[i] = value;
+        return;
+      }
+      i = (i + 1) & mask;
+    }
+    hashes[i] = hash;
+    values[i] = value;
+    if (++size * 2 > values.length) grow();
+  }
+
+  /**
+   * Removes the value stored for a key, if there is one.
+   * @param hash the hash of the key
+   * @param key the key
+   */
+  void remove(long hash, String key) {
+    int i = (int) hash & mask;
+    for (int existing = values[i]; ; existing = values[i]) {
+      if (existing == NONE) return;
+      if (hashes[i] == hash && matches(existing, key)) break;
+      i = (i + 1) & mask;
+    }
+    int hole = i;
+    for (int next = (hole + 1) & mask; values[next] != NONE; next = (next + 1) & mask) {
+      int home = (int) hashes[next] & mask;
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        hashes[hole] = hashes[next];
+        values[hole] = values[next];
+        hole = next;
+      }
+    }
+    values[hole] = NONE;
+    size--;
+  }
+
+  int size() { return size; }
+
+  private void grow() {
+    long[] oldHashes = hashes;
+    int[] oldValues = values;
+    allocate(oldValues.length * 2);
+    for (int j = 0; j < oldValues.length; j++) {
+      if (oldValues[j] == NONE) continue;
+      int i = (int) oldHashes[j] & mask;
+      while (values[i] != NONE) i = (i + 1) & mask;
+      hashes[i] = oldHashes[j];
+      values[i] = oldValues[j];
+    }
+  }
+
+  private void allocate(int capacity) {
+    hashes = new long[capacity];
+    values = new int[capacity];
+    Arrays.fill(values, NONE);
+    mask = capacity - 1;
+  }
+}
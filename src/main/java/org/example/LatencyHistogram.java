@@ -0,0 +1,78 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class counts recorded values, usually nanoseconds, in log-linear buckets
+ * the way HdrHistogram does: every power of two is split into 32 equal buckets, so a percentile
+ * is off by at most 1/32 (about 3%) of its value whatever the range. The buckets are a fixed
+ * array, so recording does not allocate and any number of threads can record at once.
+ */
+final class LatencyHistogram {
+  private static final int SUB_BITS = 5;
+  private static final int SUB_COUNT = 1 << SUB_BITS;
+  private static final int BUCKETS = SUB_COUNT + (63 - SUB_BITS) * SUB_COUNT;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  /**
+   * Records a value. Negative values are recorded as 0.
+   * @param value the value, usually a duration in nanoseconds
+   */
+  void record(long value) {
+    long v = Math.max(0, value);
+    counts.incrementAndGet(bucket(v));
+    count.increment();
+    sum.add(v);
+    max.accumulate(v);
+  }
+
+  long count() { return count.sum(); }
+
+  long max() { return max.get(); }
+
+  double mean() {
+    long n = count.sum();
+    return n == 0 ? 0 : (double) sum.sum() / n;
+  }
+
+  /**
+   * Returns the value below which the given percentage of recorded values fall, rounded up to
+   * the end of its bucket.
+   * @param percentile the percentage, 0 to 100
+   * @return the value, or 0 if nothing was recorded
+   */
+  long percentile(double percentile) {
+    long n = count.sum();
+    if (n == 0) return 0;
+    long rank = Math.max(1, (long) Math.ceil(n * Math.min(100, Math.max(0, percentile)) / 100));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) return Math.min(highest(i), max());
+    }
+    return max();
+  }
+
+  static int bucket(long v) {
+    if (v < SUB_COUNT) return (int) v;
+    int exponent = 63 - Long.numberOfLeadingZeros(v);
+    int shift = exponent - SUB_BITS;
+    return SUB_COUNT + shift * SUB_COUNT + (int) (v >>> shift) - SUB_COUNT;
+  }
+
+  /**
+   * Returns the largest value that falls in a bucket.
+   */
+  static long highest(int bucket) {
+    if (bucket < SUB_COUNT) return bucket;
+    int shift = (bucket - SUB_COUNT) / SUB_COUNT;
+    long lowest = (long) (SUB_COUNT + (bucket - SUB_COUNT) % SUB_COUNT) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+}
@@ -16,6 +16,9 @@ public class Lead {
   private String lastName;
   private String address;
   private Instant entryDate;
+  private transient long idHash;
+  private transient long emailHash;
+  private transient boolean keyed;
   public Lead() {}
 
   /**
@@ -37,10 +40,16 @@ public class Lead {
   }
 
   public String getId() { return id; }
-  public void setId(String id) { this.id = id; }
+  public void setId(String id) {
+    this.id = id;
+    this.keyed = false;
+  }
 
   public String getEmail() { return email; }
-  public void setEmail(String email) { this.email = email; }
+  public void setEmail(String email) {
+    this.email = email;
+    this.keyed = false;
+  }
 
   public String getFirstName() { return firstName; }
   public void setFirstName(String firstName) { this.firstName = firstName; }
@@ -54,6 +63,40 @@ public class Lead {
   public Instant getEntryDate() { return entryDate; }
   public void setEntryDate(Instant entryDate) { this.entryDate = entryDate; }
 
+  /**
+   * Caches the KeyHash of the trimmed id and email, set by LeadDeduplicator.prepare. Changing
+   * the id or email drops the cache.
+   * @param idHash KeyHash.id of the id
+   * @param emailHash KeyHash.email of the email
+   */
+  void setKeys(long idHash, long emailHash) {
+    this.idHash = idHash;
+    this.emailHash = emailHash;
+    this.keyed = true;
+  }
+
+  boolean isKeyed() { return keyed; }
+
+  /**
+   * Returns the cached KeyHash.id of the id, hashing the id and email first if they are not
+   * cached. Only for leads with an id and email.
+   * @return the id hash
+   */
+  long idHash() {
+    if (!keyed) setKeys(KeyHash.id(id), KeyHash.email(email));
+    return idHash;
+  }
+
+  /**
+   * Returns the cached KeyHash.email of the email, hashing the id and email first if they are
+   * not cached. Only for leads with an id and email.
+   * @return the email hash
+   */
+  long emailHash() {
+    if (!keyed) setKeys(KeyHash.id(id), KeyHash.email(email));
+    return emailHash;
+  }
+
   /**
    * Retuers a string representations of the lead, used for logging.
    * @return a string with lead details
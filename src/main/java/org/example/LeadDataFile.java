@@ -0,0 +1,210 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The LeadDataFile class is an append-only file of lead records, used behind the persistent index
+ * and as spill storage by the external deduplicator. Every lead is appended once and is addressed
+ * by the byte offset of its record. The only byte ever rewritten is the live flag, which is
+ * cleared when the lead stops being a survivor.
+ *
+ * Record layout: int body length, byte flags, long input position, long epoch second,
+ * int nano, then id, email, firstName, lastName and address as length-prefixed UTF-8.
+ */
+class LeadDataFile implements Closeable {
+  static final long MAGIC = 0x4455504544415431L;
+  static final int VERSION = 1;
+  static final long HEADER_BYTES = 16;
+
+  private static final byte LIVE = 1;
+
+  private final FileChannel channel;
+  private ByteBuffer buffer = ByteBuffer.allocate(512);
+  private long end;
+
+  /**
+   * Opens or creates a data file.
+   * @param path the file to open
+   * @param committedEnd length of the file as recorded by the index, anything after it is an
+   *                     unfinished append and is cut off, or -1 for a new file
+   * @throws IOException if the file can not be opened or has the wrong format
+   */
+  LeadDataFile(Path path, long committedEnd) throws IOException {
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    if (committedEnd < 0 || channel.size() == 0) {
+      ByteBuffer header = ByteBuffer.allocate((int) HEADER_BYTES);
+      header.putLong(MAGIC).putInt(VERSION).putInt(0).flip();
+      channel.truncate(0);
+      writeFully(header, 0);
+      end = HEADER_BYTES;
+    } else {
+      ByteBuffer header = readFully(0, (int) HEADER_BYTES);
+      if (header.getLong() != MAGIC || header.getInt() != VERSION) {
+        throw new IOException("Not a lead data file: " + path);
+      }
+      if (channel.size() < committedEnd) {
+        throw new IOException("Lead data file is shorter than its index: " + path);
+      }
+      channel.truncate(committedEnd);
+      end = committedEnd;
+    }
+  }
+
+  /**
+   * Appends a live survivor record.
+   * @param lead the lead to store
+   * @param position index of the lead in the input
+   * @return the offset of the new record
+   * @throws IOException if writing fails
+   */
+  long append(Lead lead, long position) throws IOException {
+    byte[][] strings = {utf8(lead.getId()), utf8(lead.getEmail()), utf8(lead.getFirstName()),
+            utf8(lead.getLastName()), utf8(lead.getAddress())};
+    int body = 1 + 8 + 8 + 4;
+    for (byte[] s : strings) body += 4 + (s == null ? 0 : s.length);
+
+    ByteBuffer out = scratch(4 + body);
+    Instant date = lead.getEntryDate();
+    out.putInt(body).put(LIVE).putLong(position).putLong(date.getEpochSecond()).putInt(date.getNano());
+    for (byte[] s : strings) {
+      if (s == null) {
+        out.putInt(-1);
+      } else {
+        out.putInt(s.length).put(s);
+      }
+    }
+    out.flip();
+
+    long offset = end;
+    writeFully(out, offset);
+    end += 4 + body;
+    return offset;
+  }
+
+  /**
+   * Reads the lead stored at an offset.
+   * @param offset offset returned by append
+   * @return a new Lead with the stored values
+   * @throws IOException if reading fails
+   */
+  Lead read(long offset) throws IOException {
+    return decode(record(offset));
+  }
+
+  /**
+   * Reads the input position stored at an offset.
+   * @param offset offset returned by append
+   * @return the input position of the lead
+   * @throws IOException if reading fails
+   */
+  long position(long offset) throws IOException {
+    return readFully(offset + 4 + 1, 8).getLong();
+  }
+
+  /**
+   * Clears the live flag of a record. Clearing it twice has no effect.
+   * @param offset offset returned by append
+   * @return true if the record was live before
+   * @throws IOException if reading or writing fails
+   */
+  boolean tombstone(long offset) throws IOException {
+    if (readFully(offset + 4, 1).get() != LIVE) return false;
+    writeFully(ByteBuffer.wrap(new byte[]{0}), offset + 4);
+    return true;
+  }
+
+  /**
+   * Reads every live record from the start of the file.
+   * @return the live leads in append order
+   * @throws IOException if reading fails
+   */
+  List<Lead> readLive() throws IOException {
+    List<Lead> out = new ArrayList<>();
+    forEachLive(out::add);
+    return out;
+  }
+
+  /**
+   * Passes every live record, from the start of the file, to a consumer.
+   * @param consumer receives the live leads in append order
+   * @throws IOException if reading fails
+   */
+  void forEachLive(Consumer<Lead> consumer) throws IOException {
+    long offset = HEADER_BYTES;
+    while (offset < end) {
+      ByteBuffer in = record(offset);
+      int body = in.remaining();
+      if (in.get(in.position()) == LIVE) {
+        consumer.accept(decode(in));
+      }
+      offset += 4 + body;
+    }
+  }
+
+  /**
+   * Returns the offset the next record will be written at.
+   * @return the committed length of the file
+   */
+  long end() { return end; }
+
+  void force() throws IOException { channel.force(false); }
+
+  @Override
+  public void close() throws IOException { channel.close(); }
+
+  private ByteBuffer record(long offset) throws IOException {
+    int body = readFully(offset, 4).getInt();
+    return readFully(offset + 4, body);
+  }
+
+  private static Lead decode(ByteBuffer in) {
+    in.position(in.position() + 1 + 8);
+    Instant date = Instant.ofEpochSecond(in.getLong(), in.getInt());
+    return new Lead(string(in), string(in), string(in), string(in), string(in), date);
+  }
+
+  private ByteBuffer scratch(int size) {
+    if (buffer.capacity() < size) buffer = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+    buffer.clear().limit(size);
+    return buffer;
+  }
+
+  private ByteBuffer readFully(long offset, int size) throws IOException {
+    ByteBuffer in = scratch(size);
+    while (in.hasRemaining()) {
+      if (channel.read(in, offset + in.position()) < 0) throw new EOFException("Truncated lead record");
+    }
+    in.flip();
+    return in;
+  }
+
+  private void writeFully(ByteBuffer out, long offset) throws IOException {
+    while (out.hasRemaining()) {
+      offset += channel.write(out, offset);
+    }
+  }
+
+  private static byte[] utf8(String s) {
+    return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String string(ByteBuffer in) {
+    int len = in.getInt();
+    if (len < 0) return null;
+    String s = new String(in.array(), in.arrayOffset() + in.position(), len, StandardCharsets.UTF_8);
+    in.position(in.position() + len);
+    return s;
+  }
+}
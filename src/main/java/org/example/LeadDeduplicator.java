@@ -1,13 +1,10 @@
 package org.example;
 
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.AbstractList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
 
 /**
  * The LeadDuplicator class is where the main logic for deduplication lies, the class compares
@@ -47,61 +44,142 @@ public class LeadDeduplicator {
    * @return a Result containing the duplicated leads, logs and invalid leads.
    */
   public static Result deduplicate(List<Lead> leads) {
-    List<Lead> survivors = new ArrayList<>();
-    List<ChangeLogEntry> logs = new ArrayList<>();
-    List<String> invalidLogs = new ArrayList<>();
-    Map<String, Lead> idMap = new HashMap<>();
-    Map<String, Lead> emailMap = new HashMap<>();
-
-    for (int i = 0; i < leads.size(); i++) {
-      Lead current = leads.get(i);
-      normalize(current);
-
-      if(!isValid(current)){
-        invalidLogs.add("Removed record due to Null or empty field/fields" + current);
+    return deduplicate(leads, false);
+  }
+
+  /**
+   * Dedupes a list of leads, optionally checking a Bloom filter sized for the list before the
+   * id and email indexes. The result is the same either way.
+   * @param leads list of leads to dedupe
+   * @param keyFilter true to use the filter, worth it when most leads are new
+   * @return a Result containing the deduped leads, logs and invalid leads.
+   */
+  public static Result deduplicate(List<Lead> leads, boolean keyFilter) {
+    IncrementalLeadDeduplicator dedup = keyFilter
+            ? IncrementalLeadDeduplicator.withKeyFilter(leads.size())
+            : new IncrementalLeadDeduplicator(leads.size());
+    for (Lead lead : leads) {
+      dedup.accept(lead);
+    }
+    return dedup.snapshot();
+  }
+
+  /**
+   * Dedupes a list of leads on exact "ID" and email matches, then merges near-duplicates among
+   * the survivors with a FuzzyLeadMatcher.
+   * @param leads list of leads to dedupe
+   * @param fuzzy the near-duplicate matcher, its getStats reports this run
+   * @return a Result containing the deduped leads, logs of both passes and invalid leads.
+   */
+  public static Result deduplicate(List<Lead> leads, FuzzyLeadMatcher fuzzy) {
+    return fuzzy.match(deduplicate(leads));
+  }
+
+  /**
+   * Dedupes the rows of a LeadTable with the same rules as deduplicate(List). The table is
+   * not changed. The lists of the returned Result are views over row numbers and build a new
+   * Lead or ChangeLogEntry each time an element is read.
+   * @param table the leads to dedupe, in input order
+   * @return a Result containing the deduped leads, logs and invalid leads.
+   */
+  public static Result deduplicate(LeadTable table) {
+    int n = table.size();
+    BitSet alive = new BitSet(n);
+    IntList logSources = new IntList();
+    IntList logKept = new IntList();
+    IntList invalidRows = new IntList();
+    KeyIndex idMap = new KeyIndex(n) {
+      @Override
+      protected boolean matches(int row, String id) {
+        return table.id(row).equals(id);
+      }
+    };
+    KeyIndex emailMap = new KeyIndex(n) {
+      @Override
+      protected boolean matches(int row, String email) {
+        return KeyHash.sameEmail(table.email(row), email);
+      }
+    };
+
+    for (int row = 0; row < n; row++) {
+      if (!table.isValid(row)) {
+        invalidRows.add(row);
         continue;
       }
 
-      String id = current.getId();
-      String email = normalizeEmail(current.getEmail());
+      String id = table.id(row);
+      String email = table.email(row);
+      long idHash = KeyHash.id(id);
+      long emailHash = KeyHash.email(email);
 
-      Lead duplicate = Optional.ofNullable(idMap.get(id))
-              .orElse(emailMap.get(email));
+      int dupRow = idMap.find(idHash, id);
+      if (dupRow == KeyIndex.NONE) dupRow = emailMap.find(emailHash, email);
 
-      if (duplicate == null) {
-        survivors.add(current);
-        idMap.put(id, current);
-        emailMap.put(email, current);
+      if (dupRow == KeyIndex.NONE) {
+        alive.set(row);
+        idMap.put(idHash, id, row);
+        emailMap.put(emailHash, email, row);
         continue;
       }
 
-      boolean currentWins = isCurrentPreferred(current, duplicate, i, survivors.indexOf(duplicate));
-      if (currentWins) {
-
-        survivors.remove(duplicate);
-        survivors.add(current);
+      long c = table.entryNanos(row);
+      long e = table.entryNanos(dupRow);
+      if (c > e || (c == e && row > dupRow)) {
+        alive.clear(dupRow);
+        alive.set(row);
 
-        idMap.put(id, current);
-        emailMap.put(email, current);
+        idMap.put(idHash, id, row);
+        emailMap.put(emailHash, email, row);
 
-        String dupEmail = normalizeEmail(duplicate.getEmail());
-        if (!dupEmail.equals(email)) {
-          emailMap.remove(dupEmail);
+        String dupEmail = table.email(dupRow);
+        if (!KeyHash.sameEmail(dupEmail, email)) {
+          emailMap.remove(KeyHash.email(dupEmail), dupEmail);
         }
 
-        logs.add(new ChangeLogEntry(duplicate, current, diff(duplicate, current)));
+        logSources.add(dupRow);
+        logKept.add(row);
       } else {
-        logs.add(new ChangeLogEntry(current, duplicate, diff(current, duplicate)));
+        logSources.add(row);
+        logKept.add(dupRow);
       }
     }
-    return new Result(survivors, logs, invalidLogs);
+
+    int[] survivors = alive.stream().toArray();
+    List<Lead> deduped = new AbstractList<Lead>() {
+      @Override
+      public Lead get(int index) { return table.lead(survivors[index]); }
+
+      @Override
+      public int size() { return survivors.length; }
+    };
+    List<ChangeLogEntry> log = new AbstractList<ChangeLogEntry>() {
+      @Override
+      public ChangeLogEntry get(int index) {
+        Lead src = table.lead(logSources.get(index));
+        Lead kept = table.lead(logKept.get(index));
+        return new ChangeLogEntry(src, kept);
+      }
+
+      @Override
+      public int size() { return logSources.size(); }
+    };
+    List<String> invalidLogs = new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return "Removed record due to Null or empty field/fields" + table.lead(invalidRows.get(index));
+      }
+
+      @Override
+      public int size() { return invalidRows.size(); }
+    };
+    return new Result(deduped, log, invalidLogs);
   }
 
   /**
    * Trims the whitespaces for the leads "ID" and "email".
    * @param lead the lead to be normalized.
    */
-  private static void normalize(Lead lead){
+  static void normalize(Lead lead){
     if(lead.getId() != null) lead.setId(lead.getId().trim());
     if(lead.getEmail() != null) lead.setEmail(lead.getEmail().trim());
   }
@@ -111,7 +189,7 @@ public class LeadDeduplicator {
    * @param s the email string
    * @return the email in lowercase
    */
-  private static String normalizeEmail(String s){
+  static String normalizeEmail(String s){
     return s.toLowerCase();
   }
 
@@ -120,18 +198,45 @@ public class LeadDeduplicator {
    * @param l the lead to validate
    * @return true if the lead is valid else returns false.
    */
-  private static boolean isValid(Lead l){
+  static boolean isValid(Lead l){
     return notBlank(l.getId()) && notBlank(l.getEmail()) && notBlank(l.getFirstName())
             && notBlank(l.getLastName()) && notBlank(l.getAddress()) && l.getEntryDate() != null;
   }
 
   /**
-   * Checks to see if the value is not NULL and not blank.
+   * Normalizes and validates a lead in one pass, with the same result as normalize followed by
+   * isValid. The id and email are trimmed, which only makes a new String when there is
+   * whitespace to cut, and each is hashed once from the trimmed value; the hashes are cached on
+   * the lead for the indexes and the change log to reuse. A lead prepared before and not
+   * changed since is not trimmed or hashed again.
+   * @param lead the lead, normalized in place
+   * @return true if the lead is valid else returns false.
+   */
+  static boolean prepare(Lead lead) {
+    if (!lead.isKeyed()) {
+      String id = lead.getId() == null ? null : lead.getId().trim();
+      String email = lead.getEmail() == null ? null : lead.getEmail().trim();
+      if (id != lead.getId()) lead.setId(id);
+      if (email != lead.getEmail()) lead.setEmail(email);
+      if (id == null || id.isEmpty() || email == null || email.isEmpty()) return false;
+      lead.setKeys(KeyHash.id(id), KeyHash.email(email));
+    }
+    return notBlank(lead.getFirstName()) && notBlank(lead.getLastName()) && notBlank(lead.getAddress())
+            && lead.getEntryDate() != null;
+  }
+
+  /**
+   * Checks to see if the value is not NULL and not blank, scanning for a character that trim
+   * would keep instead of trimming a copy.
    * @param s a string to check
    * @return true if its not blank else false
    */
   private static boolean notBlank(String s){
-    return s != null && !s.trim().isEmpty();
+    if (s == null) return false;
+    for (int i = 0; i < s.length(); i++) {
+      if (s.charAt(i) > ' ') return true;
+    }
+    return false;
   }
 
   /**
@@ -139,10 +244,10 @@ public class LeadDeduplicator {
    * @param current the current lead which is being evaluated
    * @param existing the existing lead with the duplicate
    * @param curIndex index of the current lead in the original list
-   * @param existIndex index of the existing lead in the survivors list
+   * @param existIndex index of the existing lead in the original list
    * @return true if current should replace existing else false
    */
-  private static boolean isCurrentPreferred(Lead current, Lead existing, int curIndex, int existIndex) {
+  static boolean isCurrentPreferred(Lead current, Lead existing, long curIndex, long existIndex) {
     Instant c = current.getEntryDate();
     Instant e = existing.getEntryDate();
     if (c.isAfter(e)) return true;
@@ -156,20 +261,7 @@ public class LeadDeduplicator {
    * @param kept the retained lead
    * @return a map of changes
    */
-  private static Map<String, Object[]> diff(Lead src, Lead kept) {
-    Map<String, Object[]> d = new LinkedHashMap<>();
-    if (!Objects.equals(src.getId(),kept.getId())) d.put("_id",
-            new Object[]{src.getId(), kept.getId()});
-    if (!Objects.equals(src.getEmail(), kept.getEmail())) d.put("email",
-            new Object[]{src.getEmail(), kept.getEmail()});
-    if (!Objects.equals(src.getFirstName(), kept.getFirstName())) d.put("firstName",
-            new Object[]{src.getFirstName(), kept.getFirstName()});
-    if (!Objects.equals(src.getLastName(), kept.getLastName())) d.put("lastName",
-            new Object[]{src.getLastName(), kept.getLastName()});
-    if (!Objects.equals(src.getAddress(), kept.getAddress())) d.put("address",
-            new Object[]{src.getAddress(), kept.getAddress()});
-    if (!Objects.equals(src.getEntryDate(), kept.getEntryDate())) d.put("entryDate",
-            new Object[]{src.getEntryDate(), kept.getEntryDate()});
-    return d;
+  static Map<String, Object[]> diff(Lead src, Lead kept) {
+    return new ChangeLogEntry(src, kept).getFieldChanges();
   }
 }
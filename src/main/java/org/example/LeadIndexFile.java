@@ -0,0 +1,232 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongPredicate;
+
+/**
+ * The LeadIndexFile class is a memory-mapped, open-addressing hash table that maps a key hash to
+ * the offset of a survivor record in the LeadDataFile. It uses linear probing with backward
+ * shift deletion, so there are no deleted markers, and doubles into a new file when half full.
+ * Opening an existing index only maps the file, the table is never rebuilt.
+ *
+ * The header also holds the counters the deduplicator needs to resume: the next input position,
+ * the number of live survivors and the committed length of the data file.
+ */
+class LeadIndexFile implements Closeable {
+  private static final long MAGIC = 0x4455504549445831L;
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 64;
+  private static final int SLOT_BYTES = 16;
+  private static final int SEGMENT_SHIFT = 30;
+  private static final long SEGMENT_BYTES = 1L << SEGMENT_SHIFT;
+  private static final long MIN_CAPACITY = 1024;
+
+  private static final int CAPACITY_AT = 16;
+  private static final int SIZE_AT = 24;
+  private static final int NEXT_POSITION_AT = 32;
+  private static final int LIVE_COUNT_AT = 40;
+  private static final int DATA_END_AT = 48;
+
+  private final Path path;
+  private FileChannel channel;
+  private MappedByteBuffer[] segments;
+  private long capacity;
+  private long mask;
+  private long size;
+
+  /**
+   * Opens an index file, creating an empty one if it does not exist.
+   * @param path the index file
+   * @throws IOException if the file can not be mapped or has the wrong format
+   */
+  LeadIndexFile(Path path) throws IOException {
+    this.path = path;
+    boolean exists = Files.exists(path) && Files.size(path) > 0;
+    if (exists) {
+      map(FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE), -1);
+      if (segments[0].getLong(0) != MAGIC || segments[0].getInt(8) != VERSION) {
+        close();
+        throw new IOException("Not a lead index file: " + path);
+      }
+      capacity = segments[0].getLong(CAPACITY_AT);
+      mask = capacity - 1;
+      size = segments[0].getLong(SIZE_AT);
+    } else {
+      create(path, MIN_CAPACITY);
+      setDataEnd(-1);
+    }
+  }
+
+  /**
+   * Returns true if the index did not exist before it was opened.
+   * @return true for a new index
+   */
+  boolean isNew() { return dataEnd() < 0; }
+
+  /**
+   * Finds the offset stored under a hash whose record satisfies the key check.
+   * @param hash the key hash
+   * @param matches checks that the record at an offset really has the key
+   * @return the record offset or DedupState.NONE
+   */
+  long find(long hash, LongPredicate matches) {
+    for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+      long offset = offsetAt(slot);
+      if (offset < 0) return DedupState.NONE;
+      if (hashAt(slot) == hash && matches.test(offset)) return offset;
+    }
+  }
+
+  /**
+   * Points a key at a record offset, overwriting the existing entry for the same key.
+   * @param hash the key hash
+   * @param offset the record offset
+   * @param matches checks that the record at an offset has the same key
+   * @throws IOException if the index has to grow and the new file can not be written
+   */
+  void put(long hash, long offset, LongPredicate matches) throws IOException {
+    long slot = hash & mask;
+    for (long existing = offsetAt(slot); existing >= 0; existing = offsetAt(slot)) {
+      if (hashAt(slot) == hash && matches.test(existing)) {
+        setSlot(slot, hash, offset);
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+    setSlot(slot, hash, offset);
+    setSize(size + 1);
+    if (size * 2 > capacity) grow();
+  }
+
+  /**
+   * Removes the entry for a key, shifting the rest of its probe run back.
+   * @param hash the key hash
+   * @param matches checks that the record at an offset has the key
+   */
+  void remove(long hash, LongPredicate matches) {
+    long slot = hash & mask;
+    for (long existing = offsetAt(slot); ; existing = offsetAt(slot)) {
+      if (existing < 0) return;
+      if (hashAt(slot) == hash && matches.test(existing)) break;
+      slot = (slot + 1) & mask;
+    }
+    long hole = slot;
+    for (long next = (hole + 1) & mask; offsetAt(next) >= 0; next = (next + 1) & mask) {
+      long home = hashAt(next) & mask;
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        setSlot(hole, hashAt(next), offsetAt(next));
+        hole = next;
+      }
+    }
+    clearSlot(hole);
+    setSize(size - 1);
+  }
+
+  long nextPosition() { return segments[0].getLong(NEXT_POSITION_AT); }
+  void setNextPosition(long position) { segments[0].putLong(NEXT_POSITION_AT, position); }
+
+  long liveCount() { return segments[0].getLong(LIVE_COUNT_AT); }
+  void setLiveCount(long count) { segments[0].putLong(LIVE_COUNT_AT, count); }
+
+  long dataEnd() { return segments[0].getLong(DATA_END_AT); }
+  void setDataEnd(long end) { segments[0].putLong(DATA_END_AT, end); }
+
+  long size() { return size; }
+
+  void force() {
+    for (MappedByteBuffer segment : segments) segment.force();
+  }
+
+  @Override
+  public void close() throws IOException {
+    force();
+    channel.close();
+  }
+
+  private void grow() throws IOException {
+    long[] header = {nextPosition(), liveCount(), dataEnd()};
+    long oldCapacity = capacity;
+    MappedByteBuffer[] old = segments;
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    FileChannel oldChannel = channel;
+
+    create(tmp, oldCapacity * 2);
+    for (long slot = 0; slot < oldCapacity; slot++) {
+      long offset = offsetAt(old, slot);
+      if (offset < 0) continue;
+      long hash = hashAt(old, slot);
+      long to = hash & mask;
+      while (offsetAt(to) >= 0) to = (to + 1) & mask;
+      setSlot(to, hash, offset);
+    }
+    setSize(size);
+    setNextPosition(header[0]);
+    setLiveCount(header[1]);
+    setDataEnd(header[2]);
+    force();
+    oldChannel.close();
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void create(Path file, long newCapacity) throws IOException {
+    FileChannel created = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+    map(created, HEADER_BYTES + newCapacity * SLOT_BYTES);
+    capacity = newCapacity;
+    mask = newCapacity - 1;
+    size = 0;
+    segments[0].putLong(0, MAGIC).putInt(8, VERSION).putLong(CAPACITY_AT, newCapacity).putLong(SIZE_AT, 0);
+  }
+
+  private void map(FileChannel fileChannel, long length) throws IOException {
+    if (length < 0) length = fileChannel.size();
+    int count = (int) ((length + SEGMENT_BYTES - 1) >>> SEGMENT_SHIFT);
+    MappedByteBuffer[] mapped = new MappedByteBuffer[count];
+    for (int i = 0; i < count; i++) {
+      long start = (long) i << SEGMENT_SHIFT;
+      mapped[i] = fileChannel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(SEGMENT_BYTES, length - start));
+    }
+    this.channel = fileChannel;
+    this.segments = mapped;
+  }
+
+  private void setSize(long newSize) {
+    size = newSize;
+    segments[0].putLong(SIZE_AT, newSize);
+  }
+
+  private long hashAt(long slot) { return hashAt(segments, slot); }
+  private long offsetAt(long slot) { return offsetAt(segments, slot); }
+
+  private static long hashAt(MappedByteBuffer[] in, long slot) {
+    long at = HEADER_BYTES + slot * SLOT_BYTES;
+    return in[(int) (at >>> SEGMENT_SHIFT)].getLong((int) (at & (SEGMENT_BYTES - 1)));
+  }
+
+  /**
+   * Offsets are stored plus one so a zeroed slot reads back as empty (-1).
+   */
+  private static long offsetAt(MappedByteBuffer[] in, long slot) {
+    long at = HEADER_BYTES + slot * SLOT_BYTES + 8;
+    return in[(int) (at >>> SEGMENT_SHIFT)].getLong((int) (at & (SEGMENT_BYTES - 1))) - 1;
+  }
+
+  private void setSlot(long slot, long hash, long offset) {
+    long at = HEADER_BYTES + slot * SLOT_BYTES;
+    MappedByteBuffer segment = segments[(int) (at >>> SEGMENT_SHIFT)];
+    int local = (int) (at & (SEGMENT_BYTES - 1));
+    segment.putLong(local, hash);
+    segment.putLong(local + 8, offset + 1);
+  }
+
+  private void clearSlot(long slot) {
+    setSlot(slot, 0, -1);
+  }
+}
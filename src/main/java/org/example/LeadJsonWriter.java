@@ -0,0 +1,148 @@
+package org.example;
+
+import com.fasterxml.jackson.core.util.DefaultIndenter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The LeadJsonWriter class writes leads as a {"leads": [...]} document without ever holding the
+ * document as one String. The list is cut into chunks that are serialized in parallel, each into
+ * its own byte array, by one shared ObjectWriter; the chunks are then written to the channel in
+ * list order between the envelope bytes, several at a time with a gathering write. At most
+ * parallelism + 1 chunks are in memory at once.
+ *
+ * A chunk is serialized as a whole {"leads": [...]} document and its envelope is cut off, so
+ * pretty printed output indents every lead exactly like ObjectMapper.writerWithDefaultPrettyPrinter
+ * does for the whole list, and the bytes are the same.
+ */
+public class LeadJsonWriter {
+  public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+  private final ObjectWriter writer;
+  private final int parallelism;
+  private final int chunkSize;
+  private final byte[] head;
+  private final byte[] separator;
+  private final byte[] tail;
+  private final byte[] empty;
+
+  /**
+   * Creates a pretty printing writer using every core.
+   * @param mapper the mapper from Main.createMapper
+   */
+  public LeadJsonWriter(ObjectMapper mapper) {
+    this(mapper, true, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Creates a writer.
+   * @param mapper the mapper from Main.createMapper
+   * @param pretty true for the pretty printed layout of Main.toPrettyJson, false for compact JSON
+   * @param parallelism number of chunks serialized at the same time
+   * @param chunkSize leads per chunk
+   */
+  public LeadJsonWriter(ObjectMapper mapper, boolean pretty, int parallelism, int chunkSize) {
+    if (parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1");
+    if (chunkSize < 1) throw new IllegalArgumentException("chunkSize must be positive");
+    ObjectWriter w = mapper.writerFor(LeadWrapper.class);
+    this.writer = pretty ? w.withDefaultPrettyPrinter() : w;
+    this.parallelism = parallelism;
+    this.chunkSize = chunkSize;
+    String lf = DefaultIndenter.SYSTEM_LINEFEED_INSTANCE.getEol();
+    this.head = bytes(pretty ? "{" + lf + "  \"leads\" : [ " : "{\"leads\":[");
+    this.separator = bytes(pretty ? ", " : ",");
+    this.tail = bytes(pretty ? " ]" + lf + "}" : "]}");
+    this.empty = bytes(pretty ? "{" + lf + "  \"leads\" : [ ]" + lf + "}" : "{\"leads\":[]}");
+  }
+
+  /**
+   * Writes the leads to a file, replacing it if it exists.
+   * @param leads the leads, in output order
+   * @param path the file
+   * @return the number of bytes written
+   * @throws IOException if a lead can not be serialized or writing fails
+   */
+  public long write(List<Lead> leads, Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      return write(leads, channel);
+    }
+  }
+
+  /**
+   * Writes the leads to a channel at its current position. The channel is left open.
+   * @param leads the leads, in output order; a random access list such as a Result's
+   * @param out the channel; a FileChannel gets gathering writes of several chunks at once
+   * @return the number of bytes written
+   * @throws IOException if a lead can not be serialized or writing fails
+   */
+  public long write(List<Lead> leads, WritableByteChannel out) throws IOException {
+    if (leads.isEmpty()) return writeFully(out, new ByteBuffer[]{ByteBuffer.wrap(empty)});
+    List<ByteBuffer> ready = new ArrayList<>();
+    long written = 0;
+    int chunks = 0;
+    try (OrderedTasks<ByteBuffer> serialized = new OrderedTasks<>("lead-json-writer", parallelism, "writing leads")) {
+      ready.add(ByteBuffer.wrap(head));
+      for (int start = 0; start < leads.size(); start += chunkSize) {
+        List<Lead> chunk = leads.subList(start, Math.min(leads.size(), start + chunkSize));
+        serialized.submit(() -> serialize(chunk));
+        if (serialized.isFull()) {
+          // Take the oldest chunk and every later one already done, and write them in one go.
+          do {
+            if (chunks++ > 0) ready.add(ByteBuffer.wrap(separator));
+            ready.add(serialized.next());
+          } while (serialized.isNextDone());
+          written += writeFully(out, ready.toArray(new ByteBuffer[0]));
+          ready.clear();
+        }
+      }
+      while (!serialized.isEmpty()) {
+        if (chunks++ > 0) ready.add(ByteBuffer.wrap(separator));
+        ready.add(serialized.next());
+      }
+      ready.add(ByteBuffer.wrap(tail));
+      return written + writeFully(out, ready.toArray(new ByteBuffer[0]));
+    }
+  }
+
+  /**
+   * Serializes a chunk and returns the bytes inside the envelope: the leads and the separators
+   * between them.
+   */
+  private ByteBuffer serialize(List<Lead> chunk) throws IOException {
+    byte[] doc = writer.writeValueAsBytes(new LeadWrapper(chunk));
+    return ByteBuffer.wrap(doc, head.length, doc.length - head.length - tail.length);
+  }
+
+  private static long writeFully(WritableByteChannel out, ByteBuffer[] buffers) throws IOException {
+    long total = 0;
+    for (ByteBuffer b : buffers) total += b.remaining();
+    if (out instanceof GatheringByteChannel) {
+      GatheringByteChannel gathering = (GatheringByteChannel) out;
+      for (int first = 0; first < buffers.length; ) {
+        gathering.write(buffers, first, Math.min(buffers.length - first, 1024));
+        while (first < buffers.length && !buffers[first].hasRemaining()) first++;
+      }
+    } else {
+      for (ByteBuffer b : buffers) {
+        while (b.hasRemaining()) out.write(b);
+      }
+    }
+    return total;
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,206 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The LeadSnapshotReader class maps a file written by LeadSnapshotWriter and reads it back
+ * lazily: opening it only reads the header and the dictionary, and each Lead is decoded from the
+ * mapped bytes when its element of a list is read. Every read builds a new Lead.
+ *
+ * The file is mapped in 1 GB segments; the writer never lets a record cross a segment boundary.
+ * Reads only use absolute positions, so the lists can be read from several threads.
+ */
+public class LeadSnapshotReader implements Closeable {
+  private final MappedByteBuffer[] segments;
+  private final boolean dictionary;
+  private final boolean epochNanos;
+  private final String[] values;
+  private final int survivorCount;
+  private final int logCount;
+  private final int invalidCount;
+  private final long tableStart;
+
+  private LeadSnapshotReader(MappedByteBuffer[] segments) throws IOException {
+    this.segments = segments;
+    ByteBuffer header = segments[0];
+    if (header.limit() < LeadSnapshotWriter.HEADER_BYTES || header.getLong(0) != LeadSnapshotWriter.MAGIC) {
+      throw new IOException("Not a lead snapshot file");
+    }
+    int version = header.getInt(8);
+    if (version != LeadSnapshotWriter.VERSION && version != LeadSnapshotWriter.NANOS_VERSION) {
+      throw new IOException("Unsupported lead snapshot version " + version);
+    }
+    this.epochNanos = version == LeadSnapshotWriter.NANOS_VERSION;
+    this.dictionary = (header.getInt(12) & LeadSnapshotWriter.DICTIONARY) != 0;
+    this.survivorCount = Math.toIntExact(header.getLong(16));
+    this.logCount = Math.toIntExact(header.getLong(24));
+    this.invalidCount = Math.toIntExact(header.getLong(32));
+    this.tableStart = header.getLong(40);
+    this.values = new String[header.getInt(48)];
+    long first = survivorCount + 2L * logCount + invalidCount;
+    for (int i = 0; i < values.length; i++) {
+      long at = recordOffset(first + i);
+      values[i] = string(segment(at), offset(at));
+    }
+  }
+
+  /**
+   * Maps a snapshot file.
+   * @param path the snapshot file
+   * @return a reader, close it to drop the mappings
+   * @throws IOException if the file can not be mapped or is not a snapshot
+   */
+  public static LeadSnapshotReader open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      int count = (int) ((size + LeadSnapshotWriter.SEGMENT_SIZE - 1) >>> LeadSnapshotWriter.SEGMENT_SHIFT);
+      MappedByteBuffer[] segments = new MappedByteBuffer[Math.max(1, count)];
+      for (int i = 0; i < segments.length; i++) {
+        long start = (long) i << LeadSnapshotWriter.SEGMENT_SHIFT;
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                Math.min(LeadSnapshotWriter.SEGMENT_SIZE, size - start));
+      }
+      return new LeadSnapshotReader(segments);
+    }
+  }
+
+  /**
+   * Returns the survivors, decoded when each element is read.
+   * @return a read-only list view
+   */
+  public List<Lead> getDeduped() {
+    return new AbstractList<Lead>() {
+      @Override
+      public Lead get(int index) { return lead(checkIndex(index, survivorCount)); }
+
+      @Override
+      public int size() { return survivorCount; }
+    };
+  }
+
+  /**
+   * Returns the change log, each entry decoded when it is read.
+   * @return a read-only list view
+   */
+  public List<ChangeLogEntry> getLog() {
+    return new AbstractList<ChangeLogEntry>() {
+      @Override
+      public ChangeLogEntry get(int index) {
+        long record = survivorCount + 2L * checkIndex(index, logCount);
+        return new ChangeLogEntry(lead(record), lead(record + 1));
+      }
+
+      @Override
+      public int size() { return logCount; }
+    };
+  }
+
+  /**
+   * Returns the invalid logs, each string decoded when it is read.
+   * @return a read-only list view
+   */
+  public List<String> getInvalidLogs() {
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        long at = recordOffset(survivorCount + 2L * logCount + checkIndex(index, invalidCount));
+        return string(segment(at), offset(at));
+      }
+
+      @Override
+      public int size() { return invalidCount; }
+    };
+  }
+
+  /**
+   * Returns a Result whose lists are the lazy views of this reader. The reader must stay open
+   * while the result is used.
+   * @return the saved result
+   */
+  public LeadDeduplicator.Result toResult() {
+    return new LeadDeduplicator.Result(getDeduped(), getLog(), getInvalidLogs());
+  }
+
+  /**
+   * Drops the references to the mappings, the mapped memory is released once they are
+   * garbage collected.
+   */
+  @Override
+  public void close() {
+    Arrays.fill(segments, null);
+  }
+
+  private Lead lead(long record) {
+    long at = recordOffset(record);
+    ByteBuffer segment = segment(at);
+    int p = offset(at);
+    Instant entryDate;
+    if (epochNanos) {
+      entryDate = LeadTable.toInstant(segment.getLong(p));
+      p += 8;
+    } else {
+      int nanos = segment.getInt(p + 8);
+      entryDate = nanos < 0 ? null : Instant.ofEpochSecond(segment.getLong(p), nanos);
+      p += 12;
+    }
+    String id = string(segment, p);
+    p = skip(segment, p);
+    String email = string(segment, p);
+    p = skip(segment, p);
+    String[] fields = new String[3];
+    for (int f = 0; f < 3; f++) {
+      if (dictionary) {
+        int code = segment.getInt(p);
+        fields[f] = code < 0 ? null : values[code];
+        p += 4;
+      } else {
+        fields[f] = string(segment, p);
+        p = skip(segment, p);
+      }
+    }
+    return new Lead(id, email, fields[0], fields[1], fields[2], entryDate);
+  }
+
+  private long recordOffset(long record) {
+    long at = tableStart + 8 * record;
+    return segment(at).getLong(offset(at));
+  }
+
+  private static String string(ByteBuffer segment, int p) {
+    int length = segment.getInt(p);
+    if (length < 0) return null;
+    byte[] bytes = new byte[length];
+    ByteBuffer view = segment.duplicate();
+    view.position(p + 4);
+    view.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static int skip(ByteBuffer segment, int p) {
+    return p + 4 + Math.max(0, segment.getInt(p));
+  }
+
+  private ByteBuffer segment(long at) {
+    return segments[(int) (at >>> LeadSnapshotWriter.SEGMENT_SHIFT)];
+  }
+
+  private static int offset(long at) {
+    return (int) (at & (LeadSnapshotWriter.SEGMENT_SIZE - 1));
+  }
+
+  private static int checkIndex(int index, int size) {
+    if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    return index;
+  }
+}
@@ -0,0 +1,202 @@
+package org.example;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The LeadSnapshotWriter class saves a deduped Result in a compact binary file that
+ * LeadSnapshotReader maps back without parsing any JSON.
+ *
+ * Layout, all numbers big-endian:
+ * a header of long magic, int version, int flags, long survivor count, long log count, long
+ * invalid count, long offset of the offset table and int dictionary size; then the survivor
+ * records, a source and a kept record for every log entry, the invalid log strings and the
+ * dictionary values; then the offset table, one long for each of them in that order.
+ *
+ * A lead record is the entryDate as a long of epoch seconds and an int of nanoseconds, so every
+ * Instant fits, the id and email as length-prefixed UTF-8, and firstName, lastName and address
+ * as length-prefixed UTF-8 or, with the dictionary flag, as int codes into the dictionary of
+ * distinct values. A length, code or nanosecond count of -1 stands for null. Version 1 files, which stored the
+ * entryDate as one long of epoch nanoseconds, can still be read. No record crosses a 1 GB
+ * boundary, so the reader can map the file in 1 GB segments and read every record from one of
+ * them.
+ */
+public class LeadSnapshotWriter {
+  static final long MAGIC = 0x445550534E415031L;
+  static final int VERSION = 2;
+  static final int NANOS_VERSION = 1;
+  static final int DICTIONARY = 1;
+  static final int HEADER_BYTES = 64;
+  static final int SEGMENT_SHIFT = 30;
+  static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+  private final OutputStream out;
+  private final boolean dictionary;
+  private final Map<String, Integer> codes = new HashMap<>();
+  private final LongList offsets = new LongList();
+  private ByteBuffer scratch = ByteBuffer.allocate(256);
+  private long position = HEADER_BYTES;
+
+  private LeadSnapshotWriter(OutputStream out, boolean dictionary) {
+    this.out = out;
+    this.dictionary = dictionary;
+  }
+
+  /**
+   * Writes a Result to a snapshot file, replacing the file if it exists.
+   * @param path the snapshot file
+   * @param result the result to save
+   * @param dictionary true to store firstName, lastName and address once per distinct value,
+   *                   which pays off when they repeat
+   * @throws IOException if writing fails
+   */
+  public static void write(Path path, LeadDeduplicator.Result result, boolean dictionary) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+      out.write(new byte[HEADER_BYTES]);
+      LeadSnapshotWriter writer = new LeadSnapshotWriter(out, dictionary);
+
+      List<Lead> survivors = result.getDeduped();
+      List<ChangeLogEntry> log = result.getLog();
+      List<String> invalid = result.getInvalidLogs();
+      for (Lead lead : survivors) writer.writeLead(lead);
+      for (ChangeLogEntry entry : log) {
+        writer.writeLead(entry.getSource());
+        writer.writeLead(entry.getKept());
+      }
+      for (String s : invalid) {
+        writer.begin();
+        writer.putString(s);
+        writer.offsets.add(writer.end());
+      }
+      int dictionarySize = writer.writeDictionary();
+      long tableStart = writer.writeOffsets();
+      out.flush();
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+      header.putLong(MAGIC).putInt(VERSION).putInt(dictionary ? DICTIONARY : 0)
+              .putLong(survivors.size()).putLong(log.size()).putLong(invalid.size())
+              .putLong(tableStart).putInt(dictionarySize).flip();
+      while (header.hasRemaining()) channel.write(header, header.position());
+    }
+  }
+
+  private void writeLead(Lead lead) throws IOException {
+    begin();
+    Instant entryDate = lead.getEntryDate();
+    if (entryDate == null) {
+      scratch.putLong(0).putInt(-1);
+    } else {
+      scratch.putLong(entryDate.getEpochSecond()).putInt(entryDate.getNano());
+    }
+    putString(lead.getId());
+    putString(lead.getEmail());
+    putValue(lead.getFirstName());
+    putValue(lead.getLastName());
+    putValue(lead.getAddress());
+    offsets.add(end());
+  }
+
+  /**
+   * Writes the distinct values in code order, each as length-prefixed UTF-8.
+   * @return the number of values
+   */
+  private int writeDictionary() throws IOException {
+    String[] values = new String[codes.size()];
+    codes.forEach((value, code) -> values[code] = value);
+    for (String value : values) {
+      begin();
+      putString(value);
+      offsets.add(end());
+    }
+    return values.length;
+  }
+
+  private long writeOffsets() throws IOException {
+    pad((8 - position % 8) % 8);
+    long start = position;
+    byte[] bytes = new byte[8];
+    for (int i = 0; i < offsets.size(); i++) {
+      long v = offsets.get(i);
+      for (int b = 7; b >= 0; b--) {
+        bytes[b] = (byte) v;
+        v >>>= 8;
+      }
+      out.write(bytes);
+    }
+    position += 8L * offsets.size();
+    return start;
+  }
+
+  private void putValue(String value) {
+    if (!dictionary) {
+      putString(value);
+      return;
+    }
+    if (value == null) {
+      ensure(4).putInt(-1);
+      return;
+    }
+    Integer code = codes.get(value);
+    if (code == null) {
+      code = codes.size();
+      codes.put(value, code);
+    }
+    ensure(4).putInt(code);
+  }
+
+  private void putString(String value) {
+    if (value == null) {
+      ensure(4).putInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    ensure(4 + bytes.length).putInt(bytes.length).put(bytes);
+  }
+
+  private void begin() {
+    scratch.clear();
+  }
+
+  /**
+   * Writes the record built in scratch, first padding to the next segment if it would cross one.
+   * @return the offset of the record
+   */
+  private long end() throws IOException {
+    int length = scratch.position();
+    if (length > SEGMENT_SIZE) throw new IOException("Record larger than " + SEGMENT_SIZE + " bytes");
+    long room = SEGMENT_SIZE - (position & (SEGMENT_SIZE - 1));
+    if (length > room) pad(room);
+    long offset = position;
+    out.write(scratch.array(), 0, length);
+    position += length;
+    return offset;
+  }
+
+  private void pad(long bytes) throws IOException {
+    for (long i = 0; i < bytes; i++) out.write(0);
+    position += bytes;
+  }
+
+  private ByteBuffer ensure(int bytes) {
+    if (scratch.remaining() < bytes) {
+      ByteBuffer bigger = ByteBuffer.allocate(Math.max(scratch.capacity() * 2, scratch.position() + bytes));
+      scratch.flip();
+      bigger.put(scratch);
+      scratch = bigger;
+    }
+    return scratch;
+  }
+}
@@ -0,0 +1,80 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * The LeadStreamReader class reads the "leads" array of an input file one lead at a time using
+ * Jackson's streaming parser. Only the lead currently being read is held in memory, the rest of
+ * the document is skipped token by token.
+ */
+public class LeadStreamReader {
+  private final ObjectMapper mapper;
+  private final ObjectReader leadReader;
+
+  /**
+   * Creates a reader that binds leads with the given mapper.
+   * @param mapper the mapper used to bind each lead, must have the JavaTimeModule registered
+   */
+  public LeadStreamReader(ObjectMapper mapper) {
+    this.mapper = mapper;
+    this.leadReader = mapper.readerFor(Lead.class);
+  }
+
+  /**
+   * Reads every lead in the file and passes it to the consumer in input order.
+   * @param input the JSON file in the {"leads": [...]} format
+   * @param consumer receives each lead as soon as it is parsed
+   * @return the number of leads read
+   * @throws IOException if the file can not be read or is not valid JSON
+   */
+  public long read(File input, Consumer<Lead> consumer) throws IOException {
+    try (JsonParser parser = mapper.getFactory().createParser(input)) {
+      return read(parser, consumer);
+    }
+  }
+
+  /**
+   * Reads every lead from a parser positioned before the root object.
+   * @param parser the parser to read from
+   * @param consumer receives each lead as soon as it is parsed
+   * @return the number of leads read
+   * @throws IOException if the content is not valid JSON
+   */
+  public long read(JsonParser parser, Consumer<Lead> consumer) throws IOException {
+    JsonToken root = parser.nextToken();
+    if (root == null) return 0;
+    if (root != JsonToken.START_OBJECT) {
+      throw new JsonParseException(parser, "Expected a JSON object with a \"leads\" array");
+    }
+
+    long count = 0;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.currentName();
+      JsonToken value = parser.nextToken();
+      if (!"leads".equals(field) || value == JsonToken.VALUE_NULL) {
+        parser.skipChildren();
+        continue;
+      }
+      if (value != JsonToken.START_ARRAY) {
+        throw new JsonParseException(parser, "Expected \"leads\" to be an array");
+      }
+      JsonToken token;
+      while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+        if (token == null) throw new JsonParseException(parser, "Unexpected end of \"leads\" array");
+        if (token == JsonToken.VALUE_NULL) continue;
+        Lead lead = leadReader.readValue(parser);
+        consumer.accept(lead);
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,122 @@
+package org.example;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * The LeadTable class stores leads column by column instead of as one object per lead. The
+ * "ID" and email columns hold the trimmed strings, firstName, lastName and address are
+ * dictionary encoded so repeated values are stored once, and entryDate is a long of epoch
+ * nanoseconds. The row number of a lead is its position in the input.
+ *
+ * Lead objects are only created when a row is read back with lead(row). The entryDate must lie
+ * between the years 1677 and 2262 to fit in epoch nanoseconds.
+ */
+public class LeadTable {
+  static final long NO_DATE = Long.MIN_VALUE;
+
+  private final StringDictionary firstNames = new StringDictionary();
+  private final StringDictionary lastNames = new StringDictionary();
+  private final StringDictionary addresses = new StringDictionary();
+  private String[] ids;
+  private String[] emails;
+  private int[] firstNameCodes;
+  private int[] lastNameCodes;
+  private int[] addressCodes;
+  private long[] entryNanos;
+  private int size;
+
+  public LeadTable() {
+    this(16);
+  }
+
+  /**
+   * Creates an empty table with room for the given number of rows before it has to grow.
+   * @param expectedRows expected number of leads
+   */
+  public LeadTable(int expectedRows) {
+    int capacity = Math.max(1, expectedRows);
+    ids = new String[capacity];
+    emails = new String[capacity];
+    firstNameCodes = new int[capacity];
+    lastNameCodes = new int[capacity];
+    addressCodes = new int[capacity];
+    entryNanos = new long[capacity];
+  }
+
+  /**
+   * Appends a lead as a new row. The "ID" and email are stored trimmed, the same way
+   * LeadDeduplicator normalizes them, the lead itself is not changed.
+   * @param lead the lead to add
+   * @return the row number of the lead
+   */
+  public int add(Lead lead) {
+    if (size == ids.length) grow();
+    ids[size] = lead.getId() == null ? null : lead.getId().trim();
+    emails[size] = lead.getEmail() == null ? null : lead.getEmail().trim();
+    firstNameCodes[size] = firstNames.encode(lead.getFirstName());
+    lastNameCodes[size] = lastNames.encode(lead.getLastName());
+    addressCodes[size] = addresses.encode(lead.getAddress());
+    entryNanos[size] = toNanos(lead.getEntryDate());
+    return size++;
+  }
+
+  /**
+   * Builds a Lead from a row. Every call creates a new object.
+   * @param row the row number
+   * @return a lead with the values of the row
+   */
+  public Lead lead(int row) {
+    return new Lead(ids[row], emails[row], firstNames.decode(firstNameCodes[row]),
+            lastNames.decode(lastNameCodes[row]), addresses.decode(addressCodes[row]), toInstant(entryNanos[row]));
+  }
+
+  public int size() { return size; }
+
+  /**
+   * Returns the number of distinct firstName, lastName and address values stored.
+   * @return the total size of the dictionaries
+   */
+  public int dictionarySize() {
+    return firstNames.size() + lastNames.size() + addresses.size();
+  }
+
+  String id(int row) { return ids[row]; }
+  String email(int row) { return emails[row]; }
+  long entryNanos(int row) { return entryNanos[row]; }
+
+  /**
+   * Checks if every field of a row is populated, the same rule as LeadDeduplicator.isValid.
+   * @param row the row number
+   * @return true if the row is valid
+   */
+  boolean isValid(int row) {
+    return notBlank(ids[row]) && notBlank(emails[row]) && !firstNames.isBlank(firstNameCodes[row])
+            && !lastNames.isBlank(lastNameCodes[row]) && !addresses.isBlank(addressCodes[row])
+            && entryNanos[row] != NO_DATE;
+  }
+
+  private static boolean notBlank(String s) {
+    return s != null && !s.isEmpty();
+  }
+
+  private void grow() {
+    int capacity = ids.length + (ids.length >> 1) + 1;
+    ids = Arrays.copyOf(ids, capacity);
+    emails = Arrays.copyOf(emails, capacity);
+    firstNameCodes = Arrays.copyOf(firstNameCodes, capacity);
+    lastNameCodes = Arrays.copyOf(lastNameCodes, capacity);
+    addressCodes = Arrays.copyOf(addressCodes, capacity);
+    entryNanos = Arrays.copyOf(entryNanos, capacity);
+  }
+
+  static long toNanos(Instant instant) {
+    if (instant == null) return NO_DATE;
+    return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano());
+  }
+
+  static Instant toInstant(long nanos) {
+    if (nanos == NO_DATE) return null;
+    return Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L));
+  }
+}
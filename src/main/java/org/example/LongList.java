@@ -0,0 +1,24 @@
+package org.example;
+
+import java.util.Arrays;
+
+/**
+ * The LongList class is a growable list of longs, used to keep record offsets and input
+ * positions without boxing them.
+ */
+final class LongList {
+  private long[] values = new long[16];
+  private int size;
+
+  void add(long value) {
+    if (size == values.length) values = Arrays.copyOf(values, size * 2);
+    values[size++] = value;
+  }
+
+  long get(int index) {
+    if (index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    return values[index];
+  }
+
+  int size() { return size; }
+}
@@ -1,78 +1,417 @@
 package org.example;
 
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Reads a JSON file containing the Leads, deduplicates them, logs the changes outputs the result
  * to the onsole and to the log file.
  */
 public class Main {
+  private static final String CONSOLE_SEPARATOR = "-----------------------------" + System.lineSeparator();
+  private static final String INVALID_HEADER = "\n------- INVALID LEADS --------\n";
 
   /**
    * Main method to execute the deduplication process.
+   * @param args an optional input file, directory or glob, files of a directory or glob are read
+   *             in path order and deduped as one input; a file is read as NDJSON if it ends in
+   *             .ndjson or .jsonl and as a snapshot if it ends in .snap; pass --ndjson to write
+   *             the change log as NDJSON instead of the text report and --snapshot to also save
+   *             the result as a snapshot;
+   *             --serve[=port] runs a DedupServer instead, on port 8080 by default; --metrics
+   *             publishes DedupMetrics over JMX and writes them as JSON at the end of the run;
+   *             --out=file also writes the deduped JSON to a file and --compact writes it
+   *             without pretty printing; --checkpoint[=leads] checkpoints the dedup state to
+   *             dedup_checkpoint.bin next to the input every million or given number of leads,
+   *             and --resume restores the last checkpoint there and skips the leads it covers;
+   *             --watch keeps applying the files landing in the input directory to one state
+   *             and writes the survivor delta of each file; --window=days only dedupes leads
+   *             whose entryDates are at most that many days apart, writes survivors that fall
+   *             out of the window to dedup_expired<date>.ndjson as they expire, and outputs
+   *             the survivors still in the window
    * @throws Exception if file I/O or parsing fails.
    */
   public static void main(String[] args) throws Exception {
     String filePath = "/Users/sathvikbk/Documents/PDP/Lab/DupeCheck/src/main/resources/leads.json";
-    File input = Paths.get(filePath).toFile();
+    for (String arg : args) {
+      if (!arg.startsWith("--")) filePath = arg;
+      if (arg.equals("--serve") || arg.startsWith("--serve=")) {
+        serve(arg);
+        return;
+      }
+    }
+    if (Arrays.asList(args).contains("--watch")) {
+      watch(filePath);
+      return;
+    }
+    List<Path> files = MultiFileLeadReader.resolve(filePath);
+    if (files.isEmpty()) {
+      System.err.println("No input files:" + filePath);
+      return;
+    }
+    File input = files.get(0).toFile();
 
-    if(input.length() == 0){
+    if(files.size() == 1 && input.length() == 0){
       System.err.println("Empty File:"+ filePath);
       return;
     }
 
-    ObjectMapper mapper = new ObjectMapper();
-    mapper.registerModule(new JavaTimeModule());
+    ObjectMapper mapper = createMapper();
 
-    LeadWrapper wrapper;
-    try {
-      wrapper = mapper.readValue(input, LeadWrapper.class);
-    } catch (JsonParseException e){
-      System.err.println("Bad JSON" + e.getMessage());
+    boolean resume = Arrays.asList(args).contains("--resume");
+    int checkpointEvery = resume || Arrays.asList(args).contains("--checkpoint")
+            ? IncrementalLeadDeduplicator.DEFAULT_CHECKPOINT_EVERY : 0;
+    for (String arg : args) {
+      if (arg.startsWith("--checkpoint=")) checkpointEvery = Integer.parseInt(arg.substring("--checkpoint=".length()));
+    }
+    Duration window = null;
+    for (String arg : args) {
+      if (arg.startsWith("--window=")) window = Duration.ofDays(Long.parseLong(arg.substring("--window=".length())));
+    }
+    if (window != null && checkpointEvery > 0) {
+      System.err.println("--window can not be combined with --checkpoint or --resume");
       return;
     }
+    String timeStamp = LocalDateTime.now().format(DateTimeFormatter.ISO_DATE);
+    Path checkpointPath = input.getAbsoluteFile().toPath().resolveSibling("dedup_checkpoint.bin");
+    Path expiredPath = input.getAbsoluteFile().toPath().resolveSibling("dedup_expired" + timeStamp + ".ndjson");
+    ChannelWriter expiredOut = null;
+    long[] expiredCount = {0};
+    IncrementalLeadDeduplicator dedup;
+    if (window != null) {
+      // Survivors that leave the window are final, so they are written out as they expire
+      // instead of being held until the end.
+      ChannelWriter out = expiredOut = new ChannelWriter(expiredPath);
+      ObjectWriter leadWriter = mapper.writerFor(Lead.class);
+      dedup = IncrementalLeadDeduplicator.windowed(window, lead -> {
+        try {
+          out.write(leadWriter.writeValueAsString(lead));
+          out.write('\n');
+          expiredCount[0]++;
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } else if (resume) {
+      dedup = IncrementalLeadDeduplicator.resume(checkpointPath, checkpointEvery);
+      if (dedup.getAcceptedCount() > 0) System.out.println("Resuming after lead:" + dedup.getAcceptedCount());
+    } else {
+      dedup = new IncrementalLeadDeduplicator();
+      if (checkpointEvery > 0) dedup.checkpointTo(checkpointPath, checkpointEvery);
+    }
+    long skip = dedup.getAcceptedCount();
+    Consumer<Lead> accept = skip == 0 ? dedup::accept : skipping(skip, dedup::accept);
+    DedupMetrics metrics = Arrays.asList(args).contains("--metrics") ? new DedupMetrics() : null;
+    if (metrics != null) {
+      metrics.register("main");
+      dedup.setMetrics(metrics);
+    }
 
-    List<Lead> leads = (wrapper == null) ? null : wrapper.getLeads();
-    if(leads == null || leads.isEmpty()){
-      System.out.println("No leads found");
-      return;
+    boolean ndjson = Arrays.asList(args).contains("--ndjson");
+    boolean snapshot = Arrays.asList(args).contains("--snapshot");
+    String logName = "dedup_log" + timeStamp + (ndjson ? ".ndjson" : ".txt");
+    Path logPath = input.getAbsoluteFile().toPath().resolveSibling(logName);
+    // Entries are spooled to disk as they are produced, once for the console and once for the
+    // log file, and copied out after the deduped JSON. A checkpoint or a snapshot needs the
+    // entries in memory, so those runs spool them after reading instead.
+    Path consoleLog = Files.createTempFile(logPath.getParent(), "dedup_console", ".part");
+    Path fileLog = Files.createTempFile(logPath.getParent(), "dedup_log", ".part");
+    try {
+      LeadDeduplicator.Result result;
+      try (ChangeLogSink consoleSink = new TextChangeLogSink(new ChannelWriter(consoleLog), CONSOLE_SEPARATOR);
+           ChangeLogSink fileSink = ChangeLogSink.open(fileLog, ndjson ? ChangeLogSink.Format.NDJSON : ChangeLogSink.Format.TEXT)) {
+        ChangeLogSink logSink = ChangeLogSink.tee(consoleSink, fileSink);
+        boolean streamLog = checkpointEvery == 0 && !snapshot;
+        if (streamLog) dedup.logTo(logSink);
+        long stageStart = System.nanoTime();
+        long leadCount;
+        try {
+          leadCount = files.size() == 1
+                  ? readLeads(input, mapper, accept)
+                  : new MultiFileLeadReader(mapper).read(files, accept);
+        } catch (JsonParseException e){
+          System.err.println("Bad JSON" + e.getMessage());
+          return;
+        }
+        if (checkpointEvery > 0) dedup.close();
+        if (expiredOut != null) expiredOut.close();
+
+        if(leadCount == 0){
+          System.out.println("No leads found");
+          return;
+        }
+
+        long readNanos = System.nanoTime() - stageStart;
+        stageStart = System.nanoTime();
+        result = dedup.snapshot();
+        if (metrics != null) {
+          long dedupeNanos = metrics.estimatedDedupeNanos();
+          metrics.recordStage(DedupMetrics.Stage.PARSE, readNanos - dedupeNanos);
+          metrics.recordStage(DedupMetrics.Stage.DEDUPE, dedupeNanos + System.nanoTime() - stageStart);
+        }
+        if (!streamLog) {
+          for (ChangeLogEntry entry : result.getLog()) logSink.write(entry);
+        }
+      }
+
+      long stageStart = System.nanoTime();
+      LeadJsonWriter jsonWriter = new LeadJsonWriter(mapper, !Arrays.asList(args).contains("--compact"),
+              Runtime.getRuntime().availableProcessors(), LeadJsonWriter.DEFAULT_CHUNK_SIZE);
+      System.out.println("------- DEDUPED JSON------- ");
+      jsonWriter.write(result.getDeduped(), Channels.newChannel(System.out));
+      System.out.println();
+      for (String arg : args) {
+        if (arg.startsWith("--out=")) jsonWriter.write(result.getDeduped(), Paths.get(arg.substring("--out=".length())));
+      }
+      if (metrics != null) metrics.recordStage(DedupMetrics.Stage.SERIALIZE, System.nanoTime() - stageStart);
+      System.out.println("\n------- CHANGE LOG ------- \n");
+      Files.copy(consoleLog, System.out);
+      if (!result.getInvalidLogs().isEmpty()){
+        result.getInvalidLogs().forEach(System.out::println);
+      }
+
+      stageStart = System.nanoTime();
+      if (ndjson) {
+        Files.move(fileLog, logPath, StandardCopyOption.REPLACE_EXISTING);
+      } else {
+        writeReport(logPath, jsonWriter, result.getDeduped(), fileLog, !result.getInvalidLogs().isEmpty());
+      }
+      if (snapshot) {
+        Path snapshotPath = logPath.resolveSibling("dedup_snapshot" + timeStamp + ".snap");
+        LeadSnapshotWriter.write(snapshotPath, result, true);
+        System.out.println("\nSnapshot written to:" + snapshotPath.toAbsolutePath());
+      }
+      System.out.println("\nLogs written to:"+logPath.toAbsolutePath());
+      if (expiredOut != null) {
+        System.out.println("Survivors expired from the window (" + expiredCount[0] + ") written to:" + expiredPath);
+      }
+      if (metrics != null) {
+        metrics.recordStage(DedupMetrics.Stage.WRITE, System.nanoTime() - stageStart);
+        Path metricsPath = logPath.resolveSibling("dedup_metrics" + timeStamp + ".json");
+        metrics.writeJson(metricsPath, mapper);
+        System.out.println("Metrics written to:" + metricsPath.toAbsolutePath());
+      }
+    } finally {
+      if (expiredOut != null) expiredOut.close();
+      Files.deleteIfExists(consoleLog);
+      Files.deleteIfExists(fileLog);
     }
+    if (checkpointEvery > 0) Files.deleteIfExists(checkpointPath);
+  }
 
-    LeadDeduplicator.Result result = LeadDeduplicator.deduplicate(wrapper.getLeads());
-
-    LeadWrapper outWrapper = new LeadWrapper(result.getDeduped());
-    String prettyJson = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(outWrapper);
-    System.out.println("------- DEDUPED JSON------- \n" + prettyJson);
-
-    StringBuilder logBuilder = new StringBuilder();
-    logBuilder.append("------- DEDUPED JSON ------- \n").append(prettyJson).append("");
-    logBuilder.append("\n------- CHANGE LOG ------- \n");
-    System.out.println("\n------- CHANGE LOG ------- \n");
-    result.getLog().forEach(entry -> {
-      logBuilder.append(entry).append("-------------------------");
-      System.out.print(entry + "---------------------------");
-      System.out.println(entry);
-      System.out.println("-----------------------------");
+  /**
+   * Starts a DedupServer with a request thread for every two cores and leaves it running until
+   * the JVM is stopped.
+   * @param arg --serve or --serve=port
+   * @throws IOException if the port can not be bound
+   */
+  static void serve(String arg) throws IOException {
+    int port = arg.startsWith("--serve=") ? Integer.parseInt(arg.substring("--serve=".length())) : 8080;
+    DedupServer server = DedupServer.start(new InetSocketAddress(port),
+            Math.max(2, Runtime.getRuntime().availableProcessors() * 2));
+    Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+    System.out.println("Serving POST /dedup and GET /metrics on port:" + server.getPort());
+  }
+
+  /**
+   * Starts a DropDirectoryWatcher on a directory and leaves it running until the JVM is stopped.
+   * The delta of each file is appended as one JSON line to dedup_deltas<date>.ndjson next to the
+   * directory. Change logs are turned off, the deltas take their place.
+   * @param dirPath the drop directory
+   * @throws IOException if the directory can not be watched or the delta file can not be opened
+   */
+  static void watch(String dirPath) throws IOException {
+    Path dir = Paths.get(dirPath).toAbsolutePath();
+    ObjectMapper mapper = createMapper();
+    ObjectWriter deltaWriter = mapper.writer();
+    Path deltaPath = dir.resolveSibling("dedup_deltas" + LocalDateTime.now().format(DateTimeFormatter.ISO_DATE) + ".ndjson");
+    OutputStream out = new BufferedOutputStream(Files.newOutputStream(deltaPath, StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND));
+    IncrementalLeadDeduplicator dedup = new IncrementalLeadDeduplicator();
+    dedup.setLogSampling(0);
+    DropDirectoryWatcher watcher = DropDirectoryWatcher.start(dir, mapper, dedup,
+            Runtime.getRuntime().availableProcessors(), delta -> {
+      try {
+        out.write(deltaWriter.writeValueAsBytes(delta.toMap()));
+        out.write('\n');
+        out.flush();
+      } catch (IOException e) {
+        System.err.println("Could not write delta of " + delta.getFile() + ": " + e.getMessage());
+      }
+      System.out.println(delta.getFile().getFileName() + ": " + delta.getLeads() + " leads, +" + delta.getAdded().size()
+              + " -" + delta.getRemoved().size() + " survivors, " + delta.getSurvivors() + " total, "
+              + delta.getLatencyNanos() / 1_000_000 + " ms" + (delta.getError() == null ? "" : ", error: " + delta.getError()));
     });
-    if (!result.getInvalidLogs().isEmpty()){
-      logBuilder.append("\n------- INVALID LEADS --------\n");
-      result.getInvalidLogs().forEach(System.out::println);
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        watcher.close();
+        out.close();
+      } catch (IOException e) {
+        System.err.println("Could not stop watching: " + e.getMessage());
+      }
+    }));
+    System.out.println("Watching:" + dir + ", deltas written to:" + deltaPath);
+  }
+
+  /**
+   * Reads the leads of an input file in input order, picking the reader by file extension:
+   * .ndjson and .jsonl files with NdjsonLeadReader, .snap files are the survivors of a snapshot
+   * written by an earlier run, anything else is a {"leads": [...]} document.
+   * @param input the input file
+   * @param mapper the mapper from createMapper
+   * @param consumer receives each lead
+   * @return the number of leads read
+   * @throws IOException if the file can not be read or parsed
+   */
+  static long readLeads(File input, ObjectMapper mapper, Consumer<Lead> consumer) throws IOException {
+    return readLeads(input, mapper, Runtime.getRuntime().availableProcessors(), consumer);
+  }
+
+  /**
+   * Reads the leads of an input file like readLeads(File, ObjectMapper, Consumer), parsing
+   * NDJSON on the given number of threads.
+   * @param input the input file
+   * @param mapper the mapper from createMapper
+   * @param parallelism threads used to parse NDJSON chunks
+   * @param consumer receives each lead
+   * @return the number of leads read
+   * @throws IOException if the file can not be read or parsed
+   */
+  static long readLeads(File input, ObjectMapper mapper, int parallelism, Consumer<Lead> consumer) throws IOException {
+    if (isNdjson(input)) {
+      return new NdjsonLeadReader(mapper, parallelism, NdjsonLeadReader.DEFAULT_CHUNK_SIZE).read(input.toPath(), consumer);
     }
-    String timeStamp = LocalDateTime.now().format(DateTimeFormatter.ISO_DATE);
-    Path logPath = input.getParent() == null ? input.toPath().resolve("dedup_log" + timeStamp + ".txt"):
-            input.getParentFile().toPath().resolve("dedup_log" + timeStamp + ".txt");
-    Files.writeString(logPath, logBuilder.toString(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-    System.out.println("\nLogs written to:"+logPath.toAbsolutePath());
+    if (input.getName().toLowerCase().endsWith(".snap")) {
+      try (LeadSnapshotReader snapshot = LeadSnapshotReader.open(input.toPath())) {
+        List<Lead> leads = snapshot.getDeduped();
+        leads.forEach(consumer);
+        return leads.size();
+      }
+    }
+    return new LeadStreamReader(mapper).read(input, consumer);
+  }
+
+  /**
+   * Wraps a consumer so that the first leads are dropped, used to skip the part of the input a
+   * resumed run has already deduped.
+   * @param count number of leads to drop
+   * @param consumer receives every later lead
+   * @return the skipping consumer
+   */
+  static Consumer<Lead> skipping(long count, Consumer<Lead> consumer) {
+    long[] seen = {0};
+    return lead -> {
+      if (seen[0]++ >= count) consumer.accept(lead);
+    };
+  }
+
+  /**
+   * Checks if a file holds one lead per line rather than a {"leads": [...]} document.
+   * @param input the input file
+   * @return true for .ndjson and .jsonl files
+   */
+  static boolean isNdjson(File input) {
+    String name = input.getName().toLowerCase();
+    return name.endsWith(".ndjson") || name.endsWith(".jsonl");
+  }
+
+  /**
+   * Writes the text log file: the deduped JSON followed by the change log. The JSON is written
+   * by a LeadJsonWriter straight to the file channel, and entries are then written one at a time
+   * through a ChannelWriter on the same channel, so the report is never built in memory.
+   * @param logPath the log file
+   * @param jsonWriter writes the deduped JSON
+   * @param result the result whose survivors and change log are written
+   * @throws IOException if writing fails
+   */
+  static void writeReport(Path logPath, LeadJsonWriter jsonWriter, LeadDeduplicator.Result result) throws IOException {
+    ChannelWriter out = new ChannelWriter(openReport(logPath, jsonWriter, result.getDeduped()),
+            ChannelWriter.DEFAULT_BUFFER_SIZE);
+    try (ChangeLogSink sink = new TextChangeLogSink(out)) {
+      for (ChangeLogEntry entry : result.getLog()) sink.write(entry);
+      if (!result.getInvalidLogs().isEmpty()) out.write(INVALID_HEADER);
+    }
+  }
+
+  /**
+   * Writes the text log file from a change log already written by a text ChangeLogSink: the
+   * deduped JSON followed by the bytes of that file, copied by the channels without decoding.
+   * @param logPath the log file
+   * @param jsonWriter writes the deduped JSON
+   * @param deduped the survivors
+   * @param changeLog a file holding the change log in the text format
+   * @param invalid true to end with the invalid leads header
+   * @throws IOException if reading or writing fails
+   */
+  static void writeReport(Path logPath, LeadJsonWriter jsonWriter, List<Lead> deduped, Path changeLog,
+                          boolean invalid) throws IOException {
+    try (FileChannel channel = openReport(logPath, jsonWriter, deduped);
+         FileChannel log = FileChannel.open(changeLog, StandardOpenOption.READ)) {
+      for (long copied = 0, size = log.size(); copied < size; ) copied += log.transferTo(copied, size - copied, channel);
+      if (invalid) channel.write(ByteBuffer.wrap(INVALID_HEADER.getBytes(StandardCharsets.UTF_8)));
+    }
+  }
+
+  /**
+   * Creates or truncates the log file and writes everything before the change log entries.
+   */
+  private static FileChannel openReport(Path logPath, LeadJsonWriter jsonWriter, List<Lead> deduped) throws IOException {
+    FileChannel channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+    try {
+      channel.write(ByteBuffer.wrap("------- DEDUPED JSON ------- \n".getBytes(StandardCharsets.UTF_8)));
+      jsonWriter.write(deduped, channel);
+      channel.write(ByteBuffer.wrap("\n------- CHANGE LOG ------- \n".getBytes(StandardCharsets.UTF_8)));
+      return channel;
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Creates the mapper used to read and write leads, with support for Instant.
+   * @return a configured ObjectMapper
+   */
+  static ObjectMapper createMapper() {
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.registerModule(new JavaTimeModule());
+    return mapper;
+  }
+
+  /**
+   * Renders the deduped leads in the {"leads": [...]} format.
+   * @param mapper the mapper from createMapper
+   * @param leads the leads to render
+   * @return the pretty printed JSON
+   * @throws JsonProcessingException if a lead can not be serialized
+   */
+  static String toPrettyJson(ObjectMapper mapper, List<Lead> leads) throws JsonProcessingException {
+    return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(new LeadWrapper(leads));
   }
-}
\ No newline at end of file
+}
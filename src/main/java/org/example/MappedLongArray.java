@@ -0,0 +1,62 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The MappedLongArray class is a growable array of longs backed by a memory-mapped temp file,
+ * so large per-lead arrays live in the page cache instead of the heap. Unwritten entries read
+ * as zero. The file is deleted when the array is closed.
+ */
+class MappedLongArray implements Closeable {
+  private static final int SEGMENT_SHIFT = 20;
+  private static final long SEGMENT_LONGS = 1L << SEGMENT_SHIFT;
+
+  private final Path file;
+  private final FileChannel channel;
+  private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+  /**
+   * Creates an empty array backed by a new file.
+   * @param file the backing file, replaced if it exists
+   * @throws IOException if the file can not be created
+   */
+  MappedLongArray(Path file) throws IOException {
+    this.file = file;
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+  }
+
+  long get(long index) {
+    int segment = (int) (index >>> SEGMENT_SHIFT);
+    if (segment >= segments.length) return 0;
+    return segments[segment].getLong((int) (index & (SEGMENT_LONGS - 1)) << 3);
+  }
+
+  void set(long index, long value) throws IOException {
+    int segment = (int) (index >>> SEGMENT_SHIFT);
+    if (segment >= segments.length) grow(segment + 1);
+    segments[segment].putLong((int) (index & (SEGMENT_LONGS - 1)) << 3, value);
+  }
+
+  @Override
+  public void close() throws IOException {
+    segments = new MappedByteBuffer[0];
+    channel.close();
+    Files.deleteIfExists(file);
+  }
+
+  private void grow(int count) throws IOException {
+    int from = segments.length;
+    segments = Arrays.copyOf(segments, count);
+    for (int i = from; i < count; i++) {
+      segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, (i * SEGMENT_LONGS) << 3, SEGMENT_LONGS << 3);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package org.example;
+
+import java.util.List;
+
+/**
+ * The MemoryDedupState class keeps the survivors in a SurvivorTable and indexes them with
+ * KeyIndex tables from "ID" and "email" to slot numbers. Lookups and updates do not allocate.
+ * An optional KeyFilter in front of both indexes answers lookups for never seen keys without
+ * probing them.
+ */
+class MemoryDedupState implements DedupState {
+  private final SurvivorTable survivors;
+  private final KeyIndex idMap;
+  private final KeyIndex emailMap;
+  private final KeyFilter filter;
+  private long position;
+
+  /**
+   * Creates an empty state sized for the expected number of leads.
+   * @param expectedLeads expected number of leads
+   */
+  MemoryDedupState(int expectedLeads) {
+    this(expectedLeads, false);
+  }
+
+  /**
+   * Creates an empty state sized for the expected number of leads.
+   * @param expectedLeads expected number of leads, also used to size the filter
+   * @param keyFilter true to check a Bloom filter before probing the indexes
+   */
+  MemoryDedupState(int expectedLeads, boolean keyFilter) {
+    this.filter = keyFilter ? new KeyFilter(2L * expectedLeads) : null;
+    this.survivors = new SurvivorTable(expectedLeads);
+    this.idMap = new KeyIndex(expectedLeads) {
+      @Override
+      protected boolean matches(int slot, String id) {
+        return survivors.get(slot).getId().equals(id);
+      }
+    };
+    this.emailMap = new KeyIndex(expectedLeads) {
+      @Override
+      protected boolean matches(int slot, String email) {
+        return KeyHash.sameEmail(survivors.get(slot).getEmail(), email);
+      }
+    };
+  }
+
+  @Override
+  public long findId(String id, long hash) {
+    return find(idMap, hash, id);
+  }
+
+  @Override
+  public long findEmail(String email, long hash) {
+    return find(emailMap, hash, email);
+  }
+
+  private long find(KeyIndex index, long hash, String key) {
+    if (filter == null) return index.find(hash, key);
+    if (!filter.mightContain(hash)) return NONE;
+    int slot = index.find(hash, key);
+    if (slot == KeyIndex.NONE) filter.falsePositive();
+    return slot;
+  }
+
+  @Override
+  public Lead lead(long handle) { return survivors.get((int) handle); }
+
+  @Override
+  public long position(long handle) { return survivors.position((int) handle); }
+
+  @Override
+  public long add(Lead lead, long position) { return survivors.add(lead, position); }
+
+  @Override
+  public void tombstone(long handle) { survivors.tombstone((int) handle); }
+
+  @Override
+  public void putId(String id, long hash, long handle) { put(idMap, hash, id, (int) handle); }
+
+  @Override
+  public void putEmail(String email, long hash, long handle) { put(emailMap, hash, email, (int) handle); }
+
+  private void put(KeyIndex index, long hash, String key, int slot) {
+    if (filter != null) filter.add(hash);
+    index.put(hash, key, slot);
+  }
+
+  @Override
+  public void removeEmail(String email, long hash) { emailMap.remove(hash, email); }
+
+  @Override
+  public long nextPosition() { return position++; }
+
+  @Override
+  public long acceptedCount() { return position; }
+
+  /**
+   * Sets the input position of the next lead, used when the state is restored from a checkpoint.
+   * @param next the position of the next lead
+   */
+  void setPosition(long next) { position = next; }
+
+  @Override
+  public int liveCount() { return survivors.liveCount(); }
+
+  @Override
+  public List<Lead> survivors() { return survivors.toList(); }
+
+  long[] livePositions() { return survivors.livePositions(); }
+
+  /**
+   * Returns the counters of the key filter.
+   * @return the counters, or null if the state has no filter
+   */
+  KeyFilterStats filterStats() { return filter == null ? null : filter.stats(); }
+}
@@ -0,0 +1,140 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The MultiFileLeadReader class reads many input files as if they were one: a directory of
+ * partition files or a glob such as "exports/2024-05-07/*.ndjson". Files are parsed concurrently
+ * on a bounded pool, but leads are handed to the consumer on the calling thread ordered by
+ * (file order, record index), with files sorted by path. Feeding them to one deduplicator gives
+ * the same result on every run, however the parsing threads are scheduled.
+ *
+ * At most parallelism + 1 files are parsed or waiting to be delivered at a time, so memory is
+ * bounded by the largest files rather than by the whole input.
+ */
+public class MultiFileLeadReader {
+  private final ObjectMapper mapper;
+  private final int parallelism;
+
+  /**
+   * Creates a reader using every core.
+   * @param mapper the mapper from Main.createMapper
+   */
+  public MultiFileLeadReader(ObjectMapper mapper) {
+    this(mapper, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a reader.
+   * @param mapper the mapper from Main.createMapper
+   * @param parallelism number of files parsed at the same time
+   */
+  public MultiFileLeadReader(ObjectMapper mapper, int parallelism) {
+    if (parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1");
+    this.mapper = mapper;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Lists the input files a path stands for, sorted by path. A directory stands for the .json,
+   * .ndjson and .jsonl files directly in it; a path that does not exist with *, ?, [ or { in its
+   * file name is a glob matched against the files of its parent directory; any other path is a
+   * single file.
+   * @param pathOrGlob a file, directory or glob
+   * @return the files in the order they are read
+   * @throws IOException if the directory can not be listed
+   */
+  public static List<Path> resolve(String pathOrGlob) throws IOException {
+    int slash = Math.max(pathOrGlob.lastIndexOf('/'), pathOrGlob.lastIndexOf('\\'));
+    String name = pathOrGlob.substring(slash + 1);
+    if (name.matches(".*[*?\\[{].*") && !exists(pathOrGlob)) {
+      Path dir = slash < 0 ? Paths.get(".") : Paths.get(pathOrGlob.substring(0, slash + 1));
+      PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + name);
+      return list(dir, file -> matcher.matches(file.getFileName()));
+    }
+    Path path = Paths.get(pathOrGlob);
+    if (Files.isDirectory(path)) {
+      return inputFiles(path);
+    }
+    List<Path> single = new ArrayList<>();
+    single.add(path);
+    return single;
+  }
+
+  /**
+   * Lists the .json, .ndjson and .jsonl files directly in a directory, sorted by path.
+   * @param dir the directory
+   * @return the input files in it
+   * @throws IOException if the directory can not be listed
+   */
+  static List<Path> inputFiles(Path dir) throws IOException {
+    return list(dir, MultiFileLeadReader::isInputFile);
+  }
+
+  private static boolean exists(String path) {
+    try {
+      return Files.exists(Paths.get(path));
+    } catch (InvalidPathException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Checks if a file in a directory is read as input: .json, .ndjson and .jsonl files are.
+   * @param file the file
+   * @return true if the file name has an input extension
+   */
+  static boolean isInputFile(Path file) {
+    String n = file.getFileName().toString().toLowerCase();
+    return n.endsWith(".json") || n.endsWith(".ndjson") || n.endsWith(".jsonl");
+  }
+
+  private static List<Path> list(Path dir, Predicate<Path> filter) throws IOException {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.filter(Files::isRegularFile).filter(filter).sorted().collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Reads every lead of every file and passes them to the consumer ordered by file, then by
+   * position within the file. Each file is read the way Main.readLeads picks by its extension.
+   * @param files the files, in the order their leads should come out
+   * @param consumer receives each lead, on the calling thread
+   * @return the number of leads read
+   * @throws IOException if a file can not be read or parsed
+   */
+  public long read(List<Path> files, Consumer<Lead> consumer) throws IOException {
+    long count = 0;
+    try (OrderedTasks<List<Lead>> parsed = new OrderedTasks<>("lead-file-parser", parallelism, "reading leads")) {
+      for (Path file : files) {
+        parsed.submit(() -> {
+          List<Lead> leads = new ArrayList<>();
+          Main.readLeads(file.toFile(), mapper, 1, leads::add);
+          return leads;
+        });
+        if (parsed.isFull()) count += deliver(parsed.next(), consumer);
+      }
+      while (!parsed.isEmpty()) count += deliver(parsed.next(), consumer);
+      return count;
+    }
+  }
+
+  private static long deliver(List<Lead> leads, Consumer<Lead> consumer) {
+    leads.forEach(consumer);
+    return leads.size();
+  }
+}
@@ -0,0 +1,54 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * The NdjsonChangeLogSink class writes each entry as one line of JSON:
+ * {"discarded": {...}, "kept": {...}, "changes": {"email": [old, new], ...}}.
+ * Leads are written the same way as in the deduped JSON.
+ */
+class NdjsonChangeLogSink implements ChangeLogSink {
+  private final JsonGenerator generator;
+  private final ObjectWriter writer;
+
+  /**
+   * Creates a sink over a writer, which is closed with the sink.
+   * @param out where entries are written
+   * @param mapper the mapper from Main.createMapper
+   * @throws IOException if the generator can not be created
+   */
+  NdjsonChangeLogSink(Writer out, ObjectMapper mapper) throws IOException {
+    this.generator = mapper.getFactory().createGenerator(out);
+    this.generator.setRootValueSeparator(null);
+    this.writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+  }
+
+  @Override
+  public void write(ChangeLogEntry entry) throws IOException {
+    generator.writeStartObject();
+    generator.writeFieldName("discarded");
+    writer.writeValue(generator, entry.getSource());
+    generator.writeFieldName("kept");
+    writer.writeValue(generator, entry.getKept());
+    generator.writeObjectFieldStart("changes");
+    for (Map.Entry<String, Object[]> change : entry.getFieldChanges().entrySet()) {
+      generator.writeFieldName(change.getKey());
+      writer.writeValue(generator, change.getValue());
+    }
+    generator.writeEndObject();
+    generator.writeEndObject();
+    generator.writeRaw('\n');
+  }
+
+  @Override
+  public void close() throws IOException {
+    generator.close();
+  }
+}
@@ -0,0 +1,118 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The NdjsonLeadReader class reads newline-delimited JSON, one lead object per line. The file
+ * is memory-mapped in chunks with FileChannel.map, each chunk ending at a newline, and Jackson
+ * parses each chunk straight from the mapped bytes, so lines are never copied into strings.
+ *
+ * Chunks are parsed in parallel, but leads are handed to the consumer on the calling thread in
+ * file order, so input positions, and the isCurrentPreferred tie-break that depends on them, are
+ * the same as reading the file sequentially. At most parallelism + 1 chunks are mapped or parsed
+ * at a time.
+ */
+public class NdjsonLeadReader {
+  public static final int DEFAULT_CHUNK_SIZE = 32 << 20;
+
+  private final ObjectReader leadReader;
+  private final int parallelism;
+  private final int chunkSize;
+
+  /**
+   * Creates a reader using every core and the default chunk size.
+   * @param mapper the mapper used to bind each lead, must have the JavaTimeModule registered
+   */
+  public NdjsonLeadReader(ObjectMapper mapper) {
+    this(mapper, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Creates a reader.
+   * @param mapper the mapper used to bind each lead, must have the JavaTimeModule registered
+   * @param parallelism number of chunks parsed at the same time
+   * @param chunkSize bytes mapped per chunk; a chunk grows if a single line is longer
+   */
+  public NdjsonLeadReader(ObjectMapper mapper, int parallelism, int chunkSize) {
+    if (parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1");
+    if (chunkSize < 1) throw new IllegalArgumentException("chunkSize must be positive");
+    this.leadReader = mapper.readerFor(Lead.class);
+    this.parallelism = parallelism;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * Reads every lead in the file and passes it to the consumer in file order. Blank lines and
+   * null values are skipped.
+   * @param input the NDJSON file
+   * @param consumer receives each lead, on the calling thread
+   * @return the number of leads read
+   * @throws IOException if the file can not be read or a line is not valid JSON
+   */
+  public long read(Path input, Consumer<Lead> consumer) throws IOException {
+    long count = 0;
+    try (OrderedTasks<List<Lead>> parsed = new OrderedTasks<>("ndjson-parser", parallelism, "reading leads");
+         FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+      long size = channel.size();
+      long start = 0;
+      while (start < size) {
+        MappedByteBuffer chunk = nextChunk(channel, start, size);
+        start += chunk.limit();
+        parsed.submit(() -> parse(chunk));
+        if (parsed.isFull()) count += deliver(parsed.next(), consumer);
+      }
+      while (!parsed.isEmpty()) count += deliver(parsed.next(), consumer);
+      return count;
+    }
+  }
+
+  /**
+   * Maps the next chunk, cut after the last newline in it. The mapping is doubled until it holds
+   * a newline or reaches the end of the file.
+   */
+  private MappedByteBuffer nextChunk(FileChannel channel, long start, long size) throws IOException {
+    long length = Math.min(chunkSize, size - start);
+    while (true) {
+      MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+      if (start + length == size) return chunk;
+      for (int i = (int) length - 1; i >= 0; i--) {
+        if (chunk.get(i) == '\n') {
+          chunk.limit(i + 1);
+          return chunk;
+        }
+      }
+      if (length >= Integer.MAX_VALUE) throw new IOException("Line longer than 2 GB at offset " + start);
+      length = Math.min(Math.min(length * 2, Integer.MAX_VALUE), size - start);
+    }
+  }
+
+  private List<Lead> parse(MappedByteBuffer chunk) throws IOException {
+    List<Lead> leads = new ArrayList<>();
+    try (JsonParser parser = leadReader.getFactory().createParser(new ByteBufferBackedInputStream(chunk));
+         MappingIterator<Lead> values = leadReader.readValues(parser)) {
+      while (values.hasNextValue()) {
+        Lead lead = values.nextValue();
+        if (lead != null) leads.add(lead);
+      }
+    }
+    return leads;
+  }
+
+  private static long deliver(List<Lead> leads, Consumer<Lead> consumer) {
+    leads.forEach(consumer);
+    return leads.size();
+  }
+}
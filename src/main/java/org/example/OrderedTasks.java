@@ -0,0 +1,83 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The OrderedTasks class runs tasks on a fixed pool of daemon threads and hands their results
+ * back in submission order. The caller takes the oldest result once parallelism + 1 tasks are in
+ * flight, so at most that many results are held at once however many tasks are submitted.
+ * Closing it cancels the tasks still in flight.
+ */
+final class OrderedTasks<T> implements Closeable {
+  private final ExecutorService pool;
+  private final int parallelism;
+  private final String action;
+  private final Deque<Future<T>> inFlight = new ArrayDeque<>();
+
+  /**
+   * Starts the pool.
+   * @param threadName name of the pool threads
+   * @param parallelism number of tasks run at the same time
+   * @param action what the tasks do, for the message of an interrupt, e.g. "reading leads"
+   */
+  OrderedTasks(String threadName, int parallelism, String action) {
+    this.pool = Executors.newFixedThreadPool(parallelism, r -> {
+      Thread t = new Thread(r, threadName);
+      t.setDaemon(true);
+      return t;
+    });
+    this.parallelism = parallelism;
+    this.action = action;
+  }
+
+  void submit(Callable<T> task) {
+    inFlight.add(pool.submit(task));
+  }
+
+  /**
+   * Checks if more than parallelism tasks are in flight, so the oldest result should be taken
+   * before the next task is submitted.
+   */
+  boolean isFull() { return inFlight.size() > parallelism; }
+
+  boolean isEmpty() { return inFlight.isEmpty(); }
+
+  /**
+   * Checks if the oldest task in flight has finished, so next would not wait.
+   */
+  boolean isNextDone() { return !inFlight.isEmpty() && inFlight.peek().isDone(); }
+
+  /**
+   * Waits for the oldest task in flight and returns its result.
+   * @return the result
+   * @throws IOException if the task threw one, or the wait was interrupted
+   */
+  T next() throws IOException {
+    try {
+      return inFlight.poll().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while " + action);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+      throw new IOException(e.getCause());
+    }
+  }
+
+  @Override
+  public void close() {
+    for (Future<T> future : inFlight) future.cancel(true);
+    inFlight.clear();
+    pool.shutdown();
+  }
+}
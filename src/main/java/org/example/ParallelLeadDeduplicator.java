@@ -0,0 +1,200 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiPredicate;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * The ParallelLeadDeduplicator class dedupes a list of leads on several cores and gives exactly
+ * the same Result as LeadDeduplicator.deduplicate.
+ *
+ * Two leads can only affect each other if they are linked by a chain of shared "ID"s or emails,
+ * so the sequential algorithm runs independently on each linked group. The leads are sharded by
+ * id hash and by email hash to find, in parallel, the first lead with each key. A union-find over
+ * those links reconciles leads that match one shard by id and another by email into groups. Each
+ * group is then sent to one shard, the shards are deduped in input order on a ForkJoinPool, and
+ * the survivors and logs are merged back by input position, which is the order the sequential
+ * algorithm produces them in.
+ */
+public class ParallelLeadDeduplicator {
+  public static final int DEFAULT_SEQUENTIAL_THRESHOLD = 50_000;
+
+  private final int parallelism;
+  private final int sequentialThreshold;
+
+  public ParallelLeadDeduplicator() {
+    this(Runtime.getRuntime().availableProcessors(), DEFAULT_SEQUENTIAL_THRESHOLD);
+  }
+
+  /**
+   * Creates a parallel deduplicator.
+   * @param parallelism number of worker threads to use
+   * @param sequentialThreshold inputs smaller than this are deduped on the calling thread
+   */
+  public ParallelLeadDeduplicator(int parallelism, int sequentialThreshold) {
+    if (parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1");
+    this.parallelism = parallelism;
+    this.sequentialThreshold = sequentialThreshold;
+  }
+
+  /**
+   * Dedpues a list of leads based on "ID" and "email".
+   * @param leads list of leads to dedupe
+   * @return a Result containing the duplicated leads, logs and invalid leads.
+   */
+  public LeadDeduplicator.Result deduplicate(List<Lead> leads) {
+    if (parallelism == 1 || leads.size() < sequentialThreshold) {
+      return LeadDeduplicator.deduplicate(leads);
+    }
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      return pool.submit(() -> run(leads.toArray(new Lead[0]))).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while deduplicating", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private LeadDeduplicator.Result run(Lead[] leads) {
+    int n = leads.length;
+    int shards = parallelism * 4;
+    boolean[] valid = new boolean[n];
+    long[] idHashes = new long[n];
+    long[] emailHashes = new long[n];
+    int[] idShard = new int[n];
+    int[] emailShard = new int[n];
+
+    IntStream.range(0, n).parallel().forEach(i -> {
+      Lead lead = leads[i];
+      valid[i] = LeadDeduplicator.prepare(lead);
+      if (!valid[i]) {
+        idShard[i] = -1;
+        emailShard[i] = -1;
+        return;
+      }
+      idHashes[i] = lead.idHash();
+      emailHashes[i] = lead.emailHash();
+      idShard[i] = shardOf(idHashes[i], shards);
+      emailShard[i] = shardOf(emailHashes[i], shards);
+    });
+
+    int[] idLink = firstWithSameKey(bucket(idShard, shards), shards, idHashes, i -> leads[i].getId(),
+            String::equals);
+    int[] emailLink = firstWithSameKey(bucket(emailShard, shards), shards, emailHashes, i -> leads[i].getEmail(),
+            KeyHash::sameEmail);
+
+    UnionFind groupsOf = new UnionFind(n);
+    for (int i = 0; i < n; i++) {
+      if (!valid[i]) continue;
+      groupsOf.union(i, idLink[i]);
+      groupsOf.union(i, emailLink[i]);
+    }
+    int[] groupShard = new int[n];
+    for (int i = 0; i < n; i++) {
+      groupShard[i] = valid[i] ? shardOf(KeyHash.mix(groupsOf.find(i)), shards) : -1;
+    }
+
+    Buckets groups = bucket(groupShard, shards);
+    boolean[] survives = new boolean[n];
+    ChangeLogEntry[] logAt = new ChangeLogEntry[n];
+    IntStream.range(0, shards).parallel().forEach(s -> {
+      int from = groups.start[s];
+      int to = groups.start[s + 1];
+      MemoryDedupState state = new MemoryDedupState(to - from);
+      IncrementalLeadDeduplicator dedup = new IncrementalLeadDeduplicator(state);
+      int[] logPositions = new int[to - from];
+      int logCount = 0;
+      for (int k = from; k < to; k++) {
+        int i = groups.order[k];
+        IncrementalLeadDeduplicator.Outcome outcome = dedup.accept(leads[i], i);
+        if (outcome == IncrementalLeadDeduplicator.Outcome.REPLACED
+                || outcome == IncrementalLeadDeduplicator.Outcome.DISCARDED) {
+          logPositions[logCount++] = i;
+        }
+      }
+      List<ChangeLogEntry> shardLogs = dedup.snapshot().getLog();
+      for (int k = 0; k < logCount; k++) logAt[logPositions[k]] = shardLogs.get(k);
+      for (long position : state.livePositions()) survives[(int) position] = true;
+    });
+
+    List<Lead> survivors = new ArrayList<>();
+    List<ChangeLogEntry> logs = new ArrayList<>();
+    List<String> invalidLogs = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      if (!valid[i]) invalidLogs.add("Removed record due to Null or empty field/fields" + leads[i]);
+      if (logAt[i] != null) logs.add(logAt[i]);
+      if (survives[i]) survivors.add(leads[i]);
+    }
+    return new LeadDeduplicator.Result(survivors, logs, invalidLogs);
+  }
+
+  /**
+   * For every lead, finds the first lead in input order with the same key. Each shard holds
+   * all leads whose key hashes to it, so the shards are independent.
+   * @return for each lead the position of the first lead sharing its key
+   */
+  private static int[] firstWithSameKey(Buckets buckets, int shards, long[] hashes, IntFunction<String> key,
+                                        BiPredicate<String, String> sameKey) {
+    int[] link = new int[buckets.size];
+    IntStream.range(0, shards).parallel().forEach(s -> {
+      KeyIndex first = new KeyIndex(buckets.start[s + 1] - buckets.start[s]) {
+        @Override
+        protected boolean matches(int i, String k) {
+          return sameKey.test(key.apply(i), k);
+        }
+      };
+      for (int k = buckets.start[s]; k < buckets.start[s + 1]; k++) {
+        int i = buckets.order[k];
+        String value = key.apply(i);
+        int prev = first.find(hashes[i], value);
+        if (prev == KeyIndex.NONE) {
+          first.put(hashes[i], value, i);
+          link[i] = i;
+        } else {
+          link[i] = prev;
+        }
+      }
+    });
+    return link;
+  }
+
+  /**
+   * Stable counting sort of lead positions by shard. Leads with shard -1 are left out.
+   */
+  private static Buckets bucket(int[] shardOf, int shards) {
+    int[] start = new int[shards + 1];
+    for (int s : shardOf) if (s >= 0) start[s + 1]++;
+    for (int s = 0; s < shards; s++) start[s + 1] += start[s];
+    int[] order = new int[start[shards]];
+    int[] next = start.clone();
+    for (int i = 0; i < shardOf.length; i++) {
+      if (shardOf[i] >= 0) order[next[shardOf[i]]++] = i;
+    }
+    return new Buckets(order, start, shardOf.length);
+  }
+
+  private static int shardOf(long hash, int shards) {
+    return (int) Math.floorMod(hash, (long) shards);
+  }
+
+  private static final class Buckets {
+    final int[] order;
+    final int[] start;
+    final int size;
+
+    Buckets(int[] order, int[] start, int size) {
+      this.order = order;
+      this.start = start;
+      this.size = size;
+    }
+  }
+}
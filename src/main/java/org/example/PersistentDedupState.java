@@ -0,0 +1,157 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The PersistentDedupState class keeps the survivors in a LeadDataFile and indexes them with a
+ * LeadIndexFile, so the state outlives the process. Opening an existing directory maps the index
+ * and reads nothing else; survivors are read from the data file only when they are looked up.
+ */
+class PersistentDedupState implements DedupState {
+  static final String INDEX_FILE = "leads.idx";
+  static final String DATA_FILE = "leads.dat";
+
+  private final LeadIndexFile index;
+  private final LeadDataFile data;
+  private long cachedOffset = NONE;
+  private Lead cachedLead;
+
+  /**
+   * Opens the state stored in a directory, creating it if it does not exist.
+   * @param dir the directory holding the index and data files
+   * @throws IOException if the files can not be opened
+   */
+  PersistentDedupState(Path dir) throws IOException {
+    Files.createDirectories(dir);
+    this.index = new LeadIndexFile(dir.resolve(INDEX_FILE));
+    try {
+      this.data = new LeadDataFile(dir.resolve(DATA_FILE), index.dataEnd());
+    } catch (IOException e) {
+      index.close();
+      throw e;
+    }
+    if (index.isNew()) index.setDataEnd(data.end());
+  }
+
+  @Override
+  public long findId(String id, long hash) {
+    return index.find(hash, offset -> id.equals(lead(offset).getId()));
+  }
+
+  @Override
+  public long findEmail(String email, long hash) {
+    return index.find(hash, offset -> sameEmail(offset, email));
+  }
+
+  @Override
+  public Lead lead(long handle) {
+    if (handle != cachedOffset) {
+      try {
+        cachedLead = data.read(handle);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      cachedOffset = handle;
+    }
+    return cachedLead;
+  }
+
+  @Override
+  public long position(long handle) {
+    try {
+      return data.position(handle);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public long add(Lead lead, long position) {
+    try {
+      long offset = data.append(lead, position);
+      index.setDataEnd(data.end());
+      index.setLiveCount(index.liveCount() + 1);
+      return offset;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void tombstone(long handle) {
+    try {
+      if (data.tombstone(handle)) index.setLiveCount(index.liveCount() - 1);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void putId(String id, long hash, long handle) {
+    try {
+      index.put(hash, handle, offset -> id.equals(lead(offset).getId()));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void putEmail(String email, long hash, long handle) {
+    try {
+      index.put(hash, handle, offset -> sameEmail(offset, email));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void removeEmail(String email, long hash) {
+    index.remove(hash, offset -> sameEmail(offset, email));
+  }
+
+  @Override
+  public long nextPosition() {
+    long position = index.nextPosition();
+    index.setNextPosition(position + 1);
+    return position;
+  }
+
+  @Override
+  public long acceptedCount() { return index.nextPosition(); }
+
+  @Override
+  public int liveCount() { return (int) index.liveCount(); }
+
+  @Override
+  public List<Lead> survivors() {
+    try {
+      return data.readLive();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    data.force();
+    index.force();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      data.force();
+      data.close();
+    } finally {
+      index.close();
+    }
+  }
+
+  private boolean sameEmail(long offset, String email) {
+    return KeyHash.sameEmail(lead(offset).getEmail(), email);
+  }
+}
@@ -0,0 +1,52 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The StringDictionary class maps repeated strings to small int codes, so a column of repeated
+ * values stores each distinct string once. Null is encoded as -1. Whether a value is blank is
+ * worked out once per distinct value instead of once per row.
+ */
+class StringDictionary {
+  static final int NULL = -1;
+
+  private final Map<String, Integer> codes = new HashMap<>();
+  private final List<String> values = new ArrayList<>();
+  private final BitSet blank = new BitSet();
+
+  /**
+   * Returns the code of a value, adding it if it is new.
+   * @param value the value to encode, may be null
+   * @return the code of the value
+   */
+  int encode(String value) {
+    if (value == null) return NULL;
+    Integer code = codes.get(value);
+    if (code == null) {
+      code = values.size();
+      codes.put(value, code);
+      values.add(value);
+      blank.set(code, value.trim().isEmpty());
+    }
+    return code;
+  }
+
+  String decode(int code) {
+    return code == NULL ? null : values.get(code);
+  }
+
+  /**
+   * Checks if a code stands for null or a blank string.
+   * @param code the code to check
+   * @return true if the value is null or blank
+   */
+  boolean isBlank(int code) {
+    return code == NULL || blank.get(code);
+  }
+
+  int size() { return values.size(); }
+}
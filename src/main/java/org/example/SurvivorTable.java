@@ -0,0 +1,107 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The SurvivorTable class stores the surviving leads in slots, in the order they were added.
+ * A lead that is replaced is tombstoned instead of being removed, so replacing a survivor is
+ * O(1) and the slot numbers held by the id and email indexes stay valid. Each slot also
+ * remembers the position of its lead in the original input, used for tie-breaking.
+ */
+class SurvivorTable {
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private Lead[] leads;
+  private long[] positions;
+  private final BitSet tombstones = new BitSet();
+  private int size;
+  private int liveCount;
+
+  SurvivorTable() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates an empty table with room for the given number of slots before it has to grow.
+   * @param initialCapacity expected number of slots
+   */
+  SurvivorTable(int initialCapacity) {
+    int capacity = Math.max(1, initialCapacity);
+    this.leads = new Lead[capacity];
+    this.positions = new long[capacity];
+  }
+
+  /**
+   * Appends a lead to the end of the table.
+   * @param lead the surviving lead
+   * @param position index of the lead in the original input
+   * @return the slot number of the lead
+   */
+  int add(Lead lead, long position) {
+    if (size == leads.length) {
+      int capacity = leads.length + (leads.length >> 1) + 1;
+      leads = Arrays.copyOf(leads, capacity);
+      positions = Arrays.copyOf(positions, capacity);
+    }
+    leads[size] = lead;
+    positions[size] = position;
+    liveCount++;
+    return size++;
+  }
+
+  /**
+   * Marks a slot as replaced. The lead stays readable so stale index entries can still be
+   * resolved, but it is no longer part of the output. Tombstoning a slot twice has no effect.
+   * @param slot the slot to tombstone
+   */
+  void tombstone(int slot) {
+    if (!tombstones.get(slot)) {
+      tombstones.set(slot);
+      liveCount--;
+    }
+  }
+
+  Lead get(int slot) { return leads[slot]; }
+  long position(int slot) { return positions[slot]; }
+  boolean isAlive(int slot) { return slot < size && !tombstones.get(slot); }
+
+  /**
+   * Returns the number of slots used, including tombstoned ones.
+   * @return the number of slots
+   */
+  int size() { return size; }
+
+  /**
+   * Returns the number of slots that have not been tombstoned.
+   * @return the number of live survivors
+   */
+  int liveCount() { return liveCount; }
+
+  /**
+   * Returns the input positions of the live leads in slot order.
+   * @return a new array of positions
+   */
+  long[] livePositions() {
+    long[] out = new long[liveCount];
+    int n = 0;
+    for (int slot = tombstones.nextClearBit(0); slot < size; slot = tombstones.nextClearBit(slot + 1)) {
+      out[n++] = positions[slot];
+    }
+    return out;
+  }
+
+  /**
+   * Returns the live leads in slot order, which is the order they were added.
+   * @return a new list of the surviving leads
+   */
+  List<Lead> toList() {
+    List<Lead> out = new ArrayList<>(liveCount);
+    for (int slot = tombstones.nextClearBit(0); slot < size; slot = tombstones.nextClearBit(slot + 1)) {
+      out.add(leads[slot]);
+    }
+    return out;
+  }
+}
@@ -0,0 +1,44 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The TextChangeLogSink class writes entries in the text format Main has always written to the
+ * log file: the entry followed by a dashed separator.
+ */
+class TextChangeLogSink implements ChangeLogSink {
+  static final String SEPARATOR = "-------------------------";
+
+  private final Writer out;
+  private final String separator;
+
+  /**
+   * Creates a sink over a writer, which is closed with the sink.
+   * @param out where entries are written
+   */
+  TextChangeLogSink(Writer out) {
+    this(out, SEPARATOR);
+  }
+
+  /**
+   * Creates a sink that ends each entry with its own separator, such as Main's console layout.
+   * @param out where entries are written, closed with the sink
+   * @param separator written after each entry
+   */
+  TextChangeLogSink(Writer out, String separator) {
+    this.out = out;
+    this.separator = separator;
+  }
+
+  @Override
+  public void write(ChangeLogEntry entry) throws IOException {
+    out.write(entry.toString());
+    out.write(separator);
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+}
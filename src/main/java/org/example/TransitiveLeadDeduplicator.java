@@ -0,0 +1,89 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The TransitiveLeadDeduplicator class dedupes leads transitively: leads linked by any chain of
+ * shared "ID"s or emails are one duplicate group, even when the two ends of the chain share
+ * nothing. If A shares an id with B and B shares an email with C, only one of A, B and C survives,
+ * where LeadDeduplicator, which compares leads directly, may keep two of them.
+ *
+ * Every valid lead is joined, through an id index and an email index, with the first lead that had
+ * the same key, using a union-find over input positions. Each group then keeps the lead with the
+ * latest "entryDate", the later one in the input on a tie, and logs one ChangeLogEntry for each
+ * other lead of the group.
+ */
+public class TransitiveLeadDeduplicator {
+
+  private TransitiveLeadDeduplicator() {}
+
+  /**
+   * Dedpues a list of leads based on "ID" and "email", merging every linked group into one lead.
+   * Leads are normalized in place.
+   * @param leads list of leads to dedupe
+   * @return a Result with the survivors in input order, a log entry for each merged lead in
+   * input order, and the invalid leads
+   */
+  public static LeadDeduplicator.Result deduplicate(List<Lead> leads) {
+    Lead[] valid = new Lead[leads.size()];
+    List<String> invalidLogs = new ArrayList<>();
+    int n = 0;
+    for (Lead lead : leads) {
+      if (LeadDeduplicator.prepare(lead)) {
+        valid[n++] = lead;
+      } else {
+        invalidLogs.add("Removed record due to Null or empty field/fields" + lead);
+      }
+    }
+
+    KeyIndex idFirst = new KeyIndex(n) {
+      @Override
+      protected boolean matches(int i, String id) {
+        return valid[i].getId().equals(id);
+      }
+    };
+    KeyIndex emailFirst = new KeyIndex(n) {
+      @Override
+      protected boolean matches(int i, String email) {
+        return KeyHash.sameEmail(valid[i].getEmail(), email);
+      }
+    };
+    UnionFind groups = new UnionFind(n);
+    for (int i = 0; i < n; i++) {
+      link(groups, idFirst, valid[i].idHash(), valid[i].getId(), i);
+      link(groups, emailFirst, valid[i].emailHash(), valid[i].getEmail(), i);
+    }
+
+    int[] best = new int[n];
+    Arrays.fill(best, -1);
+    for (int i = 0; i < n; i++) {
+      int root = groups.find(i);
+      if (best[root] < 0 || !valid[best[root]].getEntryDate().isAfter(valid[i].getEntryDate())) {
+        best[root] = i;
+      }
+    }
+
+    List<Lead> survivors = new ArrayList<>();
+    List<ChangeLogEntry> logs = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      int winner = best[groups.find(i)];
+      if (winner == i) {
+        survivors.add(valid[i]);
+      } else {
+        logs.add(new ChangeLogEntry(valid[i], valid[winner]));
+      }
+    }
+    return new LeadDeduplicator.Result(survivors, logs, invalidLogs);
+  }
+
+  private static void link(UnionFind groups, KeyIndex first, long hash, String key, int i) {
+    int j = first.find(hash, key);
+    if (j == KeyIndex.NONE) {
+      first.put(hash, key, i);
+    } else {
+      groups.union(i, j);
+    }
+  }
+}
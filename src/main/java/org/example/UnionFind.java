@@ -0,0 +1,56 @@
+package org.example;
+
+/**
+ * The UnionFind class groups the positions 0..n-1 into disjoint sets, with union by rank and
+ * path compression, so any sequence of unions and finds runs in near-linear time.
+ */
+final class UnionFind {
+  private final int[] parent;
+  private final byte[] rank;
+
+  /**
+   * Creates n singleton sets.
+   * @param n number of positions
+   */
+  UnionFind(int n) {
+    parent = new int[n];
+    rank = new byte[n];
+    for (int i = 0; i < n; i++) parent[i] = i;
+  }
+
+  /**
+   * Finds the root of the set holding a position, pointing every position on the way straight
+   * at the root.
+   * @param i the position
+   * @return the root position of its set
+   */
+  int find(int i) {
+    int root = i;
+    while (parent[root] != root) root = parent[root];
+    while (parent[i] != root) {
+      int next = parent[i];
+      parent[i] = root;
+      i = next;
+    }
+    return root;
+  }
+
+  /**
+   * Merges the sets holding two positions, hanging the lower ranked root under the other.
+   * @param a the first position
+   * @param b the second position
+   */
+  void union(int a, int b) {
+    int ra = find(a);
+    int rb = find(b);
+    if (ra == rb) return;
+    if (rank[ra] < rank[rb]) {
+      parent[ra] = rb;
+    } else if (rank[ra] > rank[rb]) {
+      parent[rb] = ra;
+    } else {
+      parent[rb] = ra;
+      rank[ra]++;
+    }
+  }
+}
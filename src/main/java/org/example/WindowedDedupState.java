@@ -0,0 +1,223 @@
+package org.example;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The WindowedDedupState class is an in-memory state that only treats leads as duplicates when
+ * their entryDates lie within a rolling window of each other, and forgets keys once they fall
+ * out of it, so a long-lived pipeline holds only the leads of the last window.
+ *
+ * Every slot, live or tombstoned, is put in a time bucket by the entryDate of its lead. The
+ * buckets form a ring covering one window: when the newest entryDate seen moves past the end
+ * of a bucket plus the window, the whole bucket expires, its index entries are removed and its
+ * slots are reused. Each slot is bucketed and expired once, so eviction costs O(1) amortised per
+ * lead. A live survivor that expires is final, since no later lead can reach it; it is handed to
+ * the expired consumer, or, if there is none, kept for survivors, so that memory is only bounded
+ * with a consumer.
+ *
+ * Expiry follows the newest entryDate seen, so a lead arriving more than a window behind it is
+ * only matched against the keys still held, and is kept until the oldest bucket expires.
+ */
+class WindowedDedupState implements DedupState {
+  static final int BUCKETS = 64;
+
+  private final Duration window;
+  private final long bucketSeconds;
+  private final long windowSeconds;
+  private final Consumer<Lead> expired;
+  private final KeyIndex idMap;
+  private final KeyIndex emailMap;
+  private final IntList[] ring;
+  private Lead[] leads;
+  private long[] positions;
+  private boolean[] dead;
+  private final IntList free = new IntList();
+  private int size;
+  private int liveCount;
+  private final List<Lead> kept = new ArrayList<>();
+  private final LongList keptPositions = new LongList();
+  private long oldestBucket = Long.MIN_VALUE;
+  private long newestBucket = Long.MIN_VALUE;
+  private long position;
+
+  /**
+   * Creates an empty state.
+   * @param window leads further apart than this are never duplicates, at least one second
+   * @param expired receives survivors that fell out of the window, or null to keep all of them in
+   *                memory for survivors
+   * @param expectedLeads expected number of leads within one window
+   */
+  WindowedDedupState(Duration window, Consumer<Lead> expired, int expectedLeads) {
+    if (window.getSeconds() < 1) throw new IllegalArgumentException("window must be at least one second");
+    this.window = window;
+    this.windowSeconds = window.getSeconds();
+    this.bucketSeconds = Math.max(1, windowSeconds / BUCKETS);
+    this.expired = expired;
+    // The buckets from the oldest kept to the newest span at most the window plus two buckets.
+    this.ring = new IntList[(int) (windowSeconds / bucketSeconds) + 3];
+    for (int i = 0; i < ring.length; i++) ring[i] = new IntList();
+    int capacity = Math.max(1, expectedLeads);
+    this.leads = new Lead[capacity];
+    this.positions = new long[capacity];
+    this.dead = new boolean[capacity];
+    this.idMap = new KeyIndex(expectedLeads) {
+      @Override
+      protected boolean matches(int slot, String id) {
+        return leads[slot].getId().equals(id);
+      }
+    };
+    this.emailMap = new KeyIndex(expectedLeads) {
+      @Override
+      protected boolean matches(int slot, String email) {
+        return KeyHash.sameEmail(leads[slot].getEmail(), email);
+      }
+    };
+  }
+
+  @Override
+  public long findId(String id, long hash) { return idMap.find(hash, id); }
+
+  @Override
+  public long findEmail(String email, long hash) { return emailMap.find(hash, email); }
+
+  @Override
+  public boolean matchable(long handle, Lead current) {
+    Instant a = leads[(int) handle].getEntryDate();
+    Instant b = current.getEntryDate();
+    return a.isBefore(b) ? !a.plus(window).isBefore(b) : !b.plus(window).isBefore(a);
+  }
+
+  @Override
+  public Lead lead(long handle) { return leads[(int) handle]; }
+
+  @Override
+  public long position(long handle) { return positions[(int) handle]; }
+
+  /**
+   * Expires the buckets the lead's entryDate moves out of the window, then stores the lead in a
+   * free slot and in the bucket of its entryDate.
+   */
+  @Override
+  public long add(Lead lead, long position) {
+    long bucket = Math.floorDiv(lead.getEntryDate().getEpochSecond(), bucketSeconds);
+    if (newestBucket == Long.MIN_VALUE) {
+      oldestBucket = bucket;
+      newestBucket = bucket;
+    } else if (bucket > newestBucket) {
+      newestBucket = bucket;
+      expire(lead.getEntryDate().getEpochSecond() - windowSeconds);
+    }
+    int slot = free.size() > 0 ? free.pop() : grow();
+    leads[slot] = lead;
+    positions[slot] = position;
+    dead[slot] = false;
+    liveCount++;
+    ring[(int) Math.floorMod(Math.max(bucket, oldestBucket), (long) ring.length)].add(slot);
+    return slot;
+  }
+
+  /**
+   * Expires every bucket whose entryDates all lie before the horizon.
+   * @param horizon newest entryDate seen, in epoch seconds, less the window
+   */
+  private void expire(long horizon) {
+    // Bucket b holds entryDates before (b + 1) * bucketSeconds; it expires once that is <= horizon.
+    long firstKept = Math.floorDiv(horizon, bucketSeconds);
+    long last = Math.min(firstKept, oldestBucket + ring.length);
+    for (long b = oldestBucket; b < last; b++) {
+      IntList slots = ring[(int) Math.floorMod(b, (long) ring.length)];
+      for (int i = 0; i < slots.size(); i++) evict(slots.get(i));
+      slots.clear();
+    }
+    oldestBucket = Math.max(oldestBucket, firstKept);
+  }
+
+  private void evict(int slot) {
+    Lead lead = leads[slot];
+    if (idMap.find(lead.idHash(), lead.getId()) == slot) idMap.remove(lead.idHash(), lead.getId());
+    if (emailMap.find(lead.emailHash(), lead.getEmail()) == slot) emailMap.remove(lead.emailHash(), lead.getEmail());
+    if (!dead[slot]) {
+      liveCount--;
+      if (expired != null) {
+        expired.accept(lead);
+      } else {
+        kept.add(lead);
+        keptPositions.add(positions[slot]);
+      }
+    }
+    leads[slot] = null;
+    free.add(slot);
+  }
+
+  private int grow() {
+    if (size == leads.length) {
+      int capacity = leads.length + (leads.length >> 1) + 1;
+      leads = Arrays.copyOf(leads, capacity);
+      positions = Arrays.copyOf(positions, capacity);
+      dead = Arrays.copyOf(dead, capacity);
+    }
+    return size++;
+  }
+
+  @Override
+  public void tombstone(long handle) {
+    if (!dead[(int) handle]) {
+      dead[(int) handle] = true;
+      liveCount--;
+    }
+  }
+
+  @Override
+  public void putId(String id, long hash, long handle) { idMap.put(hash, id, (int) handle); }
+
+  @Override
+  public void putEmail(String email, long hash, long handle) { emailMap.put(hash, email, (int) handle); }
+
+  @Override
+  public void removeEmail(String email, long hash) { emailMap.remove(hash, email); }
+
+  @Override
+  public long nextPosition() { return position++; }
+
+  @Override
+  public long acceptedCount() { return position; }
+
+  /**
+   * Returns the number of survivors held: the live ones in the window and the expired ones kept
+   * for survivors. Survivors handed to the expired consumer are not counted.
+   */
+  @Override
+  public int liveCount() { return liveCount + kept.size(); }
+
+  /**
+   * Returns the survivors held, expired and live, in input order.
+   */
+  @Override
+  public List<Lead> survivors() {
+    int count = liveCount();
+    Lead[] held = new Lead[count];
+    long[] order = new long[count];
+    int n = 0;
+    for (; n < kept.size(); n++) {
+      held[n] = kept.get(n);
+      order[n] = keptPositions.get(n);
+    }
+    for (int slot = 0; slot < size; slot++) {
+      if (leads[slot] != null && !dead[slot]) {
+        held[n] = leads[slot];
+        order[n++] = positions[slot];
+      }
+    }
+    Integer[] sorted = new Integer[count];
+    for (int i = 0; i < count; i++) sorted[i] = i;
+    Arrays.sort(sorted, (a, b) -> Long.compare(order[a], order[b]));
+    List<Lead> out = new ArrayList<>(count);
+    for (int i : sorted) out.add(held[i]);
+    return out;
+  }
+}
@@ -0,0 +1,86 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.ChangeLogEntry;
+import org.example.ChangeLogSink;
+import org.example.IncrementalLeadDeduplicator;
+import org.example.Lead;
+import org.example.LeadDeduplicator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test class for the streaming change log sinks, checks that what they write matches the
+ * entries, also when the log is larger than the write buffers.
+ */
+public class ChangeLogSinkTest {
+
+  /**
+   * The text sink writes every entry followed by the separator
+   */
+  @Test
+  void textMatchesToString(@TempDir Path dir) throws Exception {
+
+    //Arrange
+    List<ChangeLogEntry> log = LeadDeduplicator.deduplicate(chain(5000)).getLog();
+    Path file = dir.resolve("log.txt");
+    StringBuilder expected = new StringBuilder();
+    log.forEach(entry -> expected.append(entry).append("-------------------------"));
+
+    //Act
+    try (ChangeLogSink sink = ChangeLogSink.open(file, ChangeLogSink.Format.TEXT)) {
+      for (ChangeLogEntry entry : log) sink.write(entry);
+    }
+
+    //Assert
+    assertEquals(expected.toString(), Files.readString(file, StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Entries sent to a sink while deduping come out as one JSON object per line
+   */
+  @Test
+  void ndjsonWhileDeduping(@TempDir Path dir) throws Exception {
+
+    //Arrange
+    List<Lead> leads = chain(5000);
+    Path file = dir.resolve("log.ndjson");
+    IncrementalLeadDeduplicator dedup = new IncrementalLeadDeduplicator();
+
+    //Act
+    try (ChangeLogSink sink = ChangeLogSink.open(file, ChangeLogSink.Format.NDJSON)) {
+      dedup.logTo(sink);
+      dedup.acceptAll(leads);
+    }
+
+    //Assert
+    List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+    assertEquals(4999, lines.size());
+    assertEquals(0, dedup.snapshot().getLog().size());
+    JsonNode first = new ObjectMapper().readTree(lines.get(0));
+    assertEquals("id0", first.get("discarded").get("_id").asText());
+    assertEquals("id1", first.get("kept").get("_id").asText());
+    assertEquals("Zoë0", first.get("changes").get("firstName").get(0).asText());
+    assertEquals("Zoë1", first.get("changes").get("firstName").get(1).asText());
+  }
+
+  /**
+   * Leads sharing one email, each newer than the last, so every lead replaces the previous one
+   */
+  private static List<Lead> chain(int count) {
+    List<Lead> leads = new ArrayList<>();
+    Instant date = Instant.parse("2024-05-07T17:30:20Z");
+    for (int i = 0; i < count; i++) {
+      leads.add(new Lead("id" + i, "same@email.com", "Zoë" + i, "X", "address" + i, date.plusSeconds(i)));
+    }
+    return leads;
+  }
+}
@@ -0,0 +1,146 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.example.ConcurrentLeadDeduplicator;
+import org.example.DedupServer;
+import org.example.Lead;
+import org.example.LeadDeduplicator;
+import org.example.LeadWrapper;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for the dedup service, checks the striped shared state against the sequential
+ * deduplicator and the HTTP round trip.
+ */
+public class DedupServerTest {
+
+  /**
+   * Fed from one thread, the striped state keeps the same survivors as deduplicate
+   */
+  @Test
+  void singleThreadMatchesSequential() {
+
+    //Arrange
+    List<Lead> expectedInput = TestLeads.randomLeads(new Random(11), 4000);
+    List<Lead> actualInput = TestLeads.randomLeads(new Random(11), 4000);
+    LeadDeduplicator.Result expected = LeadDeduplicator.deduplicate(expectedInput);
+
+    //Act
+    ConcurrentLeadDeduplicator dedup = new ConcurrentLeadDeduplicator(8);
+    actualInput.forEach(dedup::accept);
+
+    //Assert
+    assertEquals(expected.getDeduped().toString(), dedup.survivors().toString());
+    assertEquals(expected.getDeduped().size(), dedup.getSurvivorCount());
+    assertEquals(4000, dedup.getAcceptedCount());
+  }
+
+  /**
+   * When every id has one email and dates are distinct, the latest lead per id survives
+   * whatever order the threads dedupe in
+   */
+  @Test
+  void concurrentKeepsLatestPerKey() throws Exception {
+
+    //Arrange
+    List<Lead> leads = new ArrayList<>();
+    for (int i = 0; i < 40000; i++) {
+      int key = i % 500;
+      leads.add(new Lead("id" + key, (i % 2 == 0 ? "USER" : "user") + key + "@email.com", "F", "L", "A",
+              Instant.parse("2024-05-07T17:00:00Z").plusSeconds(i)));
+    }
+    Collections.shuffle(leads, new Random(3));
+    ConcurrentLeadDeduplicator dedup = new ConcurrentLeadDeduplicator(4);
+
+    //Act
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      List<Lead> part = leads.subList(t * 5000, (t + 1) * 5000);
+      futures.add(pool.submit(() -> part.forEach(dedup::accept)));
+    }
+    for (Future<?> f : futures) f.get();
+    pool.shutdown();
+
+    //Assert
+    List<Lead> survivors = dedup.survivors();
+    assertEquals(500, survivors.size());
+    assertEquals(500, dedup.getSurvivorCount());
+    for (Lead lead : survivors) {
+      int key = Integer.parseInt(lead.getId().substring(2));
+      assertEquals(Instant.parse("2024-05-07T17:00:00Z").plusSeconds(39500 + key), lead.getEntryDate());
+    }
+  }
+
+  /**
+   * A posted batch is answered with the outcome of each lead, and later batches dedupe
+   * against it
+   */
+  @Test
+  void postBatches() throws Exception {
+
+    //Arrange
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.registerModule(new JavaTimeModule());
+    Lead a = new Lead("abc", "abc1@email.com", "A", "X", "address1", Instant.parse("2024-05-07T17:30:20Z"));
+    Lead b = new Lead("abc", "abc2@email.com", "B", "Y", "address2", Instant.parse("2024-05-07T17:32:20Z"));
+    Lead c = new Lead("abcd", "ABC2@email.com", "C", "Z", "address3", Instant.parse("2024-05-07T17:28:20Z"));
+    Lead d = new Lead("", "d@email.com", "D", "Z", "address4", Instant.parse("2024-05-07T17:28:20Z"));
+    HttpClient client = HttpClient.newHttpClient();
+
+    try (DedupServer server = DedupServer.start(new InetSocketAddress("127.0.0.1", 0), 2)) {
+      URI base = URI.create("http://127.0.0.1:" + server.getPort());
+
+      //Act
+      JsonNode first = post(client, mapper, base, List.of(a));
+      JsonNode second = post(client, mapper, base, List.of(b, c, d));
+      HttpResponse<String> bad = client.send(HttpRequest.newBuilder(base.resolve("/dedup"))
+              .POST(HttpRequest.BodyPublishers.ofString("{\"leads\": [")).build(), HttpResponse.BodyHandlers.ofString());
+      JsonNode metrics = mapper.readTree(client.send(HttpRequest.newBuilder(base.resolve("/metrics")).build(),
+              HttpResponse.BodyHandlers.ofString()).body());
+
+      //Assert
+      assertEquals("KEPT", first.get("decisions").get(0).get("outcome").asText());
+      assertEquals(List.of("REPLACED", "DISCARDED", "INVALID"), outcomes(second));
+      assertEquals(1, second.get("survivors").asInt());
+      assertEquals(400, bad.statusCode());
+      assertEquals(3, metrics.get("requests").asInt());
+      assertEquals(1, metrics.get("errors").asInt());
+      assertEquals(4, metrics.get("leads").asInt());
+      assertEquals(1, metrics.get("replaced").asInt());
+      assertTrue(metrics.get("latencyMicros").get("p99").asLong() <= metrics.get("latencyMicros").get("max").asLong());
+      assertEquals(b.toString(), server.getDeduplicator().survivors().get(0).toString());
+    }
+  }
+
+  private static JsonNode post(HttpClient client, ObjectMapper mapper, URI base, List<Lead> leads) throws Exception {
+    HttpResponse<String> response = client.send(HttpRequest.newBuilder(base.resolve("/dedup"))
+            .POST(HttpRequest.BodyPublishers.ofString(mapper.writeValueAsString(new LeadWrapper(leads)))).build(),
+            HttpResponse.BodyHandlers.ofString());
+    assertEquals(200, response.statusCode());
+    return mapper.readTree(response.body());
+  }
+
+  private static List<String> outcomes(JsonNode response) {
+    List<String> out = new ArrayList<>();
+    response.get("decisions").forEach(d -> out.add(d.get("outcome").asText()));
+    return out;
+  }
+}
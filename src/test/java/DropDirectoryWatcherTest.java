@@ -0,0 +1,120 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.example.DropDirectoryWatcher;
+import org.example.IncrementalLeadDeduplicator;
+import org.example.Lead;
+import org.example.LeadDeduplicator;
+import org.example.LeadWrapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test class for watch mode, checks that files dropped into a directory are applied in the
+ * order they land and that their deltas add up to the survivors.
+ */
+public class DropDirectoryWatcherTest {
+
+  /**
+   * A file present at start and two files moved in later are applied in that order, like one
+   * run over the three files, and applying the deltas gives the same survivors
+   */
+  @Test
+  void dropsMatchOneRun(@TempDir Path tmp) throws Exception {
+
+    //Arrange
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.registerModule(new JavaTimeModule());
+    Path drop = Files.createDirectory(tmp.resolve("drop"));
+    Path staging = Files.createDirectory(tmp.resolve("staging"));
+    List<Lead> expectedInput = new ArrayList<>();
+    for (int part = 0; part < 3; part++) expectedInput.addAll(TestLeads.randomLeads(new Random(part), 3000));
+    LeadDeduplicator.Result expected = LeadDeduplicator.deduplicate(expectedInput);
+    mapper.writeValue(drop.resolve("part-00.json").toFile(), new LeadWrapper(TestLeads.randomLeads(new Random(0), 3000)));
+    Files.writeString(drop.resolve("notes.txt"), "not an input");
+    IncrementalLeadDeduplicator dedup = new IncrementalLeadDeduplicator();
+    BlockingQueue<DropDirectoryWatcher.Delta> deltas = new LinkedBlockingQueue<>();
+
+    //Act
+    List<DropDirectoryWatcher.Delta> received = new ArrayList<>();
+    try (DropDirectoryWatcher watcher = DropDirectoryWatcher.start(drop, mapper, dedup, 2, deltas::add)) {
+      received.add(deltas.poll(10, TimeUnit.SECONDS));
+      StringBuilder ndjson = new StringBuilder();
+      for (Lead lead : TestLeads.randomLeads(new Random(1), 3000)) ndjson.append(mapper.writeValueAsString(lead)).append('\n');
+      Files.writeString(staging.resolve("part-01.ndjson"), ndjson);
+      Files.move(staging.resolve("part-01.ndjson"), drop.resolve("part-01.ndjson"), StandardCopyOption.ATOMIC_MOVE);
+      mapper.writeValue(staging.resolve("part-02.json").toFile(), new LeadWrapper(TestLeads.randomLeads(new Random(2), 3000)));
+      Files.move(staging.resolve("part-02.json"), drop.resolve("part-02.json"), StandardCopyOption.ATOMIC_MOVE);
+      received.add(deltas.poll(10, TimeUnit.SECONDS));
+      received.add(deltas.poll(10, TimeUnit.SECONDS));
+    }
+
+    //Assert
+    List<Lead> live = new ArrayList<>();
+    for (int part = 0; part < 3; part++) {
+      DropDirectoryWatcher.Delta delta = received.get(part);
+      assertNotNull(delta);
+      assertNull(delta.getError());
+      assertEquals(drop.resolve(part == 1 ? "part-01.ndjson" : "part-0" + part + ".json"), delta.getFile());
+      assertEquals(3000, delta.getLeads());
+      assertTrue(delta.getLatencyNanos() > 0);
+      assertTrue(live.containsAll(delta.getRemoved()));
+      live.removeAll(delta.getRemoved());
+      live.addAll(delta.getAdded());
+    }
+    assertTrue(deltas.isEmpty());
+    List<Lead> survivors = dedup.snapshot().getDeduped();
+    assertEquals(expected.getDeduped().toString(), survivors.toString());
+    assertEquals(new HashSet<>(survivors), new HashSet<>(live));
+    assertEquals(survivors.size(), received.get(2).getSurvivors());
+  }
+
+  /**
+   * A file cut off partway through reports its error, and the leads read before the cut,
+   * including those of the last partly filled chunk, are applied
+   */
+  @Test
+  void truncatedFileAppliesLeadsRead(@TempDir Path tmp) throws Exception {
+
+    //Arrange
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.registerModule(new JavaTimeModule());
+    Path drop = Files.createDirectory(tmp.resolve("drop"));
+    List<Lead> leads = TestLeads.randomLeads(new Random(3), 10000);
+    String json = mapper.writeValueAsString(new LeadWrapper(leads));
+    String cut = mapper.writeValueAsString(leads.get(9000));
+    Files.writeString(drop.resolve("part-00.json"), json.substring(0, json.indexOf(cut) + cut.length() / 2));
+    LeadDeduplicator.Result expected = LeadDeduplicator.deduplicate(TestLeads.randomLeads(new Random(3), 10000).subList(0, 9000));
+    IncrementalLeadDeduplicator dedup = new IncrementalLeadDeduplicator();
+    BlockingQueue<DropDirectoryWatcher.Delta> deltas = new LinkedBlockingQueue<>();
+
+    //Act
+    DropDirectoryWatcher.Delta delta;
+    try (DropDirectoryWatcher watcher = DropDirectoryWatcher.start(drop, mapper, dedup, 1, deltas::add)) {
+      delta = deltas.poll(10, TimeUnit.SECONDS);
+    }
+
+    //Assert
+    assertNotNull(delta);
+    assertNotNull(delta.getError());
+    assertEquals(9000, delta.getLeads());
+    assertEquals(expected.getDeduped().size(), delta.getSurvivors());
+    assertEquals(expected.getDeduped().toString(), dedup.snapshot().getDeduped().toString());
+    assertEquals(new HashSet<>(dedup.snapshot().getDeduped()), new HashSet<>(delta.getAdded()));
+  }
+}
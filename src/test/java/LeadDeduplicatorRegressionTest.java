@@ -0,0 +1,537 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.example.ChangeLogEntry;
+import org.example.ExternalLeadDeduplicator;
+import org.example.IncrementalLeadDeduplicator;
+import org.example.Lead;
+import org.example.LeadDeduplicator;
+import org.example.LeadJsonWriter;
+import org.example.LeadSnapshotReader;
+import org.example.LeadSnapshotWriter;
+import org.example.LeadStreamReader;
+import org.example.LeadTable;
+import org.example.LeadWrapper;
+import org.example.MultiFileLeadReader;
+import org.example.NdjsonLeadReader;
+import org.example.ParallelLeadDeduplicator;
+import org.example.TransitiveLeadDeduplicator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Regression suite that checks LeadDeduplicator against a copy of the original list based
+ * implementation. The survivors, their order, the change log and the invalid logs must match
+ * exactly for every input.
+ */
+public class LeadDeduplicatorRegressionTest {
+
+  /**
+   * The sample input shipped in the resources folder
+   */
+  @Test
+  void sampleFileMatchesLegacy() throws Exception {
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.registerModule(new JavaTimeModule());
+
+    List<Lead> expectedInput;
+    List<Lead> actualInput;
+    try (InputStream in = getClass().getResourceAsStream("/leads.json")) {
+      expectedInput = mapper.readValue(in, LeadWrapper.class).getLeads();
+    }
+    try (InputStream in = getClass().getResourceAsStream("/leads.json")) {
+      actualInput = mapper.readValue(in, LeadWrapper.class).getLeads();
+    }
+
+    assertSameResult(expectedInput, legacyDeduplicate(expectedInput),
+            actualInput, LeadDeduplicator.deduplicate(actualInput));
+  }
+
+  /**
+   * Streaming the sample file into the incremental deduplicator gives the batch result
+   */
+  @Test
+  void streamedSampleMatchesBatch() throws Exception {
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.registerModule(new JavaTimeModule());
+
+    List<Lead> expectedInput;
+    try (InputStream in = getClass().getResourceAsStream("/leads.json")) {
+      expectedInput = mapper.readValue(in, LeadWrapper.class).getLeads();
+    }
+    List<Lead> actualInput = new ArrayList<>();
+    IncrementalLeadDeduplicator dedup = new IncrementalLeadDeduplicator();
+    try (InputStream in = getClass().getResourceAsStream("/leads.json")) {
+      new LeadStreamReader(mapper).read(mapper.getFactory().createParser(in), lead -> {
+        actualInput.add(lead);
+        dedup.accept(lead);
+      });
+    }
+
+    assertSameResult(expectedInput, LeadDeduplicator.deduplicate(expectedInput), actualInput, dedup.snapshot());
+  }
+
+  /**
+   * Reading NDJSON in tiny chunks on several threads keeps file order, so the result is the
+   * same as deduping the leads it was written from
+   */
+  @Test
+  void ndjsonMatchesList(@TempDir Path tmp) throws Exception {
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.registerModule(new JavaTimeModule());
+    for (int seed = 0; seed < 20; seed++) {
+      List<Lead> expectedInput = TestLeads.randomLeads(new Random(seed), 2000);
+      Path file = tmp.resolve("leads" + seed + ".ndjson");
+      StringBuilder ndjson = new StringBuilder();
+      for (Lead lead : expectedInput) {
+        ndjson.append(mapper.writeValueAsString(lead)).append(seed % 2 == 0 ? "\n" : "\r\n\n");
+      }
+      Files.writeString(file, ndjson.toString().trim());
+
+      List<Lead> actualInput = new ArrayList<>();
+      long count = new NdjsonLeadReader(mapper, 4, 512).read(file, actualInput::add);
+
+      assertEquals(expectedInput.size(), count);
+      assertSameResult(expectedInput, LeadDeduplicator.deduplicate(expectedInput),
+              actualInput, LeadDeduplicator.deduplicate(actualInput));
+    }
+  }
+
+  /**
+   * A result saved as a snapshot, with and without the dictionary, reads back the same
+   */
+  @Test
+  void snapshotRoundTrip(@TempDir Path tmp) throws Exception {
+    for (int seed = 0; seed < 10; seed++) {
+      LeadDeduplicator.Result expected = LeadDeduplicator.deduplicate(TestLeads.randomLeads(new Random(seed), 2000));
+      for (boolean dictionary : new boolean[]{false, true}) {
+        Path file = tmp.resolve("result" + seed + dictionary + ".snap");
+        LeadSnapshotWriter.write(file, expected, dictionary);
+
+        try (LeadSnapshotReader reader = LeadSnapshotReader.open(file)) {
+          LeadDeduplicator.Result actual = reader.toResult();
+          assertEquals(expected.getDeduped().toString(), actual.getDeduped().toString());
+          assertEquals(expected.getLog().toString(), actual.getLog().toString());
+          assertEquals(expected.getInvalidLogs(), actual.getInvalidLogs());
+        }
+      }
+    }
+  }
+
+  /**
+   * A snapshot keeps entryDates outside the epoch-nanosecond range, such as sentinel dates, and
+   * missing ones
+   */
+  @Test
+  void snapshotKeepsDistantEntryDates(@TempDir Path tmp) throws Exception {
+    //Arrange
+    List<Lead> leads = new ArrayList<>();
+    leads.add(new Lead("a", "a@email.com", "A", "X", "address1", Instant.parse("9999-12-31T00:00:00Z")));
+    leads.add(new Lead("b", "b@email.com", "B", "Y", "address2", Instant.parse("1066-10-14T09:00:00.123456789Z")));
+    leads.add(new Lead("c", "c@email.com", "C", "Z", "address3", null));
+    LeadDeduplicator.Result expected = new LeadDeduplicator.Result(leads, List.of(), List.of());
+    Path file = tmp.resolve("result.snap");
+
+    //Act
+    LeadSnapshotWriter.write(file, expected, false);
+
+    //Assert
+    try (LeadSnapshotReader reader = LeadSnapshotReader.open(file)) {
+      assertEquals(leads.toString(), reader.toResult().getDeduped().toString());
+    }
+  }
+
+  /**
+   * Deduped leads written in parallel chunks are byte for byte the JSON the whole list
+   * serializes to, pretty printed and compact, whatever the chunk size
+   */
+  @Test
+  void chunkedJsonMatchesWholeList(@TempDir Path tmp) throws Exception {
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.registerModule(new JavaTimeModule());
+    for (int count : new int[]{0, 1, 7, 100, 2000}) {
+      List<Lead> leads = LeadDeduplicator.deduplicate(TestLeads.randomLeads(new Random(count), Math.max(4, count))).getDeduped();
+      leads = leads.subList(0, Math.min(count, leads.size()));
+      for (int chunkSize : new int[]{1, 7, 4096}) {
+        Path pretty = tmp.resolve("pretty" + count + "-" + chunkSize + ".json");
+        Path compact = tmp.resolve("compact" + count + "-" + chunkSize + ".json");
+        long prettyBytes = new LeadJsonWriter(mapper, true, 3, chunkSize).write(leads, pretty);
+        new LeadJsonWriter(mapper, false, 3, chunkSize).write(leads, compact);
+
+        assertArrayEquals(mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(new LeadWrapper(leads)),
+                Files.readAllBytes(pretty));
+        assertArrayEquals(mapper.writeValueAsBytes(new LeadWrapper(leads)), Files.readAllBytes(compact));
+        assertEquals(Files.size(pretty), prettyBytes);
+      }
+    }
+  }
+
+  /**
+   * Partition files read concurrently come out in (file, record) order, so deduping them
+   * matches deduping the files concatenated, for a directory and for a glob
+   */
+  @Test
+  void multiFileMatchesConcatenated(@TempDir Path tmp) throws Exception {
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.registerModule(new JavaTimeModule());
+    List<Lead> expectedInput = new ArrayList<>();
+    for (int part = 0; part < 12; part++) {
+      List<Lead> leads = TestLeads.randomLeads(new Random(part), 300);
+      expectedInput.addAll(TestLeads.randomLeads(new Random(part), 300));
+      if (part % 2 == 0) {
+        mapper.writeValue(tmp.resolve(String.format("part-%02d.json", part)).toFile(), new LeadWrapper(leads));
+      } else {
+        StringBuilder ndjson = new StringBuilder();
+        for (Lead lead : leads) ndjson.append(mapper.writeValueAsString(lead)).append('\n');
+        Files.writeString(tmp.resolve(String.format("part-%02d.ndjson", part)), ndjson);
+      }
+    }
+    Files.writeString(tmp.resolve("notes.txt"), "not an input");
+    LeadDeduplicator.Result expected = LeadDeduplicator.deduplicate(expectedInput);
+
+    for (String input : new String[]{tmp.toString(), tmp + "/part-*.{json,ndjson}"}) {
+      List<Path> files = MultiFileLeadReader.resolve(input);
+      List<Lead> actualInput = new ArrayList<>();
+      new MultiFileLeadReader(mapper, 4).read(files, actualInput::add);
+
+      assertEquals(12, files.size());
+      assertSameResult(expectedInput, expected, actualInput, LeadDeduplicator.deduplicate(actualInput));
+    }
+  }
+
+  /**
+   * A file or directory whose name holds glob characters is read as itself when it exists
+   */
+  @Test
+  void existingPathWithGlobCharactersIsNotAGlob(@TempDir Path tmp) throws Exception {
+    //Arrange
+    Path file = Files.writeString(tmp.resolve("leads[1].json"), "{\"leads\":[]}");
+    Files.writeString(tmp.resolve("leads1.json"), "{\"leads\":[]}");
+    Path dir = Files.createDirectory(tmp.resolve("drop{a}"));
+    Path inDir = Files.writeString(dir.resolve("part.json"), "{\"leads\":[]}");
+
+    //Act
+    List<Path> files = MultiFileLeadReader.resolve(file.toString());
+    List<Path> dirFiles = MultiFileLeadReader.resolve(dir.toString());
+    List<Path> globbed = MultiFileLeadReader.resolve(tmp + "/leads[1].*");
+
+    //Assert
+    assertEquals(List.of(file), files);
+    assertEquals(List.of(inDir), dirFiles);
+    assertEquals(List.of(tmp.resolve("leads1.json")), globbed);
+  }
+
+  /**
+   * Randomised inputs with a small key space, so id and email collisions, stale index entries
+   * and equal timestamps all show up often
+   */
+  @Test
+  void randomInputsMatchLegacy() {
+    for (int seed = 0; seed < 500; seed++) {
+      List<Lead> expectedInput = TestLeads.randomLeads(new Random(seed), 200);
+      List<Lead> actualInput = TestLeads.randomLeads(new Random(seed), 200);
+
+      assertSameResult(expectedInput, legacyDeduplicate(expectedInput),
+              actualInput, LeadDeduplicator.deduplicate(actualInput));
+    }
+  }
+
+  /**
+   * The parallel engine gives exactly the sequential result, including the tie-break on
+   * equal timestamps and groups that link across id and email shards
+   */
+  @Test
+  void parallelMatchesSequential() {
+    ParallelLeadDeduplicator parallel = new ParallelLeadDeduplicator(4, 0);
+    for (int seed = 0; seed < 100; seed++) {
+      List<Lead> expectedInput = TestLeads.randomLeads(new Random(seed), 2000);
+      List<Lead> actualInput = TestLeads.randomLeads(new Random(seed), 2000);
+
+      assertSameResult(expectedInput, LeadDeduplicator.deduplicate(expectedInput),
+              actualInput, parallel.deduplicate(actualInput));
+    }
+  }
+
+  /**
+   * The key filter only skips index probes, it never changes which lead survives
+   */
+  @Test
+  void keyFilterMatchesLegacy() {
+    for (int seed = 0; seed < 200; seed++) {
+      List<Lead> expectedInput = TestLeads.randomLeads(new Random(seed), 1000);
+      List<Lead> actualInput = TestLeads.randomLeads(new Random(seed), 1000);
+
+      assertSameResult(expectedInput, legacyDeduplicate(expectedInput),
+              actualInput, LeadDeduplicator.deduplicate(actualInput, true));
+    }
+  }
+
+  /**
+   * The transitive mode keeps exactly the latest lead of every group linked by shared ids or
+   * emails, found here by a quadratic flood fill
+   */
+  @Test
+  void transitiveMatchesConnectedComponents() {
+    for (int seed = 0; seed < 100; seed++) {
+      List<Lead> input = TestLeads.randomLeads(new Random(seed), 300);
+      LeadDeduplicator.Result actual = TransitiveLeadDeduplicator.deduplicate(input);
+
+      List<Lead> valid = new ArrayList<>(input);
+      valid.removeIf(l -> Stream.of(l.getId(), l.getEmail(), l.getFirstName(), l.getLastName(), l.getAddress())
+              .anyMatch(f -> f == null || f.trim().isEmpty()) || l.getEntryDate() == null);
+      int[] component = new int[valid.size()];
+      Arrays.fill(component, -1);
+      List<Lead> expected = new ArrayList<>();
+      for (int start = 0; start < valid.size(); start++) {
+        if (component[start] >= 0) continue;
+        List<Integer> members = new ArrayList<>(List.of(start));
+        component[start] = start;
+        for (int k = 0; k < members.size(); k++) {
+          Lead a = valid.get(members.get(k));
+          for (int j = 0; j < valid.size(); j++) {
+            Lead b = valid.get(j);
+            if (component[j] < 0 && (a.getId().equals(b.getId())
+                    || a.getEmail().equalsIgnoreCase(b.getEmail()))) {
+              component[j] = start;
+              members.add(j);
+            }
+          }
+        }
+        int winner = start;
+        for (int m : members) {
+          Instant c = valid.get(m).getEntryDate();
+          Instant e = valid.get(winner).getEntryDate();
+          if (c.isAfter(e) || (c.equals(e) && m > winner)) winner = m;
+        }
+        expected.add(valid.get(winner));
+      }
+
+      Map<Lead, Integer> pos = positions(valid);
+      expected.sort((x, y) -> pos.get(x) - pos.get(y));
+      assertEquals(indexes(expected, pos), indexes(actual.getDeduped(), pos));
+      assertEquals(valid.size() - expected.size(), actual.getLog().size());
+      for (ChangeLogEntry entry : actual.getLog()) {
+        assertTrue(actual.getDeduped().stream().anyMatch(l -> l == entry.getKept()));
+      }
+    }
+  }
+
+  /**
+   * The external mode with a tiny memory budget, so every sort spills many runs, gives the
+   * same survivors and logs as the in-memory path
+   */
+  @Test
+  void externalMatchesInMemory(@TempDir Path tmp) throws Exception {
+    for (int seed = 0; seed < 20; seed++) {
+      List<Lead> expectedInput = TestLeads.randomLeads(new Random(seed), 2000);
+      List<Lead> actualInput = TestLeads.randomLeads(new Random(seed), 2000);
+
+      LeadDeduplicator.Result expected = LeadDeduplicator.deduplicate(expectedInput);
+      LeadDeduplicator.Result actual = ExternalLeadDeduplicator.deduplicate(actualInput, tmp, 4096);
+
+      assertEquals(expected.getDeduped().toString(), actual.getDeduped().toString());
+      assertEquals(expected.getLog().toString(), actual.getLog().toString());
+      assertEquals(expected.getInvalidLogs(), actual.getInvalidLogs());
+    }
+  }
+
+  /**
+   * A budget that leaves read buffers for only two runs at once, with hundreds of runs, merges
+   * the runs in several passes and still matches the in-memory path
+   */
+  @Test
+  void externalMergesInPasses(@TempDir Path tmp) throws Exception {
+    List<Lead> expectedInput = TestLeads.randomLeads(new Random(7), 20000);
+    List<Lead> actualInput = TestLeads.randomLeads(new Random(7), 20000);
+
+    LeadDeduplicator.Result expected = LeadDeduplicator.deduplicate(expectedInput);
+    LeadDeduplicator.Result actual;
+    int passes;
+    try (ExternalLeadDeduplicator dedup = new ExternalLeadDeduplicator(tmp, 4096)) {
+      actualInput.forEach(dedup::accept);
+      actual = dedup.finish();
+      passes = dedup.getMergePasses();
+    }
+
+    assertTrue(passes >= 4, "merge passes: " + passes);
+    assertEquals(expected.getDeduped().toString(), actual.getDeduped().toString());
+    assertEquals(expected.getLog().toString(), actual.getLog().toString());
+    assertEquals(expected.getInvalidLogs(), actual.getInvalidLogs());
+    try (Stream<Path> left = Files.list(tmp)) {
+      assertEquals(0, left.count());
+    }
+  }
+
+  /**
+   * Deduping the columnar LeadTable gives the same survivors and logs as the list of leads
+   */
+  @Test
+  void tableMatchesList() {
+    for (int seed = 0; seed < 100; seed++) {
+      List<Lead> expectedInput = TestLeads.randomLeads(new Random(seed), 500);
+      LeadTable table = new LeadTable();
+      TestLeads.randomLeads(new Random(seed), 500).forEach(table::add);
+
+      LeadDeduplicator.Result expected = LeadDeduplicator.deduplicate(expectedInput);
+      LeadDeduplicator.Result actual = LeadDeduplicator.deduplicate(table);
+
+      assertEquals(expected.getDeduped().toString(), actual.getDeduped().toString());
+      assertEquals(expected.getLog().toString(), actual.getLog().toString());
+      assertEquals(expected.getInvalidLogs(), actual.getInvalidLogs());
+    }
+  }
+
+  /**
+   * Replacing a lead found through a stale id entry must not resurrect the stale lead
+   */
+  @Test
+  void staleIdEntryMatchesLegacy() {
+    List<Lead> expectedInput = staleChain();
+    List<Lead> actualInput = staleChain();
+
+    assertSameResult(expectedInput, legacyDeduplicate(expectedInput),
+            actualInput, LeadDeduplicator.deduplicate(actualInput));
+  }
+
+  private static List<Lead> staleChain() {
+    List<Lead> leads = new ArrayList<>();
+    leads.add(new Lead("x", "e1@email.com", "A", "X", "address1", Instant.parse("2024-05-07T17:30:20Z")));
+    leads.add(new Lead("y", "E1@email.com", "B", "Y", "address2", Instant.parse("2024-05-07T17:31:20Z")));
+    leads.add(new Lead("x", "e3@email.com", "C", "Z", "address3", Instant.parse("2024-05-07T17:32:20Z")));
+    leads.add(new Lead("z", "e1@email.com", "D", "Z", "address4", Instant.parse("2024-05-07T17:29:20Z")));
+    leads.add(new Lead("y", "e4@email.com", "E", "Z", "address5", Instant.parse("2024-05-07T17:31:20Z")));
+    return leads;
+  }
+
+
+  private static void assertSameResult(List<Lead> expectedInput, LeadDeduplicator.Result expected,
+                                       List<Lead> actualInput, LeadDeduplicator.Result actual) {
+    Map<Lead, Integer> expectedPos = positions(expectedInput);
+    Map<Lead, Integer> actualPos = positions(actualInput);
+
+    assertEquals(indexes(expected.getDeduped(), expectedPos), indexes(actual.getDeduped(), actualPos));
+    assertEquals(expected.getInvalidLogs(), actual.getInvalidLogs());
+    assertEquals(expected.getLog().size(), actual.getLog().size());
+    for (int i = 0; i < expected.getLog().size(); i++) {
+      ChangeLogEntry e = expected.getLog().get(i);
+      ChangeLogEntry a = actual.getLog().get(i);
+      assertEquals(expectedPos.get(e.getSource()), actualPos.get(a.getSource()));
+      assertEquals(expectedPos.get(e.getKept()), actualPos.get(a.getKept()));
+      assertEquals(e.getFieldChanges().keySet(), a.getFieldChanges().keySet());
+      e.getFieldChanges().forEach((k, v) -> assertArrayEquals(v, a.getFieldChanges().get(k)));
+      assertEquals(e.toString(), a.toString());
+    }
+  }
+
+  private static Map<Lead, Integer> positions(List<Lead> leads) {
+    Map<Lead, Integer> pos = new IdentityHashMap<>();
+    for (int i = 0; i < leads.size(); i++) pos.put(leads.get(i), i);
+    return pos;
+  }
+
+  private static List<Integer> indexes(List<Lead> leads, Map<Lead, Integer> pos) {
+    List<Integer> out = new ArrayList<>();
+    leads.forEach(l -> out.add(pos.get(l)));
+    return out;
+  }
+
+  /**
+   * Copy of the original ArrayList based algorithm, kept as the reference behaviour.
+   */
+  private static LeadDeduplicator.Result legacyDeduplicate(List<Lead> leads) {
+    List<Lead> survivors = new ArrayList<>();
+    List<ChangeLogEntry> logs = new ArrayList<>();
+    List<String> invalidLogs = new ArrayList<>();
+    Map<String, Lead> idMap = new HashMap<>();
+    Map<String, Lead> emailMap = new HashMap<>();
+
+    for (int i = 0; i < leads.size(); i++) {
+      Lead current = leads.get(i);
+      if(current.getId() != null) current.setId(current.getId().trim());
+      if(current.getEmail() != null) current.setEmail(current.getEmail().trim());
+
+      if(!legacyIsValid(current)){
+        invalidLogs.add("Removed record due to Null or empty field/fields" + current);
+        continue;
+      }
+
+      String id = current.getId();
+      String email = current.getEmail().toLowerCase();
+
+      Lead duplicate = Optional.ofNullable(idMap.get(id))
+              .orElse(emailMap.get(email));
+
+      if (duplicate == null) {
+        survivors.add(current);
+        idMap.put(id, current);
+        emailMap.put(email, current);
+        continue;
+      }
+
+      int existIndex = survivors.indexOf(duplicate);
+      Instant c = current.getEntryDate();
+      Instant e = duplicate.getEntryDate();
+      boolean currentWins = c.isAfter(e) || (c.equals(e) && i > existIndex);
+      if (currentWins) {
+        survivors.remove(duplicate);
+        survivors.add(current);
+
+        idMap.put(id, current);
+        emailMap.put(email, current);
+
+        String dupEmail = duplicate.getEmail().toLowerCase();
+        if (!dupEmail.equals(email)) {
+          emailMap.remove(dupEmail);
+        }
+
+        logs.add(new ChangeLogEntry(duplicate, current, legacyDiff(duplicate, current)));
+      } else {
+        logs.add(new ChangeLogEntry(current, duplicate, legacyDiff(current, duplicate)));
+      }
+    }
+    return new LeadDeduplicator.Result(survivors, logs, invalidLogs);
+  }
+
+  private static boolean legacyIsValid(Lead l) {
+    return notBlank(l.getId()) && notBlank(l.getEmail()) && notBlank(l.getFirstName())
+            && notBlank(l.getLastName()) && notBlank(l.getAddress()) && l.getEntryDate() != null;
+  }
+
+  private static boolean notBlank(String s) {
+    return s != null && !s.trim().isEmpty();
+  }
+
+  private static Map<String, Object[]> legacyDiff(Lead src, Lead kept) {
+    Map<String, Object[]> d = new LinkedHashMap<>();
+    if (!Objects.equals(src.getId(), kept.getId())) d.put("_id", new Object[]{src.getId(), kept.getId()});
+    if (!Objects.equals(src.getEmail(), kept.getEmail())) d.put("email", new Object[]{src.getEmail(), kept.getEmail()});
+    if (!Objects.equals(src.getFirstName(), kept.getFirstName())) d.put("firstName",
+            new Object[]{src.getFirstName(), kept.getFirstName()});
+    if (!Objects.equals(src.getLastName(), kept.getLastName())) d.put("lastName",
+            new Object[]{src.getLastName(), kept.getLastName()});
+    if (!Objects.equals(src.getAddress(), kept.getAddress())) d.put("address",
+            new Object[]{src.getAddress(), kept.getAddress()});
+    if (!Objects.equals(src.getEntryDate(), kept.getEntryDate())) d.put("entryDate",
+            new Object[]{src.getEntryDate(), kept.getEntryDate()});
+    return d;
+  }
+}
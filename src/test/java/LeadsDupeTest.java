@@ -1,12 +1,24 @@
+import org.example.DedupMetrics;
+import org.example.FuzzyLeadMatcher;
+import org.example.IncrementalLeadDeduplicator;
+import org.example.KeyFilterStats;
 import org.example.Lead;
 import org.example.LeadDeduplicator;
+import org.example.TransitiveLeadDeduplicator;
 import org.junit.jupiter.api.Test;
 
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -298,4 +310,331 @@ public class LeadsDupeTest {
     assertEquals(b,res.getDeduped().get(0));
   }
 
+  /**
+   * Outcome of each lead fed to the incremental deduplicator
+   */
+  @Test
+  void incrementalOutcomes(){
+
+    //Arrange
+    Lead a = new Lead("abc", "abc1@email.com", "A", "X", "address1", Instant.parse("2024-05-07T17:30:20Z"));
+    Lead b = new Lead("abc", "abc2@email.com", "B", "Y", "address2", Instant.parse("2024-05-07T17:32:20Z"));
+    Lead c = new Lead("abcd", "abc2@email.com", "C", "Z", "address3", Instant.parse("2024-05-07T17:28:20Z"));
+    Lead d = new Lead("abce", null, "D", "Z", "address3", Instant.parse("2024-05-07T17:29:20Z"));
+    IncrementalLeadDeduplicator dedup = new IncrementalLeadDeduplicator();
+
+    //Act
+    List<IncrementalLeadDeduplicator.Outcome> outcomes = dedup.acceptAll(List.of(a, b, c, d));
+
+    //Assert
+    assertEquals(List.of(IncrementalLeadDeduplicator.Outcome.KEPT, IncrementalLeadDeduplicator.Outcome.REPLACED,
+            IncrementalLeadDeduplicator.Outcome.DISCARDED, IncrementalLeadDeduplicator.Outcome.INVALID), outcomes);
+    assertEquals(1, dedup.getSurvivorCount());
+    assertEquals(b, dedup.snapshot().getDeduped().get(0));
+  }
+
+  /**
+   * Deltas deduped against earlier batches give the same result as one batch
+   */
+  @Test
+  void incrementalDeltas(){
+
+    //Arrange
+    Lead a = new Lead("a", "abc1@email.com", "A", "X", "address1", Instant.parse("2024-05-07T17:30:20Z"));
+    Lead b = new Lead("b", "abc2@email.com", "B", "Y", "address2", Instant.parse("2024-05-07T17:32:20Z"));
+    Lead c = new Lead("a", "abc3@email.com", "C", "Z", "address3", Instant.parse("2024-05-07T17:31:20Z"));
+    Lead d = new Lead("d", "ABC2@email.com", "D", "Z", "address4", Instant.parse("2024-05-07T17:29:20Z"));
+    IncrementalLeadDeduplicator dedup = new IncrementalLeadDeduplicator();
+
+    //Act
+    dedup.acceptAll(List.of(a, b));
+    LeadDeduplicator.Result first = dedup.snapshot();
+    dedup.acceptAll(List.of(c, d));
+    LeadDeduplicator.Result second = dedup.snapshot();
+
+    //Assert
+    assertEquals(List.of(a, b), first.getDeduped());
+    assertEquals(List.of(b, c), second.getDeduped());
+    assertEquals(2, second.getLog().size());
+    assertEquals(0, first.getLog().size());
+  }
+
+  /**
+   * Unique leads are answered by the key filter without probing the indexes
+   */
+  @Test
+  void keyFilterStats(){
+
+    //Arrange
+    IncrementalLeadDeduplicator dedup = IncrementalLeadDeduplicator.withKeyFilter(10_000);
+    Instant date = Instant.parse("2024-05-07T17:30:20Z");
+
+    //Act
+    for (int i = 0; i < 10_000; i++) {
+      dedup.accept(new Lead("id" + i, "user" + i + "@email.com", "A", "X", "address1", date));
+    }
+    dedup.accept(new Lead("other", "USER7@email.com", "B", "Y", "address2", date.plusSeconds(1)));
+    KeyFilterStats stats = dedup.getKeyFilterStats();
+
+    //Assert
+    assertEquals(10_000, dedup.getSurvivorCount());
+    assertEquals(20_002, stats.getLookups());
+    assertTrue(stats.getProbesAvoided() > 19_000);
+    assertTrue(stats.getFalsePositiveRate() < 0.05);
+    assertNull(new IncrementalLeadDeduplicator().getKeyFilterStats());
+  }
+
+  /**
+   * Sampling or turning off the change log keeps the same survivors
+   */
+  @Test
+  void logSampling(){
+
+    //Arrange
+    IncrementalLeadDeduplicator all = new IncrementalLeadDeduplicator();
+    IncrementalLeadDeduplicator sampled = new IncrementalLeadDeduplicator();
+    IncrementalLeadDeduplicator off = new IncrementalLeadDeduplicator();
+    sampled.setLogSampling(3);
+    off.setLogSampling(0);
+    Instant date = Instant.parse("2024-05-07T17:30:20Z");
+
+    //Act
+    for (int i = 0; i < 11; i++) {
+      for (IncrementalLeadDeduplicator dedup : List.of(all, sampled, off)) {
+        dedup.accept(new Lead("abc", "abc" + i + "@email.com", "A", "X", "address1", date.plusSeconds(i)));
+      }
+    }
+
+    //Assert
+    assertEquals(10, all.snapshot().getLog().size());
+    assertEquals(4, sampled.snapshot().getLog().size());
+    assertEquals(0, off.snapshot().getLog().size());
+    assertEquals(all.snapshot().getDeduped().toString(), off.snapshot().getDeduped().toString());
+    assertEquals(all.snapshot().getLog().get(3).toString(), sampled.snapshot().getLog().get(1).toString());
+  }
+
+  /**
+   * A shares an id with B and B shares an email with C, the transitive mode keeps only the latest
+   */
+  @Test
+  void transitiveChain(){
+
+    //Arrange
+    Lead a = new Lead("abc", "abc1@email.com", "A", "X", "address1", Instant.parse("2024-05-07T17:30:20Z"));
+    Lead b = new Lead("abc", "abc2@email.com", "B", "Y", "address2", Instant.parse("2024-05-07T17:28:20Z"));
+    Lead c = new Lead("abcd", "ABC2@email.com", "C", "Z", "address3", Instant.parse("2024-05-07T17:29:20Z"));
+
+    //Act
+    LeadDeduplicator.Result direct = LeadDeduplicator.deduplicate(List.of(
+            new Lead("abc", "abc1@email.com", "A", "X", "address1", Instant.parse("2024-05-07T17:30:20Z")),
+            new Lead("abc", "abc2@email.com", "B", "Y", "address2", Instant.parse("2024-05-07T17:28:20Z")),
+            new Lead("abcd", "ABC2@email.com", "C", "Z", "address3", Instant.parse("2024-05-07T17:29:20Z"))));
+    LeadDeduplicator.Result transitive = TransitiveLeadDeduplicator.deduplicate(List.of(a, b, c));
+
+    //Assert
+    assertEquals(2, direct.getDeduped().size());
+    assertEquals(List.of(a), transitive.getDeduped());
+    assertEquals(2, transitive.getLog().size());
+    assertEquals(b, transitive.getLog().get(0).getSource());
+    assertEquals(c, transitive.getLog().get(1).getSource());
+    assertEquals(a, transitive.getLog().get(1).getKept());
+  }
+
+  /**
+   * Typos and Gmail aliases that the exact matcher keeps apart are merged by the fuzzy matcher
+   */
+  @Test
+  void fuzzyNearDuplicates(){
+
+    //Arrange
+    Lead a = new Lead("a1", "john.smith@gmail.com", "John", "Smith", "12 Baker Street, London", Instant.parse("2024-05-07T17:30:20Z"));
+    Lead b = new Lead("b1", "johnsmith+crm@gmail.com", "John", "Smyth", "12 Baker St London", Instant.parse("2024-05-07T17:32:20Z"));
+    Lead c = new Lead("c1", "priya@example.com", "Priya", "Patel", "7 Station Road, Bristol", Instant.parse("2024-05-07T17:31:20Z"));
+    Lead d = new Lead("d1", "mary@example.com", "Mary", "Jones", "4 Elm Road, Leeds", Instant.parse("2024-05-07T17:31:20Z"));
+    Lead e = new Lead("e1", "mary.jones@example.com", "Mary", "Jones", "4 Elm Road, Leeds", Instant.parse("2024-05-07T17:33:20Z"));
+    FuzzyLeadMatcher fuzzy = new FuzzyLeadMatcher();
+
+    //Act
+    LeadDeduplicator.Result result = LeadDeduplicator.deduplicate(List.of(a, b, c, d, e), fuzzy);
+
+    //Assert
+    assertEquals(List.of(b, c, e), result.getDeduped());
+    assertEquals(2, result.getLog().size());
+    assertEquals(a, result.getLog().get(0).getSource());
+    assertEquals(d, result.getLog().get(1).getSource());
+    assertEquals("johnsmith@gmail.com", FuzzyLeadMatcher.canonicalEmail("John.Smith+crm@googlemail.com"));
+    assertTrue(fuzzy.getStats().getBuckets().get(0).getCandidatePairs() >= 1);
+    assertEquals(2, fuzzy.getStats().getMergedLeads());
+  }
+
+  /**
+   * Case insensitive email outside ASCII
+   */
+  @Test
+  void caseSensitiveUnicode(){
+
+    //Arrange
+    Lead a = new Lead("u1", "ÄBC@émail.com", "A", "X", "address1", Instant.parse("2025-01-01T10:00:00Z"));
+    Lead b = new Lead("u2", "äbc@Émail.com", "B", "Y", "address2", Instant.parse("2025-01-02T10:00:00Z"));
+    Lead c = new Lead("u3", "abc@email.com", "C", "Z", "address3", Instant.parse("2025-01-03T10:00:00Z"));
+
+    //Act
+    LeadDeduplicator.Result res = run(a,b,c);
+
+    //Assert
+    assertEquals(2, res.getDeduped().size());
+    assertEquals(b,res.getDeduped().get(0));
+    assertEquals(c,res.getDeduped().get(1));
+  }
+
+  /**
+   * Metrics count each decision branch and are readable over JMX
+   */
+  @Test
+  void metricsCountBranches() throws Exception {
+
+    //Arrange
+    Lead a = new Lead("abc", "abc1@email.com", "A", "X", "address1", Instant.parse("2024-05-07T17:30:20Z"));
+    Lead b = new Lead("abc", "abc2@email.com", "B", "Y", "address2", Instant.parse("2024-05-07T17:32:20Z"));
+    Lead c = new Lead("abcd", "ABC2@email.com", "C", "Z", "address3", Instant.parse("2024-05-07T17:28:20Z"));
+    Lead d = new Lead(" ", "d@email.com", "D", "Z", "address4", Instant.parse("2024-05-07T17:28:20Z"));
+    DedupMetrics metrics = new DedupMetrics();
+    IncrementalLeadDeduplicator dedup = new IncrementalLeadDeduplicator();
+    dedup.setMetrics(metrics);
+
+    //Act
+    dedup.acceptAll(List.of(a, b, c, d));
+    metrics.recordStage(DedupMetrics.Stage.SERIALIZE, 2_000_000);
+    ObjectName name = metrics.register("metricsCountBranches");
+    Object replaced;
+    try {
+      replaced = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Replaced");
+    } finally {
+      DedupMetrics.unregister(name);
+    }
+
+    //Assert
+    assertEquals(4, metrics.getLeads());
+    assertEquals(1, metrics.getKept());
+    assertEquals(1, metrics.getReplaced());
+    assertEquals(1, metrics.getDiscarded());
+    assertEquals(1, metrics.getInvalid());
+    assertEquals(1, metrics.getIdHits());
+    assertEquals(1, metrics.getEmailHits());
+    assertEquals(1L, replaced);
+    assertEquals(2L, metrics.getStageMillis().get("serialize"));
+    assertEquals(4L, metrics.toMap().get("leads"));
+  }
+
+  /**
+   * Keys cached on a lead by one run are dropped when its id or email is changed
+   */
+  @Test
+  void changedKeysAreRehashed() {
+
+    //Arrange
+    Lead a = new Lead(" abc ", "abc1@email.com", "A", "X", "address1", Instant.parse("2024-05-07T17:30:20Z"));
+    Lead b = new Lead("xyz", "NEW@email.com", "B", "Y", "address2", Instant.parse("2024-05-07T17:32:20Z"));
+    run(a);
+
+    //Act
+    a.setEmail("  new@EMAIL.com ");
+    LeadDeduplicator.Result res = run(a, b);
+
+    //Assert
+    assertEquals("abc", a.getId());
+    assertEquals("new@EMAIL.com", a.getEmail());
+    assertEquals(List.of(b), res.getDeduped());
+    assertEquals(a, res.getLog().get(0).getSource());
+  }
+
+  /**
+   * With a 90 day window, leads 100 days apart both survive, leads 30 days apart are deduped,
+   * and a chain is matched against the date of the survivor it reaches
+   */
+  @Test
+  void windowedExpiry(){
+
+    //Arrange
+    Instant day0 = Instant.parse("2024-01-01T09:00:00Z");
+    Lead a = new Lead("a1", "a@email.com", "A", "X", "address1", day0);
+    Lead b = new Lead("a1", "b@email.com", "B", "Y", "address2", day0.plus(Duration.ofDays(100)));
+    Lead c = new Lead("c1", "b@email.com", "C", "Z", "address3", day0.plus(Duration.ofDays(130)));
+    Lead d = new Lead("d1", "d@email.com", "D", "X", "address4", day0.plus(Duration.ofDays(140)));
+    Lead e = new Lead("e1", "D@email.com", "E", "Y", "address5", day0.plus(Duration.ofDays(200)));
+    Lead f = new Lead("f1", "d@email.com", "F", "Z", "address6", day0.plus(Duration.ofDays(270)));
+    IncrementalLeadDeduplicator dedup = IncrementalLeadDeduplicator.windowed(Duration.ofDays(90));
+
+    //Act
+    List<IncrementalLeadDeduplicator.Outcome> outcomes = dedup.acceptAll(List.of(a, b, c, d, e, f));
+
+    //Assert
+    assertEquals(List.of(IncrementalLeadDeduplicator.Outcome.KEPT, IncrementalLeadDeduplicator.Outcome.KEPT,
+            IncrementalLeadDeduplicator.Outcome.REPLACED, IncrementalLeadDeduplicator.Outcome.KEPT,
+            IncrementalLeadDeduplicator.Outcome.REPLACED, IncrementalLeadDeduplicator.Outcome.REPLACED), outcomes);
+    assertEquals(List.of(a, c, f), dedup.snapshot().getDeduped());
+    assertEquals(3, dedup.getSurvivorCount());
+  }
+
+  /**
+   * A window longer than the input span gives the same result as the unwindowed run
+   */
+  @Test
+  void windowedCoveringSpan(){
+
+    //Arrange
+    Random random = new Random(25);
+    List<Lead> leads = new ArrayList<>();
+    List<Lead> copies = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      String id = "id" + random.nextInt(1500);
+      String email = "user" + random.nextInt(1500) + (random.nextBoolean() ? "@EMAIL.com" : "@email.com");
+      Instant entryDate = Instant.parse("2024-01-01T00:00:00Z").plusSeconds(random.nextInt(60 * 86400));
+      leads.add(new Lead(id, email, "A", "X", "address" + i, entryDate));
+      copies.add(new Lead(id, email, "A", "X", "address" + i, entryDate));
+    }
+    IncrementalLeadDeduplicator dedup = IncrementalLeadDeduplicator.windowed(Duration.ofDays(61));
+
+    //Act
+    dedup.acceptAll(copies);
+    LeadDeduplicator.Result windowed = dedup.snapshot();
+    LeadDeduplicator.Result expected = LeadDeduplicator.deduplicate(leads);
+
+    //Assert
+    assertEquals(expected.getDeduped().toString(), windowed.getDeduped().toString());
+    assertEquals(expected.getLog().size(), windowed.getLog().size());
+  }
+
+  /**
+   * Survivors handed out as they expire keep the state at about one window of leads, and
+   * together with the survivors left they are the survivors of a run that keeps them all
+   */
+  @Test
+  void windowedBoundedState(){
+
+    //Arrange
+    Random random = new Random(7);
+    Instant start = Instant.parse("2024-01-01T00:00:00Z");
+    List<Lead> expired = new ArrayList<>();
+    IncrementalLeadDeduplicator streaming = IncrementalLeadDeduplicator.windowed(Duration.ofDays(30), expired::add);
+    IncrementalLeadDeduplicator keeping = IncrementalLeadDeduplicator.windowed(Duration.ofDays(30));
+    int maxSurvivors = 0;
+
+    //Act
+    for (int i = 0; i < 20000; i++) {
+      String email = "user" + random.nextInt(2000) + "@email.com";
+      Instant entryDate = start.plusSeconds(3600L * i + random.nextInt(3600));
+      streaming.accept(new Lead("id" + i, email, "A", "X", "address", entryDate));
+      keeping.accept(new Lead("id" + i, email, "A", "X", "address", entryDate));
+      maxSurvivors = Math.max(maxSurvivors, streaming.getSurvivorCount());
+    }
+
+    //Assert
+    assertTrue(maxSurvivors <= 30 * 24 * 66 / 64 + 24, "survivors held: " + maxSurvivors);
+    List<Lead> all = new ArrayList<>(expired);
+    all.addAll(streaming.snapshot().getDeduped());
+    all.sort(Comparator.comparing(Lead::getEntryDate));
+    assertEquals(keeping.getSurvivorCount(), all.size());
+    assertEquals(keeping.snapshot().getDeduped().toString(), all.toString());
+  }
 }
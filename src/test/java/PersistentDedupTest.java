@@ -0,0 +1,124 @@
+import org.example.ChangeLogEntry;
+import org.example.IncrementalLeadDeduplicator;
+import org.example.Lead;
+import org.example.LeadDeduplicator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Test class for the on-disk deduplication state, checks that reopening the index between
+ * batches gives the same survivors and logs as deduping everything in memory.
+ */
+public class PersistentDedupTest {
+
+  /**
+   * Reopening the index after every batch matches one in-memory run
+   */
+  @Test
+  void reopenBetweenBatches(@TempDir Path dir) throws Exception {
+
+    //Arrange
+    List<Lead> expectedInput = TestLeads.randomLeads(new Random(7), 3000);
+    List<Lead> actualInput = TestLeads.randomLeads(new Random(7), 3000);
+    LeadDeduplicator.Result expected = LeadDeduplicator.deduplicate(expectedInput);
+
+    //Act
+    List<String> logs = new ArrayList<>();
+    for (int start = 0; start < actualInput.size(); start += 700) {
+      try (IncrementalLeadDeduplicator dedup = IncrementalLeadDeduplicator.open(dir)) {
+        dedup.acceptAll(actualInput.subList(start, Math.min(actualInput.size(), start + 700)));
+        dedup.snapshot().getLog().forEach(e -> logs.add(e.toString()));
+      }
+    }
+
+    //Assert
+    try (IncrementalLeadDeduplicator dedup = IncrementalLeadDeduplicator.open(dir)) {
+      LeadDeduplicator.Result actual = dedup.snapshot();
+      assertEquals(expected.getDeduped().toString(), actual.getDeduped().toString());
+      assertEquals(expected.getDeduped().size(), dedup.getSurvivorCount());
+      assertEquals(3000, dedup.getAcceptedCount());
+      List<String> expectedLogs = new ArrayList<>();
+      for (ChangeLogEntry e : expected.getLog()) expectedLogs.add(e.toString());
+      assertEquals(expectedLogs, logs);
+    }
+  }
+
+  /**
+   * A lead that replaced a survivor stays the survivor after reopening
+   */
+  @Test
+  void survivesRestart(@TempDir Path dir) throws Exception {
+
+    //Arrange
+    Lead a = new Lead("abc", "abc1@email.com", "A", "X", "address1", Instant.parse("2024-05-07T17:30:20Z"));
+    Lead b = new Lead("abc", "abc2@email.com", "B", "Y", "address2", Instant.parse("2024-05-07T17:32:20Z"));
+    Lead c = new Lead("abcd", "ABC2@email.com", "C", "Z", "address3", Instant.parse("2024-05-07T17:28:20Z"));
+
+    //Act
+    try (IncrementalLeadDeduplicator dedup = IncrementalLeadDeduplicator.open(dir)) {
+      dedup.acceptAll(List.of(a, b));
+    }
+    IncrementalLeadDeduplicator.Outcome outcome;
+    LeadDeduplicator.Result res;
+    try (IncrementalLeadDeduplicator dedup = IncrementalLeadDeduplicator.open(dir)) {
+      outcome = dedup.accept(c);
+      res = dedup.snapshot();
+    }
+
+    //Assert
+    assertEquals(IncrementalLeadDeduplicator.Outcome.DISCARDED, outcome);
+    assertEquals(1, res.getDeduped().size());
+    assertEquals(b.toString(), res.getDeduped().get(0).toString());
+  }
+
+  /**
+   * A run resumed from a checkpoint, after a crash tore the batch being written, matches one
+   * uninterrupted run
+   */
+  @Test
+  void resumeFromCheckpoint(@TempDir Path dir) throws Exception {
+
+    //Arrange
+    LeadDeduplicator.Result expected = LeadDeduplicator.deduplicate(TestLeads.randomLeads(new Random(11), 3000));
+    Path file = dir.resolve("dedup.checkpoint");
+    try (IncrementalLeadDeduplicator dedup = new IncrementalLeadDeduplicator()) {
+      dedup.checkpointTo(file, 250);
+      dedup.acceptAll(TestLeads.randomLeads(new Random(11), 3000).subList(0, 1900));
+    }
+    long committed = Files.size(file);
+    try (IncrementalLeadDeduplicator dedup = IncrementalLeadDeduplicator.resume(file, 250)) {
+      dedup.acceptAll(TestLeads.randomLeads(new Random(11), 3000).subList(1900, 2200));
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(committed + 100);
+    }
+
+    //Act
+    List<Lead> rest;
+    LeadDeduplicator.Result actual;
+    long resumedAt;
+    try (IncrementalLeadDeduplicator dedup = IncrementalLeadDeduplicator.resume(file, 250)) {
+      resumedAt = dedup.getAcceptedCount();
+      rest = TestLeads.randomLeads(new Random(11), 3000).subList((int) resumedAt, 3000);
+      dedup.acceptAll(rest);
+      actual = dedup.snapshot();
+    }
+
+    //Assert
+    assertEquals(1900, resumedAt);
+    assertEquals(expected.getDeduped().toString(), actual.getDeduped().toString());
+    assertEquals(expected.getLog().toString(), actual.getLog().toString());
+    assertEquals(expected.getInvalidLogs(), actual.getInvalidLogs());
+  }
+}
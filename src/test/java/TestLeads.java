@@ -0,0 +1,34 @@
+import org.example.Lead;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded random leads shared by the tests, so every "matches sequential" check runs on the same
+ * data: a small key space, so id and email collisions, stale index entries and equal timestamps
+ * all show up often, and a few leads that are invalid or need trimming and case folding.
+ */
+final class TestLeads {
+  private TestLeads() {
+  }
+
+  static List<Lead> randomLeads(Random random, int count) {
+    String[] names = {"Ann", "Bob", "Cara", "Dev", "Eli"};
+    List<Lead> leads = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      String id = " id" + random.nextInt(count / 4) + (random.nextInt(10) == 0 ? " " : "");
+      String email = "user" + random.nextInt(count / 4) + "@email.com";
+      if (random.nextBoolean()) email = email.toUpperCase();
+      if (random.nextInt(8) == 0) email = "  " + email;
+      String first = random.nextInt(40) == 0 ? null : names[random.nextInt(names.length)];
+      String last = random.nextInt(40) == 0 ? " " : names[random.nextInt(names.length)];
+      String address = random.nextInt(40) == 0 ? "" : random.nextInt(20) + " Main St";
+      Instant entryDate = random.nextInt(40) == 0 ? null
+              : Instant.parse("2024-05-07T17:00:00Z").plusSeconds(random.nextInt(30) * 60L);
+      leads.add(new Lead(id, email, first, last, address, entryDate));
+    }
+    return leads;
+  }
+}